@@ -0,0 +1,45 @@
+package com.qbros.lb.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs every benchmark of this package with 1 to 64 threads, reporting throughput, average time and
+ * the allocation rate of the {@link GCProfiler}.
+ * <p>
+ * If any argument is passed, it is handed over to the regular JMH command line instead, e.g.
+ * {@code mvn -Pjmh compile exec:exec -Djmh.args="LoadBalancerBenchmark -t 16 -p poolSize=10000 -prof gc"}
+ */
+public class BenchmarkRunner {
+
+    private static final int[] THREAD_COUNTS = {1, 4, 16, 64};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0) {
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        for (int threads : THREAD_COUNTS) {
+            run(threads);
+        }
+    }
+
+    private static void run(int threads) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(BenchmarkRunner.class.getPackageName() + ".*")
+                .threads(threads)
+                .mode(Mode.Throughput)
+                .mode(Mode.AverageTime)
+                .timeUnit(TimeUnit.MICROSECONDS)
+                .addProfiler(GCProfiler.class)
+                .result("target/jmh-result-" + threads + "-threads.json")
+                .build();
+        new Runner(options).run();
+    }
+}
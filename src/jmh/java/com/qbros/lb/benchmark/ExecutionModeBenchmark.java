@@ -0,0 +1,101 @@
+package com.qbros.lb.benchmark;
+
+import com.qbros.lb.core.ExecutionMode;
+import com.qbros.lb.core.LoadBalancer;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.Provider;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Time to serve a burst of {@code concurrency} {@link LoadBalancer#getAsync()} calls on providers blocking for
+ * {@code providerLatencyMicros}.
+ * <p>
+ * {@code scheduledPool} dispatches on a {@link ScheduledExecutorService} with one platform thread per core, the model
+ * the load balancer used before the execution modes; {@code virtual} uses {@link ExecutionMode#VIRTUAL}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+public class ExecutionModeBenchmark {
+
+    private static final int PROVIDERS = 100;
+
+    @Param({"scheduledPool", "virtual"})
+    private String model;
+
+    @Param({"100", "1000", "10000"})
+    private int concurrency;
+
+    @Param({"1000"})
+    private long providerLatencyMicros;
+
+    private LoadBalancer loadBalancer;
+    private ScheduledExecutorService scheduledPool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LoadBalancerImpl.LoadBalancerImplBuilder builder = LoadBalancerImpl.builder()
+                .name("benchmark LB")
+                .maxCapacity(PROVIDERS);
+        if ("virtual".equals(model)) {
+            builder.executionMode(ExecutionMode.VIRTUAL);
+        } else {
+            scheduledPool = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+            builder.dispatchExecutor(scheduledPool);
+        }
+        loadBalancer = builder.build();
+
+        //enough permits for the whole burst, only the threads are measured, not the admission control
+        int capacity = (concurrency + PROVIDERS - 1) / PROVIDERS;
+        List<Provider> providers = IntStream.range(0, PROVIDERS)
+                .mapToObj(i -> new BlockingProvider("P" + i, capacity, providerLatencyMicros))
+                .collect(Collectors.toList());
+        loadBalancer.registerAll(providers);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        loadBalancer.close();
+        if (scheduledPool != null) {
+            scheduledPool.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public void burst() {
+        CompletableFuture<?>[] calls = new CompletableFuture[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            calls[i] = loadBalancer.getAsync();
+        }
+        CompletableFuture.allOf(calls).join();
+    }
+
+    private static final class BlockingProvider extends Provider {
+
+        private final long latencyNanos;
+
+        private BlockingProvider(String id, int concurrentCapacity, long latencyMicros) {
+            super(id, concurrentCapacity);
+            this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+        }
+
+        @Override
+        public String provide() {
+            //stands for the network call of a real provider
+            LockSupport.parkNanos(latencyNanos);
+            return super.provide();
+        }
+    }
+}
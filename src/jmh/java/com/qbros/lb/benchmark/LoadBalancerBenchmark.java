@@ -0,0 +1,51 @@
+package com.qbros.lb.benchmark;
+
+import com.qbros.lb.core.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Cost of {@link LoadBalancer#get()} without any membership change, see {@link LoadBalancerChurnBenchmark} for the
+ * concurrent changes.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+public class LoadBalancerBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int poolSize;
+
+    @Param({"random", "roundRobin"})
+    private String strategy;
+
+    private LoadBalancerImpl loadBalancer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        loadBalancer = LoadBalancerImpl.builder()
+                .name("benchmark LB")
+                .selectionStrategy("roundRobin".equals(strategy) ? new RoundRobinSelection() : new RandomSelection())
+                .maxCapacity(poolSize)
+                .build();
+        List<Provider> providers = IntStream.range(0, poolSize)
+                .mapToObj(i -> new Provider("P" + i))
+                .collect(Collectors.toList());
+        loadBalancer.registerAll(providers);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        loadBalancer.close();
+    }
+
+    @Benchmark
+    public String get() {
+        return loadBalancer.get();
+    }
+}
@@ -0,0 +1,72 @@
+package com.qbros.lb.benchmark;
+
+import com.qbros.lb.core.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Cost of {@link LoadBalancer#get()} with concurrent membership changes: one thread keeps excluding and re-including
+ * a provider while the others call {@link LoadBalancer#get()}. {@code churnPauseTokens} controls the read/write mix:
+ * the higher it is, the less often the writer touches the providers.
+ */
+@State(Scope.Group)
+@Fork(1)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+public class LoadBalancerChurnBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int poolSize;
+
+    @Param({"random", "roundRobin"})
+    private String strategy;
+
+    @Param({"0", "1000", "100000"})
+    private long churnPauseTokens;
+
+    private LoadBalancerImpl loadBalancer;
+    private List<Provider> providers;
+    private int churnIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        loadBalancer = LoadBalancerImpl.builder()
+                .name("churn benchmark LB")
+                .selectionStrategy("roundRobin".equals(strategy) ? new RoundRobinSelection() : new RandomSelection())
+                .maxCapacity(poolSize)
+                .build();
+        providers = IntStream.range(0, poolSize)
+                .mapToObj(i -> new Provider("P" + i))
+                .collect(Collectors.toList());
+        loadBalancer.registerAll(providers);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        loadBalancer.close();
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public String churnGet() {
+        return loadBalancer.get();
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void churnExcludeInclude() {
+        Provider provider = providers.get(churnIndex);
+        churnIndex = (churnIndex + 1) % poolSize;
+        loadBalancer.exclude(provider);
+        Blackhole.consumeCPU(churnPauseTokens);
+        loadBalancer.include(provider);
+        Blackhole.consumeCPU(churnPauseTokens);
+    }
+}
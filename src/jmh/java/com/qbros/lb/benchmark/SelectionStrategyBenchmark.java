@@ -0,0 +1,39 @@
+package com.qbros.lb.benchmark;
+
+import com.qbros.lb.core.RandomSelection;
+import com.qbros.lb.core.RoundRobinSelection;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of picking the next index, the shared {@link RoundRobinSelection} counter is contended by all threads.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+public class SelectionStrategyBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int poolSize;
+
+    private RoundRobinSelection roundRobinSelection;
+    private RandomSelection randomSelection;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        roundRobinSelection = new RoundRobinSelection();
+        randomSelection = new RandomSelection();
+    }
+
+    @Benchmark
+    public int roundRobinPick() {
+        return roundRobinSelection.pick(poolSize);
+    }
+
+    @Benchmark
+    public int randomPick() {
+        return randomSelection.pick(poolSize);
+    }
+}
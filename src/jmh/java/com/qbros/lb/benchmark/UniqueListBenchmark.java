@@ -0,0 +1,63 @@
+package com.qbros.lb.benchmark;
+
+import com.qbros.lb.core.CopyOnWriteUniqueList;
+import com.qbros.lb.core.UniqueList;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Single threaded cost of the provider collections, the thread safety is provided by their callers.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+public class UniqueListBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    private int poolSize;
+
+    private UniqueList<Integer> uniqueList;
+    private CopyOnWriteUniqueList<Integer> copyOnWriteList;
+    private List<Integer> items;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        items = IntStream.range(0, poolSize).boxed().collect(Collectors.toList());
+        uniqueList = new UniqueList<>(poolSize);
+        uniqueList.addAll(items);
+        copyOnWriteList = new CopyOnWriteUniqueList<>(poolSize);
+        copyOnWriteList.addAll(items);
+    }
+
+    @Benchmark
+    public Integer uniqueListGetAtIndex() {
+        return uniqueList.getAtIndex(ThreadLocalRandom.current().nextInt(poolSize));
+    }
+
+    @Benchmark
+    public int uniqueListRemoveAddOne() {
+        Integer item = items.get(ThreadLocalRandom.current().nextInt(poolSize));
+        uniqueList.remove(item);
+        uniqueList.addOne(item);
+        return uniqueList.getSize();
+    }
+
+    @Benchmark
+    public Integer copyOnWriteGetAtIndex() {
+        return copyOnWriteList.getAtIndex(ThreadLocalRandom.current().nextInt(poolSize));
+    }
+
+    @Benchmark
+    public int copyOnWriteRemoveAddOne() {
+        Integer item = items.get(ThreadLocalRandom.current().nextInt(poolSize));
+        copyOnWriteList.remove(item);
+        copyOnWriteList.addOne(item);
+        return copyOnWriteList.getSize();
+    }
+}
@@ -29,24 +29,46 @@ public abstract class AbsConcurrentLoadBalancer implements LoadBalancer {
         }
     }
 
+    /**
+     * Write lock decorator
+     *
+     * @param callable executable that should run mutually exclusive
+     * @param <U>      Type of the return value
+     * @return the result of write operation
+     * @throws IllegalStateException wrapping the checked exception thrown by the {@code callable}
+     */
+    protected <U> U writeThreadSafe(Callable<U> callable) {
+        writeLock.lock();
+        try {
+            return callable.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
     /**
      * Read lock decorator
      *
      * @param callable executable that should run mutually exclusive
      * @param <U>      Type of the return value
      * @return the result of read operation
+     * @throws IllegalStateException wrapping the checked exception thrown by the {@code callable}
      */
     protected <U> U readThreadSafe(Callable<U> callable) {
         readLock.lock();
-        U result = null;
         try {
-            result = callable.call();
+            return callable.call();
+        } catch (RuntimeException e) {
+            throw e;
         } catch (Exception e) {
-            e.printStackTrace();
+            throw new IllegalStateException(e);
         } finally {
             readLock.unlock();
         }
-        return result;
     }
 }
 
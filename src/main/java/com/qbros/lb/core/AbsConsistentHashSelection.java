@@ -0,0 +1,157 @@
+package com.qbros.lb.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Base class of the key affinity strategies: the same key is routed to the same provider, and only a small share of
+ * the keys moves when a provider is included or excluded.
+ * <p>
+ * Every strategy builds a {@link LookupTable} when the providers change, which gives an ordered list of candidates
+ * for every key. The first candidate that is alive (and not overloaded, see below) is picked.
+ * <p>
+ * Bounded loads: if {@code loadFactor} is set, a provider whose outstanding requests reach
+ * {@code ceil(loadFactor * (total outstanding requests + 1) / number of providers)} is skipped, so keys spill over to
+ * the next candidate instead of overloading a provider with hot keys. The total is kept up to date by the load
+ * balancer through {@link #onRequestStarted(Provider)} and {@link #onRequestCompleted(Provider)}, and a pick walks at
+ * most n candidates: if none of them is under the bound, the least loaded alive one is picked.
+ */
+@Slf4j
+public abstract class AbsConsistentHashSelection implements SelectionStrategy {
+
+    //0 means unbounded
+    private final double loadFactor;
+    //use volatile to publish the rebuilt table to the readers
+    private volatile LookupTable table;
+    //outstanding requests of all the providers, only kept with bounded loads
+    private final PaddedCounter totalLoad = new PaddedCounter(0);
+
+    /**
+     * @param loadFactor allowed multiple of the average load of the providers (e.g. 1.25), {@code 0} to disable it
+     */
+    protected AbsConsistentHashSelection(double loadFactor) {
+        if (loadFactor != 0 && loadFactor < 1) {
+            throw new IllegalArgumentException("Load factor should be 0 (unbounded) or at least 1: " + loadFactor);
+        }
+        this.loadFactor = loadFactor;
+    }
+
+    /**
+     * Without a key there is no affinity, it falls back to a random selection.
+     */
+    @Override
+    public int pick(int total) {
+        return ThreadLocalRandom.current().nextInt(total);
+    }
+
+    @Override
+    public int pick(List<Provider> providers, String key) {
+
+        long hash = hash(key);
+        LookupTable current = table;
+        //the table is not built for this list yet (it is being changed right now)
+        if (current == null || current.providers() != providers) {
+            return (int) Math.floorMod(hash, (long) providers.size());
+        }
+
+        int maxLoad = (loadFactor == 0) ? Integer.MAX_VALUE : maxLoad(providers.size());
+        int candidates = Math.min(current.candidates(), providers.size());
+        int leastLoaded = -1;
+        int leastLoad = Integer.MAX_VALUE;
+        for (int attempt = 0; attempt < candidates; attempt++) {
+            int index = current.candidate(hash, attempt);
+            Provider provider = providers.get(index);
+            if (!provider.isAlive()) {
+                continue;
+            }
+            int load = provider.getOutstandingRequests();
+            if (load < maxLoad) {
+                return index;
+            }
+            if (load < leastLoad) {
+                leastLoaded = index;
+                leastLoad = load;
+            }
+        }
+
+        //every walked candidate is dead or overloaded, without any alive one stick to the owner of the key
+        return (leastLoaded >= 0) ? leastLoaded : current.candidate(hash, 0);
+    }
+
+    @Override
+    public void onRequestStarted(Provider provider) {
+        if (loadFactor != 0) {
+            totalLoad.getAndAdd(1);
+        }
+    }
+
+    @Override
+    public void onRequestCompleted(Provider provider) {
+        if (loadFactor != 0) {
+            totalLoad.getAndAdd(-1);
+        }
+    }
+
+    @Override
+    public void onProvidersChanged(List<Provider> providers) {
+        table = providers.isEmpty() ? null : buildTable(providers);
+        log.debug("Lookup table rebuilt for [{}] providers by [{}]", providers.size(), this);
+    }
+
+    /**
+     * @param providers the new providers, never empty
+     * @return the lookup table of the providers
+     */
+    protected abstract LookupTable buildTable(List<Provider> providers);
+
+    /**
+     * 64-bit FNV-1a of the characters, followed by the murmur3 finalizer to spread the bits. It does not allocate.
+     */
+    protected static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    protected static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private int maxLoad(int numberOfProviders) {
+        long total = Math.max(totalLoad.get(), 0);
+        return (int) Math.ceil(loadFactor * (total + 1) / numberOfProviders);
+    }
+
+    /**
+     * Precomputed candidates of every key, built once per list of providers.
+     */
+    protected interface LookupTable {
+
+        /**
+         * @return the list of providers this table is built for
+         */
+        List<Provider> providers();
+
+        /**
+         * @return how many candidates can be asked for a key
+         */
+        int candidates();
+
+        /**
+         * @param hash    hash of the key
+         * @param attempt 0 for the owner of the key, 1 for the next candidate and so on
+         * @return index of the provider
+         */
+        int candidate(long hash, int attempt);
+    }
+}
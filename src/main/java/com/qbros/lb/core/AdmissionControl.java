@@ -0,0 +1,185 @@
+package com.qbros.lb.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Aggregated concurrent capacity of the providers of a load balancer: one permit per request that the providers can
+ * service at the same time.
+ * <p>
+ * While there are free permits and nobody is waiting, a permit is taken with a single CAS. Otherwise, the request
+ * waits in a bounded FIFO queue for at most {@code maxWaitMillis}, and is rejected with a
+ * {@link RequestRejectedException} if the queue is full or the wait is over. Waiting is asynchronous, so the
+ * non-blocking callers do not hold a thread while they wait.
+ */
+@Slf4j
+public class AdmissionControl {
+
+    private static final CompletableFuture<Void> ADMITTED = CompletableFuture.completedFuture(null);
+
+    private final int maxQueueSize;
+    private final long maxWaitMillis;
+    //triggers the max wait of the queued requests
+    private final HashedWheelTimer timer;
+    //it might be negative for a while, when providers with in-flight requests are removed
+    private final AtomicInteger permits = new AtomicInteger();
+    //the fast path must not jump the queue
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Deque<Waiter> queue = new ArrayDeque<>();
+
+    /**
+     * @param maxQueueSize  maximum number of requests waiting for a permit
+     * @param maxWaitMillis maximum time a request waits for a permit
+     * @param timer         triggers the max wait
+     */
+    public AdmissionControl(int maxQueueSize, long maxWaitMillis, HashedWheelTimer timer) {
+        this.maxQueueSize = maxQueueSize;
+        this.maxWaitMillis = maxWaitMillis;
+        this.timer = timer;
+    }
+
+    /**
+     * @return completed when the permit is acquired, or exceptionally with a {@link RequestRejectedException}
+     */
+    public CompletableFuture<Void> acquireAsync() {
+
+        if (waiting.get() == 0 && tryTake()) {
+            return ADMITTED;
+        }
+
+        Waiter waiter = new Waiter();
+        synchronized (queue) {
+            if (queue.size() >= maxQueueSize) {
+                return CompletableFuture.failedFuture(new RequestRejectedException(
+                        String.format("All providers are saturated and [%d] requests are already waiting", queue.size())));
+            }
+            queue.addLast(waiter);
+            waiting.incrementAndGet();
+        }
+
+        waiter.timeout = timer.schedule(() -> {
+            synchronized (queue) {
+                if (!queue.remove(waiter)) {
+                    //it is already admitted
+                    return;
+                }
+                waiting.decrementAndGet();
+            }
+            waiter.completeExceptionally(new RequestRejectedException(
+                    String.format("All providers are saturated, no capacity within [%d] ms", maxWaitMillis)));
+        }, maxWaitMillis, TimeUnit.MILLISECONDS);
+        if (waiter.isDone()) {
+            //admitted while the timeout was being scheduled, drain() did not see it
+            waiter.timeout.cancel();
+        }
+
+        //a permit might have been released while the waiter was being queued
+        drain();
+        return waiter;
+    }
+
+    /**
+     * Blocking version of {@link #acquireAsync()}
+     *
+     * @throws RequestRejectedException if the permit could not be acquired
+     */
+    public void acquire() {
+        if (waiting.get() == 0 && tryTake()) {
+            return;
+        }
+        try {
+            acquireAsync().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RequestRejectedException) {
+                throw (RequestRejectedException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public void release() {
+        permits.incrementAndGet();
+        if (waiting.get() > 0) {
+            drain();
+        }
+    }
+
+    /**
+     * Called when providers are included.
+     */
+    public void addPermits(int count) {
+        permits.addAndGet(count);
+        drain();
+    }
+
+    /**
+     * Called when providers are excluded.
+     */
+    public void removePermits(int count) {
+        permits.addAndGet(-count);
+    }
+
+    public int getAvailablePermits() {
+        return permits.get();
+    }
+
+    public int getQueueLength() {
+        return waiting.get();
+    }
+
+    private boolean tryTake() {
+        for (; ; ) {
+            int current = permits.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (permits.compareAndSet(current, current - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Hands the free permits over to the waiters in FIFO order. The waiters are completed outside the lock, as they
+     * continue with the dispatch of their request.
+     */
+    private void drain() {
+        List<Waiter> admitted = null;
+        synchronized (queue) {
+            while (!queue.isEmpty() && tryTake()) {
+                if (admitted == null) {
+                    admitted = new ArrayList<>();
+                }
+                admitted.add(queue.pollFirst());
+                waiting.decrementAndGet();
+            }
+        }
+        if (admitted != null) {
+            for (Waiter waiter : admitted) {
+                boolean completed = waiter.complete(null);
+                //read after the completion: either this sees the timeout, or acquireAsync() sees the completion
+                HashedWheelTimer.Timeout timeout = waiter.timeout;
+                if (timeout != null) {
+                    timeout.cancel();
+                }
+                if (!completed) {
+                    //it was cancelled by the caller
+                    release();
+                }
+            }
+        }
+    }
+
+    private static final class Waiter extends CompletableFuture<Void> {
+        //cancelled once the waiter is admitted
+        private volatile HashedWheelTimer.Timeout timeout;
+    }
+}
@@ -0,0 +1,19 @@
+package com.qbros.lb.core;
+
+/**
+ * Thrown when a backend answers with a server error ({@code 5xx}): the request failed, for the circuit breaker of the
+ * backend as for the caller.
+ */
+public class BackendErrorException extends RuntimeException {
+
+    private final int statusCode;
+
+    public BackendErrorException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
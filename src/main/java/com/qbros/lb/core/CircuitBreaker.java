@@ -0,0 +1,183 @@
+package com.qbros.lb.core;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Passive health of a single provider, based on the outcome of the live requests.
+ * <p>
+ * CLOSED: every request is let through, the outcomes of the last {@code slidingWindowSize} requests are kept.
+ * The breaker opens when the failure rate of the window, or the number of consecutive failures, reaches its threshold.
+ * <p>
+ * OPEN: the provider is ejected from the selection. After a backoff (doubled on every successive opening) the breaker
+ * becomes HALF_OPEN.
+ * <p>
+ * HALF_OPEN: only {@code halfOpenTrialRequests} trial requests are let through. A successful trial closes the
+ * breaker, a failed one opens it again.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final Config config;
+    //outcomes of the last requests, true means failure
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCalls;
+    private int windowFailures;
+    private int consecutiveFailures;
+    private int trialPermits;
+    //number of times the breaker opened since it was closed the last time
+    private int successiveOpens;
+    private State state = State.CLOSED;
+
+    public CircuitBreaker(Config config) {
+        this.config = config;
+        this.window = new boolean[config.slidingWindowSize];
+    }
+
+    /**
+     * @return {@code true} if a request can be sent to the provider
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (trialPermits > 0) {
+                    trialPermits--;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return {@code true} if this success closed a half-open breaker
+     */
+    public synchronized boolean onSuccess() {
+        if (state == State.HALF_OPEN) {
+            log.info("Trial request succeeded, closing the circuit breaker");
+            close();
+            return true;
+        }
+        if (state == State.CLOSED) {
+            consecutiveFailures = 0;
+            record(false);
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code true} if this failure opened the breaker, the provider should be ejected
+     */
+    public synchronized boolean onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return true;
+        }
+        if (state == State.CLOSED) {
+            consecutiveFailures++;
+            record(true);
+            boolean tooManyConsecutiveFailures = consecutiveFailures >= config.consecutiveFailureThreshold;
+            boolean failureRateExceeded = windowCalls >= config.minimumNumberOfCalls
+                    && windowFailures >= config.failureRateThreshold * windowCalls;
+            if (tooManyConsecutiveFailures || failureRateExceeded) {
+                open();
+                return true;
+            }
+        }
+        //results of the requests sent before the breaker opened
+        return false;
+    }
+
+    /**
+     * Called once the backoff of an open breaker is over.
+     */
+    public synchronized void halfOpen() {
+        if (state == State.OPEN) {
+            state = State.HALF_OPEN;
+            trialPermits = config.halfOpenTrialRequests;
+        }
+    }
+
+    /**
+     * @return how long the provider should stay ejected after the last opening
+     */
+    public synchronized long getBackoffMillis() {
+        long backoff = config.openBackoffMillis << Math.min(Math.max(successiveOpens - 1, 0), 20);
+        return Math.min(backoff, config.maxOpenBackoffMillis);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        successiveOpens++;
+        log.info("Circuit breaker opened [{}] times in a row, consecutive failures [{}], failures [{}/{}]",
+                successiveOpens, consecutiveFailures, windowFailures, windowCalls);
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        successiveOpens = 0;
+        consecutiveFailures = 0;
+        windowIndex = 0;
+        windowCalls = 0;
+        windowFailures = 0;
+    }
+
+    private void record(boolean failure) {
+        if (windowCalls == window.length) {
+            //the oldest outcome leaves the window
+            if (window[windowIndex]) {
+                windowFailures--;
+            }
+        } else {
+            windowCalls++;
+        }
+        window[windowIndex] = failure;
+        if (failure) {
+            windowFailures++;
+        }
+        windowIndex = (windowIndex + 1) % window.length;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CircuitBreaker{" +
+                "state=" + state +
+                ", failures=" + windowFailures + "/" + windowCalls +
+                ", consecutiveFailures=" + consecutiveFailures +
+                '}';
+    }
+
+    @Value
+    @Builder
+    public static class Config {
+        //number of the last requests whose outcome is considered
+        @Builder.Default
+        int slidingWindowSize = 20;
+        //the failure rate is not considered before this number of requests
+        @Builder.Default
+        int minimumNumberOfCalls = 10;
+        @Builder.Default
+        double failureRateThreshold = 0.5;
+        @Builder.Default
+        int consecutiveFailureThreshold = 5;
+        @Builder.Default
+        long openBackoffMillis = 1000;
+        @Builder.Default
+        long maxOpenBackoffMillis = 30_000;
+        @Builder.Default
+        int halfOpenTrialRequests = 1;
+    }
+}
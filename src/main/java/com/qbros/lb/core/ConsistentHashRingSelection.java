@@ -0,0 +1,92 @@
+package com.qbros.lb.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ketama style consistent hashing: every provider is placed on a ring of hashes as {@code virtualNodes} points,
+ * a key is owned by the first point clockwise from its hash. Lookups are O(log(n * virtualNodes)).
+ */
+@Slf4j
+public class ConsistentHashRingSelection extends AbsConsistentHashSelection {
+
+    //low bits of a point holding the index of its provider, the remaining 44 bits are its position on the ring
+    private static final long OWNER_MASK = (1L << 20) - 1;
+
+    private final int virtualNodes;
+
+    public ConsistentHashRingSelection() {
+        this(160, 0);
+    }
+
+    /**
+     * @param virtualNodes number of points of every provider on the ring
+     * @param loadFactor   see {@link AbsConsistentHashSelection}, {@code 0} to disable bounded loads
+     */
+    public ConsistentHashRingSelection(int virtualNodes, double loadFactor) {
+        super(loadFactor);
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("Number of virtual nodes should be positive: " + virtualNodes);
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    @Override
+    protected LookupTable buildTable(List<Provider> providers) {
+        return new Ring(providers, virtualNodes);
+    }
+
+    @Override
+    public String toString() {
+        return "ConsistentHashRingSelection";
+    }
+
+    private static final class Ring implements LookupTable {
+
+        private final List<Provider> providers;
+        /**
+         * Sorted points: the high bits are the position on the ring (the hash of the point), the low bits are the index
+         * of its provider. A primitive sort of a single array keeps the rebuild of large rings cheap.
+         */
+        private final long[] points;
+
+        private Ring(List<Provider> providers, int virtualNodes) {
+
+            if (providers.size() > OWNER_MASK + 1) {
+                throw new IllegalArgumentException("Too many providers for a hash ring: " + providers.size());
+            }
+            this.providers = providers;
+            this.points = new long[providers.size() * virtualNodes];
+
+            for (int p = 0; p < providers.size(); p++) {
+                String id = providers.get(p).getId();
+                for (int v = 0; v < virtualNodes; v++) {
+                    points[p * virtualNodes + v] = (hash(id + "-" + v) & ~OWNER_MASK) | p;
+                }
+            }
+            Arrays.sort(points);
+        }
+
+        @Override
+        public List<Provider> providers() {
+            return providers;
+        }
+
+        @Override
+        public int candidates() {
+            return points.length;
+        }
+
+        @Override
+        public int candidate(long hash, int attempt) {
+            //the first point clockwise from the hash, whatever its provider
+            int start = Arrays.binarySearch(points, hash & ~OWNER_MASK);
+            if (start < 0) {
+                start = -start - 1;
+            }
+            return (int) (points[(start + attempt) % points.length] & OWNER_MASK);
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.qbros.lb.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+
+/**
+ * Same contract as {@link UniqueList} (random access, no duplicates, limited size), but every modification publishes
+ * a new immutable {@link Snapshot} through a single volatile reference.
+ * <p>
+ * Readers take one {@link #snapshot()} and work on it without any lock: the size and the items they see always belong
+ * to the same version of the list, so an index picked for a snapshot is always valid for that snapshot.
+ * <p>
+ * It is meant for pools of tens of thousands of items: the index of every item is kept in an {@link IndexMap}, a
+ * removed item is replaced by the last one (swap-remove), and a snapshot is made of chunks of {@value #CHUNK_SIZE}
+ * items, so a new snapshot only copies the chunks which are modified and the chunk directory, not the whole list.
+ * As a consequence, removing an item changes the order of the remaining ones.
+ * <p>
+ * NOTE: Modifying operations are NOT thread safe and must be serialized by the caller (e.g. under a write lock).
+ */
+@Slf4j
+public class CopyOnWriteUniqueList<T> {
+
+    static final int CHUNK_SHIFT = 6;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    //index of every item in the current snapshot, it is only touched by the (serialized) writers
+    private final IndexMap<T> indexes = new IndexMap<>();
+    private final int maxCapacity;
+    //use volatile to publish every new snapshot to the readers
+    private volatile Snapshot<T> snapshot = Snapshot.empty();
+
+    public CopyOnWriteUniqueList() {
+        this(10);
+    }
+
+    public CopyOnWriteUniqueList(int maxCapacity) {
+        this.maxCapacity = maxCapacity;
+    }
+
+    /**
+     * Every modifying operation is mutually exclusive
+     *
+     * @param newItems list of items to add
+     * @return the items which were actually added
+     */
+    public List<T> addAll(List<T> newItems) {
+
+        Snapshot<T> current = snapshot;
+        validateSize(current.size(), newItems.size());
+
+        Mutation mutation = new Mutation(current);
+        List<T> added = new ArrayList<>();
+        for (T item : newItems) {
+            if (!indexes.contains(item)) {
+                indexes.put(item, mutation.size);
+                mutation.append(item);
+                added.add(item);
+            }
+        }
+
+        if (!added.isEmpty()) {
+            publish(mutation);
+        }
+        log.debug("Items [{}] added by Thread [{}], total number of items [{}]",
+                added, Thread.currentThread().getName(), snapshot.size());
+        return added;
+    }
+
+    /**
+     * Every modifying operation is mutually exclusive
+     *
+     * @param newItem single item to add
+     * @return {@code true} if the item was added
+     */
+    public boolean addOne(T newItem) {
+
+        if (!indexes.contains(newItem)) {
+            Snapshot<T> current = snapshot;
+            validateSize(current.size(), 1);
+            Mutation mutation = new Mutation(current);
+            indexes.put(newItem, mutation.size);
+            mutation.append(newItem);
+            publish(mutation);
+            log.debug("item added [{}]", newItem);
+            return true;
+        } else {
+            log.info("Element [{}] already exist in the collection, and it was nt added again", newItem);
+            return false;
+        }
+    }
+
+    /**
+     * Every modifying operation is mutually exclusive
+     *
+     * @param itemToRemove item to remove
+     * @return {@code true} if the item was removed
+     */
+    public boolean remove(T itemToRemove) {
+
+        if (indexes.contains(itemToRemove)) {
+            Mutation mutation = new Mutation(snapshot);
+            swapRemove(mutation, itemToRemove);
+            publish(mutation);
+            log.debug("item removed [{}]", itemToRemove);
+            return true;
+        } else {
+            log.info("Element [{}] does not exist in the collection, and it can't be removed", itemToRemove);
+            return false;
+        }
+    }
+
+    /**
+     * Every modifying operation is mutually exclusive
+     *
+     * @param itemsToRemove items to remove, all of them are removed in a single new snapshot
+     * @return the items which were actually removed
+     */
+    public List<T> removeAll(Collection<T> itemsToRemove) {
+
+        Mutation mutation = new Mutation(snapshot);
+        List<T> removed = new ArrayList<>();
+        for (T item : itemsToRemove) {
+            if (indexes.contains(item)) {
+                swapRemove(mutation, item);
+                removed.add(item);
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            publish(mutation);
+            log.debug("items removed [{}]", removed);
+        }
+        return removed;
+    }
+
+    /**
+     * Every modifying operation is mutually exclusive
+     * <p>
+     * The content becomes {@code desired} in a single new snapshot, so readers see either the old or the new content.
+     * The current instances which are still desired stay where they are; an item equal to a current one but which is
+     * another instance takes its place.
+     *
+     * @param desired the whole new content, duplicates are ignored
+     * @return the items which were actually added and removed, a replaced item is in both
+     * @throws IllegalArgumentException if {@code desired} exceeds the size, nothing is changed then
+     */
+    public Diff<T> replaceAll(Collection<T> desired) {
+
+        Map<T, T> wanted = new LinkedHashMap<>();
+        for (T item : desired) {
+            wanted.putIfAbsent(item, item);
+        }
+        validateSize(0, wanted.size());
+
+        Snapshot<T> current = snapshot;
+        List<T> gone = new ArrayList<>();
+        List<T> replaced = new ArrayList<>();
+        List<T> replacements = new ArrayList<>();
+        for (int i = 0; i < current.size(); i++) {
+            T item = current.get(i);
+            T wantedItem = wanted.remove(item);
+            if (wantedItem == null) {
+                gone.add(item);
+            } else if (wantedItem != item) {
+                replaced.add(item);
+                replacements.add(wantedItem);
+            }
+        }
+        //what is left is not in the list yet
+        List<T> added = new ArrayList<>(replacements);
+        added.addAll(wanted.values());
+        List<T> removed = new ArrayList<>(gone);
+        removed.addAll(replaced);
+
+        if (removed.isEmpty() && added.isEmpty()) {
+            return new Diff<>(added, removed);
+        }
+        Mutation mutation = new Mutation(current);
+        for (T item : gone) {
+            swapRemove(mutation, item);
+        }
+        for (T item : replacements) {
+            int index = indexes.get(item);
+            mutation.set(index, item);
+            indexes.put(item, index);
+        }
+        for (T item : wanted.values()) {
+            indexes.put(item, mutation.size);
+            mutation.append(item);
+        }
+        publish(mutation);
+        log.debug("items replaced, added [{}], removed [{}]", added, removed);
+        return new Diff<>(added, removed);
+    }
+
+    /**
+     * @return the current version of the list, it never changes after it is returned
+     */
+    public Snapshot<T> snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Provides random access on the current snapshot
+     *
+     * @param index index
+     * @return the item at index
+     */
+    public T getAtIndex(int index) {
+        Snapshot<T> current = snapshot;
+        return (index < current.size()) ? current.get(index) : null;
+    }
+
+    /**
+     * @return total number of elements in the collection
+     */
+    public int getSize() {
+        return snapshot.size();
+    }
+
+    public Collection<T> getContent() {
+        return snapshot.asList();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuffer sb = new StringBuffer("CopyOnWriteUniqueList{");
+        sb.append("items=").append(snapshot.asList());
+        sb.append(", Total number of items=").append(snapshot.size());
+        sb.append('}');
+        return sb.toString();
+    }
+
+    /**
+     * The last item takes the place of the removed one.
+     */
+    private void swapRemove(Mutation mutation, T item) {
+        int index = indexes.remove(item);
+        int last = mutation.size - 1;
+        if (index != last) {
+            @SuppressWarnings("unchecked")
+            T moved = (T) mutation.get(last);
+            mutation.set(index, moved);
+            indexes.put(moved, index);
+        }
+        mutation.set(last, null);
+        mutation.size--;
+    }
+
+    private void publish(Mutation mutation) {
+        snapshot = new Snapshot<>(Arrays.copyOf(mutation.chunks, chunkCount(mutation.size)), mutation.size);
+    }
+
+    private void validateSize(int currentSize, int addCount) {
+        if (currentSize + addCount > maxCapacity) {
+            throw new IllegalArgumentException("List exceeds the size");
+        }
+    }
+
+    private static int chunkCount(int size) {
+        return (size + CHUNK_MASK) >>> CHUNK_SHIFT;
+    }
+
+    /**
+     * Changes on top of a snapshot. The chunks of the snapshot are shared with the new one, a chunk is copied only
+     * the first time it is modified.
+     */
+    private static final class Mutation {
+
+        private Object[][] chunks;
+        //chunks copied by this mutation, they can be modified in place
+        private boolean[] owned;
+        private int size;
+
+        private Mutation(Snapshot<?> snapshot) {
+            this.chunks = snapshot.chunks.clone();
+            this.owned = new boolean[chunks.length];
+            this.size = snapshot.size;
+        }
+
+        private Object get(int index) {
+            return chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+        }
+
+        private void set(int index, Object item) {
+            writableChunk(index >>> CHUNK_SHIFT)[index & CHUNK_MASK] = item;
+        }
+
+        private void append(Object item) {
+            int chunk = size >>> CHUNK_SHIFT;
+            if (chunk == chunks.length) {
+                chunks = Arrays.copyOf(chunks, Math.max(chunks.length * 2, 1));
+                owned = Arrays.copyOf(owned, chunks.length);
+            }
+            if (chunks[chunk] == null) {
+                chunks[chunk] = new Object[CHUNK_SIZE];
+                owned[chunk] = true;
+            }
+            set(size++, item);
+        }
+
+        private Object[] writableChunk(int chunk) {
+            if (!owned[chunk]) {
+                chunks[chunk] = chunks[chunk].clone();
+                owned[chunk] = true;
+            }
+            return chunks[chunk];
+        }
+    }
+
+    /**
+     * An immutable version of the list.
+     */
+    public static final class Snapshot<T> {
+
+        private static final Snapshot<?> EMPTY = new Snapshot<>(new Object[0][], 0);
+
+        private final Object[][] chunks;
+        private final int size;
+        //created once per snapshot so readers never allocate a view
+        private final List<T> view;
+
+        private Snapshot(Object[][] chunks, int size) {
+            this.chunks = chunks;
+            this.size = size;
+            this.view = new View();
+        }
+
+        @SuppressWarnings("unchecked")
+        static <T> Snapshot<T> empty() {
+            return (Snapshot<T>) EMPTY;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            return (T) chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+        }
+
+        public List<T> asList() {
+            return view;
+        }
+
+        private final class View extends AbstractList<T> implements RandomAccess {
+
+            @Override
+            public T get(int index) {
+                Objects.checkIndex(index, size);
+                return Snapshot.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.qbros.lb.core;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Items actually added and removed by a change of a collection. An item replaced by a new instance is in both.
+ */
+@Value
+public class Diff<T> {
+    List<T> added;
+    List<T> removed;
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty();
+    }
+}
@@ -0,0 +1,24 @@
+package com.qbros.lb.core;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Where the providers of a load balancer come from (a file, a registry, DNS...). A source always publishes the whole
+ * set of definitions, {@link ProviderDiscovery} works out what changed.
+ */
+public interface DiscoverySource extends AutoCloseable {
+
+    /**
+     * Publishes the current definitions before returning, then every new version of them until the source is closed.
+     *
+     * @param listener receives the whole set of definitions, called by one thread at a time
+     */
+    void start(Consumer<List<ProviderDefinition>> listener);
+
+    /**
+     * Stops publishing, the providers already published stay in the load balancer.
+     */
+    @Override
+    void close();
+}
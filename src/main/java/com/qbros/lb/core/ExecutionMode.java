@@ -0,0 +1,51 @@
+package com.qbros.lb.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads running the blocking work of a load balancer: the {@link Provider#provide()} calls of the non-blocking API
+ * (including the retried, hedged and batched ones), the heart beat probes and the re-admissions.
+ * <p>
+ * Every load balancer creates its own executors and shuts them down on {@link LoadBalancerImpl#close()}, so a blocking
+ * provider never holds the threads of another load balancer or of the rest of the process.
+ */
+public enum ExecutionMode {
+
+    /**
+     * Every executor is a bounded pool of named daemon platform threads, the tasks above the bound wait in its queue.
+     * A blocking provider holds one of the pool threads for the whole call. Idle threads end after a minute.
+     */
+    PLATFORM,
+    /**
+     * Every task runs on its own named virtual thread, a blocking provider call only parks its virtual thread, so the
+     * number of calls in flight is not bounded by the size of a pool.
+     */
+    VIRTUAL;
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * @param name       prefix of the thread names
+     * @param maxThreads bound of the platform threads, ignored by {@link #VIRTUAL}
+     * @return a new executor, the caller shuts it down
+     */
+    public ExecutorService newExecutor(String name, int maxThreads) {
+        if (this == VIRTUAL) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+        }
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
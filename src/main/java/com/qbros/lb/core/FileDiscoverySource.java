@@ -0,0 +1,163 @@
+package com.qbros.lb.core;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Reads the provider definitions from a JSON file, and publishes them again every time the file changes:
+ * <pre>
+ * {"providers": [
+ *   {"id": "P1", "weight": 5, "zone": "eu-west-1a"},
+ *   {"id": "B1", "address": "localhost:9000", "weight": 20, "zone": "eu-west-1b"}
+ * ]}
+ * </pre>
+ * The directory of the file is watched by a {@link WatchService} on a dedicated thread. The writes of a burst (e.g.
+ * a truncate followed by a write, or a write to a temporary file followed by a rename) are applied once, when no
+ * event came for {@code debounceMillis}. A file which can not be read or parsed is ignored, the last published
+ * definitions stay in place. So is a file without the {@code providers} key (e.g. {@code {}} written half-way), only
+ * an explicit empty list removes all the providers.
+ */
+@Slf4j
+public class FileDiscoverySource implements DiscoverySource {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private final Path file;
+    private final long debounceMillis;
+    private WatchService watchService;
+    //only used by the watcher thread once started
+    private List<ProviderDefinition> published;
+    private volatile boolean closed;
+
+    public FileDiscoverySource(Path file) {
+        this(file, 200);
+    }
+
+    /**
+     * @param file           the definitions, its directory must exist
+     * @param debounceMillis quiet time after the last event of a burst before the file is read
+     */
+    public FileDiscoverySource(Path file, long debounceMillis) {
+        this.file = file.toAbsolutePath();
+        this.debounceMillis = debounceMillis;
+    }
+
+    /**
+     * @throws IllegalStateException if the file can not be read or parsed at start
+     */
+    @Override
+    public void start(Consumer<List<ProviderDefinition>> listener) {
+        try {
+            watchService = file.getFileSystem().newWatchService();
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            publish(read(), listener);
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw new IllegalStateException("Can not discover the providers of [" + file + "]", e);
+        }
+
+        Thread watcher = new Thread(() -> watch(listener), "lb-discovery-" + file.getFileName());
+        watcher.setDaemon(true);
+        watcher.start();
+        log.info("Watching [{}] for providers", file);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (watchService != null) {
+            try {
+                //wakes the watcher thread up
+                watchService.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void watch(Consumer<List<ProviderDefinition>> listener) {
+        try {
+            while (!closed) {
+                boolean changed = concernsFile(watchService.take());
+                for (WatchKey next = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS); next != null;
+                     next = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) {
+                    changed |= concernsFile(next);
+                }
+                if (changed) {
+                    reload(listener);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            //closed while waiting
+        }
+        log.info("Stopped watching [{}]", file);
+    }
+
+    private boolean concernsFile(WatchKey key) {
+        boolean concerned = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            //some events were lost, the file might have changed
+            concerned |= event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context());
+        }
+        key.reset();
+        return concerned;
+    }
+
+    private void reload(Consumer<List<ProviderDefinition>> listener) {
+        try {
+            publish(read(), listener);
+        } catch (NoSuchFileException e) {
+            log.warn("Providers file [{}] is gone, keeping the current providers", file);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Providers file [{}] is ignored, keeping the current providers", file, e);
+        }
+    }
+
+    private void publish(List<ProviderDefinition> definitions, Consumer<List<ProviderDefinition>> listener) {
+        if (definitions.equals(published)) {
+            log.debug("Providers file [{}] touched without any change", file);
+            return;
+        }
+        listener.accept(definitions);
+        published = definitions;
+    }
+
+    private List<ProviderDefinition> read() throws IOException {
+        Document document = MAPPER.readValue(Files.readAllBytes(file), Document.class);
+        List<ProviderDefinition> definitions = document.providers();
+        if (definitions == null) {
+            throw new IllegalArgumentException("The providers are missing");
+        }
+        Set<String> ids = new HashSet<>();
+        for (ProviderDefinition definition : definitions) {
+            if (!ids.add(definition.id())) {
+                throw new IllegalArgumentException("Provider [" + definition.id() + "] is defined twice");
+            }
+        }
+        return List.copyOf(definitions);
+    }
+
+    record Document(List<ProviderDefinition> providers) {
+    }
+}
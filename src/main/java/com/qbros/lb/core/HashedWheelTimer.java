@@ -0,0 +1,307 @@
+package com.qbros.lb.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single thread serving any number of timers, with O(1) scheduling and cancelling.
+ * <p>
+ * The time is divided into ticks and the timers are hashed by their deadline into a wheel of {@code wheelSize}
+ * buckets. On every tick, the thread expires the timers of one bucket; a timer which is more than one turn of the
+ * wheel away just has its remaining rounds decremented. A timer never fires before its deadline, and at most one tick
+ * after it.
+ * <p>
+ * The tasks run on the timer thread, so they must be short: blocking work should be handed over to an executor.
+ * <p>
+ * {@link #shared()} is used by all the load balancers of the process, for their heart beats and timeouts.
+ */
+@Slf4j
+public final class HashedWheelTimer implements AutoCloseable {
+
+    private static final HashedWheelTimer SHARED = new HashedWheelTimer("lb-timer", 10, TimeUnit.MILLISECONDS, 512);
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    //timers are added and cancelled by any thread, but the wheel is only touched by the timer thread
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+    private final Thread worker;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final long startTime = System.nanoTime();
+    private volatile boolean stopped;
+    //number of ticks since the start, only used by the timer thread
+    private long tick;
+
+    /**
+     * @param name         name of the timer thread
+     * @param tickDuration resolution of the timer
+     * @param unit         unit of the {@code tickDuration}
+     * @param wheelSize    number of buckets, rounded up to a power of two
+     */
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick duration and wheel size should be positive");
+        }
+        this.tickNanos = unit.toNanos(tickDuration);
+        int size = Integer.highestOneBit(wheelSize - 1) << 1;
+        this.wheel = new Bucket[Math.max(size, 1)];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = wheel.length - 1;
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+    }
+
+    /**
+     * @return the timer of the process, it is never stopped
+     */
+    public static HashedWheelTimer shared() {
+        return SHARED;
+    }
+
+    /**
+     * @param task  runs once on the timer thread
+     * @param delay time before the task runs
+     * @param unit  unit of the {@code delay}
+     * @return cancels the task
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        return add(new Timeout(this, task, deadlineOf(delay, unit), 0));
+    }
+
+    /**
+     * @param task         runs on the timer thread every {@code period}, until it is cancelled
+     * @param initialDelay time before the first run
+     * @param period       time between the start of two runs
+     * @param unit         unit of the {@code initialDelay} and the {@code period}
+     * @return cancels the task
+     */
+    public Timeout scheduleAtFixedRate(Runnable task, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period should be positive: " + period);
+        }
+        return add(new Timeout(this, task, deadlineOf(initialDelay, unit), unit.toNanos(period)));
+    }
+
+    /**
+     * @return number of tasks which are scheduled and not expired or cancelled yet
+     */
+    public long getPendingTimeouts() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the timer thread, the pending tasks never run. The {@link #shared()} timer can not be closed.
+     */
+    @Override
+    public void close() {
+        if (this == SHARED) {
+            throw new IllegalStateException("The shared timer can not be closed");
+        }
+        stopped = true;
+        LockSupport.unpark(worker);
+    }
+
+    private Timeout add(Timeout timeout) {
+        if (stopped) {
+            throw new IllegalStateException("Timer is closed");
+        }
+        if (started.compareAndSet(false, true)) {
+            worker.start();
+        }
+        pending.incrementAndGet();
+        added.add(timeout);
+        return timeout;
+    }
+
+    private long deadlineOf(long delay, TimeUnit unit) {
+        return System.nanoTime() - startTime + unit.toNanos(Math.max(delay, 0));
+    }
+
+    private void run() {
+        while (!stopped) {
+            long tickDeadline = waitForNextTick();
+            if (stopped) {
+                break;
+            }
+            removeCancelled();
+            transferAdded();
+            wheel[(int) (tick & mask)].expire(tickDeadline);
+            tick++;
+        }
+        log.debug("Timer [{}] stopped", worker.getName());
+    }
+
+    /**
+     * @return the end of the current tick, relative to the start time
+     */
+    private long waitForNextTick() {
+        long deadline = tickNanos * (tick + 1);
+        for (; ; ) {
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos <= 0 || stopped) {
+                return deadline;
+            }
+            LockSupport.parkNanos(this, sleepNanos);
+        }
+    }
+
+    private void transferAdded() {
+        for (Timeout timeout = added.poll(); timeout != null; timeout = added.poll()) {
+            if (timeout.state != Timeout.ST_INIT) {
+                continue;
+            }
+            //the tick the deadline falls in, it is processed once the tick is over, so never too early
+            long calculated = timeout.deadline / tickNanos;
+            timeout.remainingRounds = Math.max(calculated - tick, 0) / wheel.length;
+            wheel[(int) (Math.max(calculated, tick) & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        for (Timeout timeout = cancelled.poll(); timeout != null; timeout = cancelled.poll()) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    /**
+     * A scheduled task, it can be cancelled until it runs.
+     */
+    public static final class Timeout {
+
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final HashedWheelTimer timer;
+        private final Runnable task;
+        private final long periodNanos;
+        private volatile int state = ST_INIT;
+        //only used by the timer thread
+        private long deadline;
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(HashedWheelTimer timer, Runnable task, long deadline, long periodNanos) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+            this.periodNanos = periodNanos;
+        }
+
+        /**
+         * @return {@code false} if the task already ran (a periodic task can always be cancelled) or was cancelled
+         */
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            timer.pending.decrementAndGet();
+            timer.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+
+        private void expire() {
+            if (periodNanos == 0) {
+                if (!STATE.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+                    return;
+                }
+                timer.pending.decrementAndGet();
+            }
+            try {
+                task.run();
+            } catch (Throwable t) {
+                log.warn("Timer task [{}] failed", task, t);
+            }
+            if (periodNanos > 0 && state == ST_INIT) {
+                //the next run is placed in the wheel on the next tick
+                deadline += periodNanos;
+                timer.added.add(this);
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of the timers of one slot of the wheel, only used by the timer thread.
+     */
+    private static final class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void expire(long tickDeadline) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.state != Timeout.ST_INIT) {
+                    remove(timeout);
+                } else if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    if (timeout.deadline <= tickDeadline) {
+                        timeout.expire();
+                    } else {
+                        //can not happen, the timer is placed by its deadline
+                        timeout.timer.added.add(timeout);
+                    }
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.next = null;
+            timeout.prev = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.qbros.lb.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Step 6 – Heart beat checker
+ * <p>
+ * Every round probes all the providers concurrently, each probe with its own timeout (a timed-out probe means the
+ * provider is dead). The probes of a scheduled round are spread randomly over the interval instead of all firing at
+ * once, and the dead providers of a round are reported as one batch, so they can be removed atomically.
+ * <p>
+ * A slow provider only delays its own probe, the detection latency does not grow with the number of providers. A probe
+ * which times out is interrupted, and while it still runs the provider is not probed again but reported dead, so a
+ * provider ignoring the interrupts holds at most one probe thread.
+ * <p>
+ * The rounds, the spreading of the probes and their timeouts are all timers of a {@link HashedWheelTimer}, which can
+ * be shared by many engines, so a timer per provider is cheap.
+ */
+@Slf4j
+public class HeartbeatEngine {
+
+    private final Supplier<List<Provider>> providers;
+    private final Consumer<List<Provider>> deadProvidersHandler;
+    private final HashedWheelTimer timer;
+    //probes might block, so they do not run on the scheduler
+    private final ExecutorService probeExecutor;
+    private final long intervalMillis;
+    private final long timeoutMillis;
+    //a scheduled round is skipped if the previous one is not finished yet
+    private final AtomicBoolean roundInProgress = new AtomicBoolean();
+    //providers with a running probe
+    private final Set<Provider> probing = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param providers            the providers to check in every round
+     * @param deadProvidersHandler called once per round with all the dead providers of the round (if any)
+     * @param timer                triggers the rounds, the probes and their timeouts
+     * @param probeExecutor        runs the {@link Provider#check()} probes
+     * @param intervalMillis       time between the start of two rounds
+     * @param timeoutMillis        time a single probe may take
+     */
+    public HeartbeatEngine(Supplier<List<Provider>> providers,
+                           Consumer<List<Provider>> deadProvidersHandler,
+                           HashedWheelTimer timer,
+                           ExecutorService probeExecutor,
+                           long intervalMillis,
+                           long timeoutMillis) {
+        this.providers = providers;
+        this.deadProvidersHandler = deadProvidersHandler;
+        this.timer = timer;
+        this.probeExecutor = probeExecutor;
+        this.intervalMillis = intervalMillis;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Schedules a round every {@code intervalMillis}
+     *
+     * @param initialDelayMillis delay of the first round
+     * @return the scheduled rounds, cancelling it stops the engine
+     */
+    public HashedWheelTimer.Timeout start(long initialDelayMillis) {
+        return timer.scheduleAtFixedRate(this::scheduledRound, initialDelayMillis, intervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs a round right now, without spreading the probes.
+     *
+     * @return the dead providers, completed once they are handed over to the handler
+     */
+    public CompletableFuture<List<Provider>> check() {
+        return check(0);
+    }
+
+    /**
+     * Probes a single provider right now, e.g. one which is not used for the selection yet.
+     *
+     * @return {@code false} if the provider is dead or did not answer in time
+     */
+    public CompletableFuture<Boolean> probe(Provider provider) {
+        return probe(provider, 0);
+    }
+
+    private void scheduledRound() {
+        if (!roundInProgress.compareAndSet(false, true)) {
+            log.warn("Previous heart beat round is not finished yet, skipping this one");
+            return;
+        }
+        //the probes are spread over the part of the interval that leaves enough time for the last one to time out
+        check(Math.max(0, intervalMillis - timeoutMillis))
+                .whenComplete((dead, error) -> {
+                    roundInProgress.set(false);
+                    if (error != null) {
+                        log.error("Heart beat round failed", error);
+                    }
+                });
+    }
+
+    private CompletableFuture<List<Provider>> check(long spreadMillis) {
+
+        List<Provider> items = providers.get();
+        List<CompletableFuture<Boolean>> probes = new ArrayList<>(items.size());
+        for (Provider item : items) {
+            long delay = (spreadMillis > 0) ? ThreadLocalRandom.current().nextLong(spreadMillis) : 0;
+            probes.add(probe(item, delay));
+        }
+
+        return CompletableFuture.allOf(probes.toArray(new CompletableFuture[0]))
+                //the last probe might be completed by the timer thread, the removal must not hold it
+                .thenApplyAsync(ignored -> {
+                    List<Provider> dead = new ArrayList<>();
+                    for (int i = 0; i < items.size(); i++) {
+                        if (!probes.get(i).join()) {
+                            dead.add(items.get(i));
+                        }
+                    }
+                    log.debug("Heart beat round finished, dead providers [{}]", dead);
+                    if (!dead.isEmpty()) {
+                        deadProvidersHandler.accept(dead);
+                    }
+                    return dead;
+                }, probeExecutor);
+    }
+
+    private CompletableFuture<Boolean> probe(Provider provider, long delayMillis) {
+
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        AtomicReference<Future<?>> running = new AtomicReference<>();
+        Runnable probe = () -> {
+            try {
+                running.set(probeExecutor.submit(() -> runProbe(provider, result)));
+            } catch (RejectedExecutionException e) {
+                //the engine is stopped
+                result.complete(false);
+            }
+        };
+
+        if (delayMillis > 0) {
+            timer.schedule(probe, delayMillis, TimeUnit.MILLISECONDS);
+        } else {
+            probe.run();
+        }
+        HashedWheelTimer.Timeout timeout = timer.schedule(() -> {
+            if (result.complete(false)) {
+                Future<?> task = running.get();
+                if (task != null) {
+                    task.cancel(true);
+                }
+            }
+        }, delayMillis + timeoutMillis, TimeUnit.MILLISECONDS);
+        result.whenComplete((alive, error) -> timeout.cancel());
+        return result;
+    }
+
+    private void runProbe(Provider provider, CompletableFuture<Boolean> result) {
+        if (result.isDone()) {
+            //timed out while waiting for a thread
+            return;
+        }
+        if (!probing.add(provider)) {
+            log.warn("Previous heart beat of [{}] is still running, skipping this one", provider);
+            result.complete(false);
+            return;
+        }
+        try {
+            result.complete(provider.check());
+        } catch (RuntimeException e) {
+            log.warn("Heart beat of [{}] failed", provider, e);
+            result.complete(false);
+        } finally {
+            probing.remove(provider);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.qbros.lb.core;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when a hedged request is sent and whether it can be afforded.
+ * <p>
+ * Delay: either fixed, or the configured percentile of the observed response times, so only the slowest requests
+ * are hedged. The percentile is recomputed at most every {@code delayRefreshMillis}.
+ * <p>
+ * Budget: every request earns {@code budgetRatio} of a token, a hedged request spends a whole one, so hedging can not
+ * add more than {@code budgetRatio} extra load. At most {@code maxBurst} tokens are saved up.
+ */
+public class HedgePolicy {
+
+    //tokens are stored in millionths, so fractions of a token can be earned without floating point
+    private static final long TOKEN = 1_000_000;
+
+    private final Config config;
+    private final long tokensPerRequest;
+    private final long maxTokens;
+    private final AtomicLong tokens = new AtomicLong();
+    private volatile long delayNanos;
+    private volatile long delayComputedAt;
+
+    public HedgePolicy(Config config) {
+        this.config = config;
+        this.tokensPerRequest = (long) (config.budgetRatio * TOKEN);
+        this.maxTokens = config.maxBurst * TOKEN;
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos((config.delayMillis > 0)
+                ? config.delayMillis : config.defaultDelayMillis);
+        this.delayComputedAt = System.nanoTime();
+    }
+
+    /**
+     * Called for every request which might be hedged.
+     */
+    public void onRequest() {
+        for (; ; ) {
+            long current = tokens.get();
+            if (current >= maxTokens || tokens.compareAndSet(current, Math.min(current + tokensPerRequest, maxTokens))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if the budget allows one more hedged request
+     */
+    public boolean tryAcquire() {
+        for (; ; ) {
+            long current = tokens.get();
+            if (current < TOKEN) {
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - TOKEN)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param responseTimes response times observed by the load balancer
+     * @return how long to wait for the first provider before the hedged request is sent
+     */
+    public long getDelayNanos(LatencyHistogram responseTimes) {
+        if (config.delayMillis > 0) {
+            return delayNanos;
+        }
+        long now = System.nanoTime();
+        if (now - delayComputedAt >= TimeUnit.MILLISECONDS.toNanos(config.delayRefreshMillis)) {
+            //racing threads compute the same value, no need for more coordination
+            delayComputedAt = now;
+            if (responseTimes.getTotalCount() >= config.minimumSamples) {
+                delayNanos = Math.max(responseTimes.getValueAtPercentile(config.percentile),
+                        TimeUnit.MILLISECONDS.toNanos(config.minDelayMillis));
+            }
+        }
+        return delayNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "HedgePolicy{" + config + '}';
+    }
+
+    @Value
+    @Builder
+    public static class Config {
+        //fixed delay before the hedged request, 0 means it is derived from the response times
+        @Builder.Default
+        long delayMillis = 0;
+        //percentile of the response times used as delay
+        @Builder.Default
+        double percentile = 95;
+        //the percentile is not used before this number of requests
+        @Builder.Default
+        long minimumSamples = 100;
+        //delay used until there are enough response times
+        @Builder.Default
+        long defaultDelayMillis = 50;
+        //lower bound of the derived delay, so a fast backend is not hedged on every hiccup
+        @Builder.Default
+        long minDelayMillis = 1;
+        @Builder.Default
+        long delayRefreshMillis = 1000;
+        //maximum extra load, as a fraction of the requests
+        @Builder.Default
+        double budgetRatio = 0.05;
+        @Builder.Default
+        int maxBurst = 10;
+    }
+}
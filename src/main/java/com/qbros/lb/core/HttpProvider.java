@@ -0,0 +1,164 @@
+package com.qbros.lb.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A provider that is a real HTTP/1.1 backend listening on {@code host:port}.
+ * <p>
+ * All the providers share one non-blocking {@link HttpClient}: it is never closed, so a client per provider would
+ * leak its selector thread every time a backend is replaced. Its keep-alive connections are pooled per backend
+ * address, so the connections to a slow backend never starve the others. The size and the idle timeout of the pools
+ * are tuned with the {@code jdk.httpclient.connectionPoolSize} and {@code jdk.httpclient.keepalive.timeout} system
+ * properties.
+ * <p>
+ * A {@code 5xx} response of {@link #provide()} or {@link #provideAsync} fails with a {@link BackendErrorException}, so
+ * it counts as a failure for the circuit breaker. The heart beat probe is a TCP connect to the backend.
+ */
+@Slf4j
+public class HttpProvider extends Provider {
+
+    /**
+     * Hop-by-hop headers, and the headers managed by the {@link HttpClient} itself, they are never forwarded.
+     */
+    public static final Set<String> NOT_FORWARDED_HEADERS = Set.of("connection", "keep-alive", "proxy-authenticate",
+            "proxy-authorization", "te", "trailer", "transfer-encoding", "upgrade", "host", "content-length", "expect");
+
+    //it only runs the (short) completion stages of the client
+    private static final ExecutorService CLIENT_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "http-provider-client");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //the request timeout of every provider also bounds its connects
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(CLIENT_EXECUTOR)
+            .build();
+
+    private final InetSocketAddress address;
+    private final String baseUri;
+    private final Duration requestTimeout;
+
+    public HttpProvider(String id, String host, int port) {
+        this(id, host, port, 100, Duration.ofSeconds(30));
+    }
+
+    /**
+     * @param concurrentCapacity also used as the weight of the provider
+     * @param requestTimeout     maximum time to wait for the response head, connecting included
+     */
+    public HttpProvider(String id, String host, int port, int concurrentCapacity, Duration requestTimeout) {
+        super(id, host + ":" + port, concurrentCapacity);
+        this.address = InetSocketAddress.createUnresolved(host, port);
+        this.baseUri = "http://" + host + ":" + port;
+        this.requestTimeout = requestTimeout;
+    }
+
+    /**
+     * Blocking {@code GET /} on the backend.
+     *
+     * @return the body of the response
+     */
+    @Override
+    public String provide() {
+        try {
+            return body(CLIENT.send(request("/").GET().build(), HttpResponse.BodyHandlers.ofString()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + baseUri, e);
+        }
+    }
+
+    /**
+     * Non-blocking {@code GET /} on the backend, the executor is not used.
+     */
+    @Override
+    public CompletableFuture<String> provideAsync(Executor executor) {
+        return CLIENT.sendAsync(request("/").GET().build(), HttpResponse.BodyHandlers.ofString())
+                .thenApply(this::body);
+    }
+
+    /**
+     * Cancelling the future of {@link #provideAsync} aborts the exchange with the backend.
+     */
+    @Override
+    public boolean supportsCancellation() {
+        return true;
+    }
+
+    /**
+     * Connects to the backend, within the request timeout.
+     */
+    @Override
+    public boolean check() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()),
+                    (int) Math.min(requestTimeout.toMillis(), Integer.MAX_VALUE));
+            return true;
+        } catch (IOException e) {
+            log.debug("Heart beat of [{}] failed", baseUri, e);
+            return false;
+        }
+    }
+
+    /**
+     * Forwards a request to the backend. Neither the request body nor the response body is buffered: the request body
+     * is read while it is sent, and the response body is read by the caller.
+     *
+     * @param method       HTTP method
+     * @param pathAndQuery path (starting with '/') and query string of the request
+     * @param headers      request headers, {@link #NOT_FORWARDED_HEADERS} are dropped
+     * @param body         request body
+     * @return completed when the response head is received, the caller must close the body stream
+     */
+    public CompletableFuture<HttpResponse<InputStream>> forward(String method,
+                                                                String pathAndQuery,
+                                                                Map<String, List<String>> headers,
+                                                                HttpRequest.BodyPublisher body) {
+        HttpRequest.Builder builder = request(pathAndQuery).method(method, body);
+        headers.forEach((name, values) -> {
+            if (!NOT_FORWARDED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                values.forEach(value -> builder.header(name, value));
+            }
+        });
+        log.debug("Forwarding [{} {}] to [{}]", method, pathAndQuery, baseUri);
+        return CLIENT.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    private String body(HttpResponse<String> response) {
+        if (response.statusCode() >= 500) {
+            throw new BackendErrorException(String.format("[%s] answered with status [%d]", baseUri,
+                    response.statusCode()), response.statusCode());
+        }
+        return response.body();
+    }
+
+    private HttpRequest.Builder request(String pathAndQuery) {
+        return HttpRequest.newBuilder(URI.create(baseUri + pathAndQuery)).timeout(requestTimeout);
+    }
+}
@@ -0,0 +1,127 @@
+package com.qbros.lb.core;
+
+/**
+ * Item to index map with primitive {@code int} values (no boxing), based on open addressing with linear probing.
+ * <p>
+ * NOTE: This class is NOT thread safe!
+ */
+class IndexMap<T> {
+
+    static final int ABSENT = -1;
+
+    private Object[] keys;
+    private int[] values;
+    private int size;
+
+    IndexMap() {
+        this(16);
+    }
+
+    IndexMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        keys = new Object[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * @return the index of the key, {@link #ABSENT} if there is none
+     */
+    int get(T key) {
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); keys[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot].equals(key)) {
+                return values[slot];
+            }
+        }
+        return ABSENT;
+    }
+
+    boolean contains(T key) {
+        return get(key) != ABSENT;
+    }
+
+    void put(T key, int index) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        for (; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot].equals(key)) {
+                //an equal key might be a new instance, the old one must not be retained
+                keys[slot] = key;
+                values[slot] = index;
+                return;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = index;
+        //keep the load factor under 0.5, the probe sequences stay short
+        if (++size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    /**
+     * @return the index of the removed key, {@link #ABSENT} if there was none
+     */
+    int remove(T key) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        for (; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot].equals(key)) {
+                int index = values[slot];
+                shiftBack(slot, mask);
+                size--;
+                return index;
+            }
+        }
+        return ABSENT;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Backward shift deletion: the following entries of the probe sequence are moved up, so no tombstone is needed.
+     */
+    private void shiftBack(int free, int mask) {
+        int slot = free;
+        for (; ; ) {
+            slot = (slot + 1) & mask;
+            Object key = keys[slot];
+            if (key == null) {
+                break;
+            }
+            int home = slot(key, mask);
+            //the entry can move to the free slot only if its home is not between the free slot and itself
+            if (((slot - home) & mask) >= ((slot - free) & mask)) {
+                keys[free] = key;
+                values[free] = values[slot];
+                free = slot;
+            }
+        }
+        keys[free] = null;
+    }
+
+    private void resize() {
+        Object[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new Object[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(oldKeys[i], mask);
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int slot(Object key, int mask) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
@@ -0,0 +1,12 @@
+package com.qbros.lb.core;
+
+/**
+ * Thrown when a request made to the load balancer is invalid, e.g. a batch size out of range. Unlike the other
+ * {@link IllegalArgumentException}s, it is the fault of the caller.
+ */
+public class InvalidRequestException extends IllegalArgumentException {
+
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,130 @@
+package com.qbros.lb.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-bucket, HDR style histogram of response times, with microsecond resolution.
+ * <p>
+ * Values below 8µs have their own bucket, above that every power of two is split in 8 linear sub-buckets, so the
+ * relative error is at most 12.5%, up to {@link #MAX_MICROS} (~67 seconds, larger values are counted in the last
+ * bucket). The buckets are {@link LongAdder}s, so concurrent recorders do not contend. They are created by the first
+ * value they count, once created recording does not allocate.
+ * <p>
+ * Memory: the empty histogram takes about 0.8KB (a reference per bucket), every bucket in use adds 32 bytes and a padded
+ * 128-byte cell per contending recorder. Response times spread over 20 buckets take about 1.5KB without contention.
+ */
+public class LatencyHistogram {
+
+    public static final long MAX_MICROS = (1L << 26) - 1;
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = bucketIndex(MAX_MICROS) + 1;
+
+    //null until the bucket counts its first value
+    private final AtomicReferenceArray<LongAdder> counts = new AtomicReferenceArray<>(BUCKETS);
+    private final LongAdder totalNanos = new LongAdder();
+
+    public void record(long nanos) {
+        long micros = Math.min(Math.max(TimeUnit.NANOSECONDS.toMicros(nanos), 0), MAX_MICROS);
+        bucket(bucketIndex(micros)).increment();
+        totalNanos.add(nanos);
+    }
+
+    /**
+     * Adds the response times recorded by a previous run, e.g. restored from a {@link StateSnapshot}.
+     *
+     * @param bucketCounts count of every bucket, as returned by {@link #getCount(int)}
+     * @param nanos        sum of the response times
+     */
+    public void add(long[] bucketCounts, long nanos) {
+        if (bucketCounts.length != BUCKETS) {
+            throw new IllegalArgumentException("Expected " + BUCKETS + " buckets: " + bucketCounts.length);
+        }
+        for (int i = 0; i < BUCKETS; i++) {
+            if (bucketCounts[i] != 0) {
+                bucket(i).add(bucketCounts[i]);
+            }
+        }
+        totalNanos.add(nanos);
+    }
+
+    /**
+     * @return number of buckets, their indexes are {@code 0 .. getBucketCount() - 1}
+     */
+    public int getBucketCount() {
+        return BUCKETS;
+    }
+
+    public long getCount(int bucket) {
+        LongAdder count = counts.get(bucket);
+        return (count != null) ? count.sum() : 0;
+    }
+
+    /**
+     * @return the (exclusive) upper bound of the bucket in microseconds
+     */
+    public long getUpperBoundMicros(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket + 1;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = bucket % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += getCount(i);
+        }
+        return total;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return upper bound of the bucket containing the percentile in nanoseconds, {@code 0} if there is no value
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = getTotalCount();
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += getCount(i);
+            if (cumulative >= target) {
+                return TimeUnit.MICROSECONDS.toNanos(getUpperBoundMicros(i));
+            }
+        }
+        return TimeUnit.MICROSECONDS.toNanos(MAX_MICROS);
+    }
+
+    private LongAdder bucket(int index) {
+        LongAdder count = counts.get(index);
+        if (count == null) {
+            LongAdder created = new LongAdder();
+            count = counts.compareAndExchange(index, null, created);
+            if (count == null) {
+                count = created;
+            }
+        }
+        return count;
+    }
+
+    private static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+}
@@ -0,0 +1,48 @@
+package com.qbros.lb.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Least outstanding requests using the "power of two choices": two distinct providers are sampled randomly and the
+ * one with fewer outstanding requests is picked. It spreads the load almost as well as scanning all the providers,
+ * but it is O(1) and it does not make every caller pile up on the same least loaded provider.
+ */
+@Slf4j
+public class LeastOutstandingSelection implements SelectionStrategy {
+
+    /**
+     * Without any knowledge about the providers it falls back to a random selection.
+     */
+    @Override
+    public int pick(int total) {
+        return ThreadLocalRandom.current().nextInt(total);
+    }
+
+    @Override
+    public int pick(List<Provider> providers) {
+
+        int total = providers.size();
+        if (total == 1) {
+            return 0;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(total);
+        //second is picked among the remaining (total - 1) providers, so it never equals the first one
+        int second = random.nextInt(total - 1);
+        if (second >= first) {
+            second++;
+        }
+
+        return (providers.get(second).getOutstandingRequests() < providers.get(first).getOutstandingRequests())
+                ? second : first;
+    }
+
+    @Override
+    public String toString() {
+        return "LeastOutstandingSelection";
+    }
+}
@@ -1,8 +1,10 @@
 package com.qbros.lb.core;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
-public interface LoadBalancer {
+public interface LoadBalancer extends AutoCloseable {
 
     /**
      * For simplicity, we will consider both the load
@@ -14,14 +16,69 @@ public interface LoadBalancer {
     String get();
 
     /**
-     * Step 2 – Register a list of providers
+     * Same as {@link #get()}, but the key is handed over to the selection strategy, so the strategies that support
+     * it (e.g. {@link MaglevHashSelection}) route the same key to the same provider.
+     *
+     * @param key routing key, e.g. the tenant id
+     * @return the returned value from one of the providers
+     */
+    String get(String key);
+
+    /**
+     * Non-blocking version of {@link #get()}, the calling thread is not held while the provider is working.
+     *
+     * @return the returned value from one of the providers, completed exceptionally if no provider is available
+     */
+    CompletableFuture<String> getAsync();
+
+    /**
+     * Non-blocking version of {@link #get(String)}.
+     *
+     * @param key routing key, e.g. the tenant id
+     * @return the returned value from one of the providers, completed exceptionally if no provider is available
+     */
+    CompletableFuture<String> getAsync(String key);
+
+    /**
+     * Fan-out: the {@code count} providers are picked in a single pass over the same providers, and called
+     * concurrently.
+     *
+     * @param count number of providers to call, at most the max batch size of the load balancer
+     * @return the returned values, in the order of the picks
+     * @throws InvalidRequestException if {@code count} is out of range
+     */
+    List<String> getBatch(int count);
+
+    /**
+     * Non-blocking version of {@link #getBatch(int)}.
+     *
+     * @param count number of providers to call
+     * @return the returned values, completed exceptionally if any of the calls failed or with an
+     * {@link InvalidRequestException} if {@code count} is out of range
+     */
+    CompletableFuture<List<String>> getBatchAsync(int count);
+
+    /**
+     * Step 2 – Register a list of providers, the selection strategy is rebuilt once for all of them.
      *
      * @param providers Collection of servers that can be used by Load Balancer
      */
     void registerAll(List<Provider> providers);
 
     /**
-     * Step 5 – Manual node exclusion
+     * Declarative membership: the providers become {@code desired} in a single change. Readers never wait for it,
+     * and they see either all the previous providers or all the new ones, never a part of the change. The selection
+     * strategy is rebuilt once, only if the providers changed.
+     *
+     * @param desired the whole new set of providers
+     * @return the providers which were actually added and removed
+     * @throws IllegalArgumentException if {@code desired} exceeds the capacity, nothing is changed then
+     */
+    Diff<Provider> reconcile(Collection<Provider> desired);
+
+    /**
+     * Step 5 – Manual node exclusion. Every call rebuilds the selection strategy, prefer
+     * {@link #reconcile(Collection)} for many providers at once.
      *
      * @param provider The provider we want to re-include in the LoadBalancing
      */
@@ -43,4 +100,10 @@ public interface LoadBalancer {
      * load balancing.
      */
     void checkProviders();
+
+    /**
+     * Stops the background tasks of the load balancer (e.g. the heart beats), it should not be used afterwards.
+     */
+    @Override
+    void close();
 }
@@ -1,114 +1,580 @@
 package com.qbros.lb.core;
 
 import lombok.Builder;
-import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Slf4j
 public class LoadBalancerImpl extends AbsConcurrentLoadBalancer {
 
-    private final UniqueList<Provider> providers;
-    private final ScheduledExecutorService executorService = Executors
-            .newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+    /**
+     * Writers are serialized by the write lock, readers take a lock free {@link CopyOnWriteUniqueList.Snapshot}.
+     */
+    private final CopyOnWriteUniqueList<Provider> providers;
+    /**
+     * Default maximum number of providers, big enough for discovered pools. The selection strategies rebuild their
+     * state in O(n) on every membership change, see {@link SelectionStrategy#onProvidersChanged(List)}.
+     */
+    public static final int DEFAULT_MAX_CAPACITY = 10_000;
+
+    /**
+     * Default bound of each platform thread pool of {@link ExecutionMode#PLATFORM}, one for the provider calls and one
+     * for the background work.
+     */
+    public static final int DEFAULT_MAX_THREADS = 64;
+
+    /**
+     * Heart beats, re-admissions, hedges and admission timeouts, shared by all the load balancers by default.
+     */
+    private final HashedWheelTimer timer;
     /**
      * It specifies how the next {@link  Provider} is selected.
      */
     private final SelectionStrategy selectionStrategy;
     /**
-     * the state of the providers might change during the process of finding a provider and get value form it: {@link LoadBalancer#get()}
+     * the picked provider might be dead by the time we want to get value form it: {@link LoadBalancer#get()}
      * so we need to have some retry mechanism in place. and the {@code maxRetryCount} specifies the number of retries.
      */
     private final int maxRetryCount;
+    /**
+     * Runs the blocking {@link Provider#provide()} calls of {@link #getAsync()}, by default a new executor of the
+     * {@link ExecutionMode}.
+     */
+    private final Executor dispatchExecutor;
+    /**
+     * The default {@link #dispatchExecutor}, shut down on {@link #close()}. {@code null} if the executor was given to
+     * the builder, then its owner shuts it down.
+     */
+    private final ExecutorService ownedDispatchExecutor;
+    /**
+     * Heart beat probes might block until they time out, and re-admitting a provider rebuilds the state of the
+     * selection strategy, so they run here instead of on the timer thread. Shut down on {@link #close()}.
+     */
+    private final ExecutorService backgroundExecutor;
     private final int hbInitial;
     private final int hbNext;
+    private final int hbTimeoutMillis;
+    private final HeartbeatEngine heartbeatEngine;
+    private final HashedWheelTimer.Timeout heartbeatTask;
+    /**
+     * Passive outlier detection, {@code null} if it is disabled.
+     */
+    private final CircuitBreaker.Config circuitBreakerConfig;
+    private final Map<Provider, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    /**
+     * Providers which are ejected by their circuit breaker and wait for their backoff to be over. The value is the
+     * instance which comes back, a reconcile might replace it with a new one.
+     */
+    private final Map<Provider, Provider> ejectedProviders = new ConcurrentHashMap<>();
+    private final Map<Provider, HashedWheelTimer.Timeout> readmissions = new ConcurrentHashMap<>();
+    /**
+     * Sum of the permits of the current providers, requests wait here when all of them are saturated.
+     */
+    private final AdmissionControl admissionControl;
+    /**
+     * Permits each current provider adds to the admission control: its capacity, or only its trial requests while its
+     * circuit breaker is half-open. Changed under the write lock.
+     */
+    private final Map<Provider, Integer> grantedPermits = new ConcurrentHashMap<>();
+    /**
+     * Hedging of {@link #get(String)} and {@link #getAsync(String)}, {@code null} if it is disabled.
+     */
+    private final HedgePolicy hedgePolicy;
+    /**
+     * Responses of {@link #get(String)} and {@link #getAsync(String)}, {@code null} if caching is disabled.
+     */
+    private final ResponseCache responseCache;
+    /**
+     * Providers removed by the heart beats, they are saved as {@link StateSnapshot.Health#DOWN}.
+     */
+    private final Set<Provider> deadProviders = ConcurrentHashMap.newKeySet();
+    /**
+     * State of the previous run by provider id, applied once to every provider when it is registered again.
+     */
+    private final Map<String, StateSnapshot.ProviderState> restoredStates = new ConcurrentHashMap<>();
+    /**
+     * Providers which were down in the previous run, they are kept out of the selection until a heart beat finds them
+     * alive. The value is the instance which is probed, a reconcile might replace it with a new one.
+     */
+    private final Map<Provider, Provider> heldOutProviders = new ConcurrentHashMap<>();
+    /**
+     * Where the state is saved, {@code null} if it is not persisted.
+     */
+    private final Path stateFile;
+    private final HashedWheelTimer.Timeout stateSnapshotTask;
+    private final LoadBalancerMetrics metrics = new LoadBalancerMetrics();
     private final String name;
+    /**
+     * Largest fan-out of {@link #getBatchAsync(int)}, every call of a batch is allocated upfront.
+     */
+    private final int maxBatchSize;
 
     @Builder
     private LoadBalancerImpl(SelectionStrategy selectionStrategy,
                              int maxCapacity,
                              int maxRetryCount,
                              int heartBeatCheckInitialDelay,
-                             int heartBeatCheckNextDelay, String name) {
+                             int heartBeatCheckNextDelay,
+                             int heartBeatCheckTimeoutMillis, String name,
+                             Executor dispatchExecutor,
+                             CircuitBreaker.Config circuitBreaker,
+                             int admissionQueueSize,
+                             int admissionMaxWaitMillis,
+                             HedgePolicy.Config hedging,
+                             HashedWheelTimer timer,
+                             ExecutionMode executionMode,
+                             ResponseCache.Config cache,
+                             Path stateFile,
+                             int stateSnapshotIntervalMillis,
+                             int maxBatchSize,
+                             int maxThreads) {
 
-        this.providers = new UniqueList<>((maxCapacity != 0) ? maxCapacity : 10);
+        ExecutionMode mode = (executionMode != null) ? executionMode : ExecutionMode.PLATFORM;
+        this.timer = (timer != null) ? timer : HashedWheelTimer.shared();
+        this.providers = new CopyOnWriteUniqueList<>((maxCapacity != 0) ? maxCapacity : DEFAULT_MAX_CAPACITY);
         this.selectionStrategy = (selectionStrategy != null) ? selectionStrategy : new RandomSelection();
         this.maxRetryCount = (maxRetryCount != 0) ? maxRetryCount : 3;
+        this.maxBatchSize = (maxBatchSize != 0) ? maxBatchSize : 100;
+        int threads = (maxThreads != 0) ? maxThreads : DEFAULT_MAX_THREADS;
+        String threadPrefix = (name != null) ? "lb-" + name : "lb";
+        this.ownedDispatchExecutor = (dispatchExecutor != null)
+                ? null : mode.newExecutor(threadPrefix + "-dispatch", threads);
+        this.dispatchExecutor = (dispatchExecutor != null) ? dispatchExecutor : ownedDispatchExecutor;
+        this.backgroundExecutor = mode.newExecutor(threadPrefix + "-background", threads);
         this.hbInitial = (heartBeatCheckInitialDelay != 0) ? heartBeatCheckInitialDelay : 10;
         this.hbNext = (heartBeatCheckNextDelay != 0) ? heartBeatCheckNextDelay : 10;
+        this.hbTimeoutMillis = (heartBeatCheckTimeoutMillis != 0) ? heartBeatCheckTimeoutMillis : 1000;
+        this.circuitBreakerConfig = circuitBreaker;
+        this.admissionControl = new AdmissionControl((admissionQueueSize != 0) ? admissionQueueSize : 100,
+                (admissionMaxWaitMillis != 0) ? admissionMaxWaitMillis : 1000, this.timer);
+        this.hedgePolicy = (hedging != null) ? new HedgePolicy(hedging) : null;
+        this.responseCache = (cache != null)
+                ? new ResponseCache(cache, this::getUncachedAsync, backgroundExecutor, metrics) : null;
         this.name = name;
-        executorService.scheduleWithFixedDelay(this::checkProviders, hbInitial, hbNext, TimeUnit.SECONDS);
+        this.heartbeatEngine = new HeartbeatEngine(() -> providers.snapshot().asList(), this::removeDeadProviders,
+                this.timer, backgroundExecutor, TimeUnit.SECONDS.toMillis(hbNext), hbTimeoutMillis);
+        this.heartbeatTask = heartbeatEngine.start(TimeUnit.SECONDS.toMillis(hbInitial));
+        this.stateFile = stateFile;
+        if (stateFile != null) {
+            restore(StateSnapshot.read(stateFile));
+            int interval = (stateSnapshotIntervalMillis != 0) ? stateSnapshotIntervalMillis : 10_000;
+            this.stateSnapshotTask = this.timer.scheduleAtFixedRate(() -> backgroundExecutor.execute(this::saveState),
+                    interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.stateSnapshotTask = null;
+        }
         log.info("Load Balancer initialized: [{}]", this);
     }
 
     @Override
     public String get() {
+        return get(null);
+    }
 
-        int retryCount = 0;
+    /**
+     * Waits for a free permit when all the providers are saturated.
+     * <p>
+     * When hedging is enabled, the providers are called on the dispatch executor and the caller waits for the first
+     * answer. When caching is enabled, a cached response is returned without calling any provider, and concurrent
+     * requests for the same key wait for the same call.
+     *
+     * @throws RequestRejectedException     if no permit is free within the configured max wait, or if the alive
+     *                                      providers are all saturated
+     * @throws NoProviderAvailableException if no provider can take the request (none registered, dead, ejected)
+     */
+    @Override
+    public String get(String key) {
 
-        while (retryCount <= maxRetryCount) {
+        if (responseCache != null && key != null) {
+            return join(responseCache.get(key));
+        }
+        if (hedgePolicy != null) {
+            return join(getHedgedAsync(key));
+        }
 
-            AggregateProvidersStatus providersStatus = readThreadSafe(this::getAggregateProvidersStatus);
+        checkProvidersAvailable();
+        try {
+            admissionControl.acquire();
+        } catch (RequestRejectedException e) {
+            metrics.recordRejection();
+            throw e;
+        }
 
-            if (providersStatus.availableCapacity == 0 || providersStatus.currentNumberOfProviders == 0) {
-                log.warn("No providers available [{}]", providersStatus);
-                throw new RuntimeException(String.format("No providers available: %s", providersStatus));
-            }
+        Provider provider;
+        try {
+            provider = acquireProvider(key, null);
+        } catch (RuntimeException e) {
+            admissionControl.release();
+            throw e;
+        }
+        return dispatch(provider);
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync() {
+        return getAsync(null);
+    }
+
+    @Override
+    public CompletableFuture<String> getAsync(String key) {
+        return (responseCache != null && key != null) ? responseCache.get(key) : getUncachedAsync(key);
+    }
+
+    /**
+     * Runs a custom request (e.g. forwarding an HTTP request) on the next alive provider. The provider is considered
+     * loaded until the returned future of the request is completed.
+     *
+     * @param key     routing key, {@code null} if there is none
+     * @param request the request to run on the picked provider
+     * @param <T>     type of the result
+     * @return the result of the request, completed exceptionally with a {@link NoProviderAvailableException} if no
+     * provider can take it, or with a {@link RequestRejectedException} if they are all saturated
+     */
+    public <T> CompletableFuture<T> executeAsync(String key, Function<Provider, CompletableFuture<T>> request) {
+        return executeAsync(key, request, null, null);
+    }
+
+    /**
+     * The whole batch is picked from a single snapshot, then every pick is admitted and dispatched on its own.
+     * A picked provider which can not serve any more is replaced by the usual selection.
+     */
+    @Override
+    public List<String> getBatch(int count) {
+        return join(getBatchAsync(count));
+    }
+
+    /**
+     * @return completed exceptionally with an {@link InvalidRequestException} if {@code count} is not between 1 and
+     * {@code maxBatchSize}
+     */
+    @Override
+    public CompletableFuture<List<String>> getBatchAsync(int count) {
+
+        if (count <= 0 || count > maxBatchSize) {
+            return CompletableFuture.failedFuture(new InvalidRequestException(
+                    String.format("Batch size should be between 1 and %d: %d", maxBatchSize, count)));
+        }
+
+        CopyOnWriteUniqueList.Snapshot<Provider> snapshot = providers.snapshot();
+        if (snapshot.size() == 0) {
+            log.warn("No providers available");
+            metrics.recordUnserved();
+            return CompletableFuture.failedFuture(new NoProviderAvailableException("No providers available"));
+        }
+
+        int[] indexes = new int[count];
+        selectionStrategy.pickBatch(snapshot.asList(), indexes);
+
+        @SuppressWarnings("unchecked")
+        CompletableFuture<String>[] calls = new CompletableFuture[count];
+        for (int i = 0; i < count; i++) {
+            calls[i] = executeAsync(null, provider -> provider.provideAsync(dispatchExecutor),
+                    null, snapshot.get(indexes[i]));
+        }
 
-            int nextServerIndex = selectionStrategy.pick(providersStatus.currentNumberOfProviders);
+        return CompletableFuture.allOf(calls).thenApply(ignored -> {
+            List<String> results = new ArrayList<>(count);
+            for (CompletableFuture<String> call : calls) {
+                results.add(call.join());
+            }
+            return results;
+        });
+    }
 
-            Provider provider = readThreadSafe(() -> providers.getAtIndex(nextServerIndex));
+    private CompletableFuture<String> getUncachedAsync(String key) {
+        return (hedgePolicy != null)
+                ? getHedgedAsync(key)
+                : executeAsync(key, provider -> provider.provideAsync(dispatchExecutor));
+    }
 
-            //could not find provider at the specified index maybe some other thread changed the providers list.
-            if (provider == null) {
-                continue;
+    /**
+     * Waits for the result, the failures of the load balancer are thrown as they are.
+     */
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw e;
+        }
+    }
+
+    /**
+     * @param excluded  the request must not be sent to this provider, {@code null} if there is none
+     * @param preferred the provider already picked for the request, {@code null} if it should be picked here
+     */
+    private <T> CompletableFuture<T> executeAsync(String key,
+                                                  Function<Provider, CompletableFuture<T>> request,
+                                                  Provider excluded,
+                                                  Provider preferred) {
 
-            if (provider.isAlive()) {
-                return provider.provide();
+        try {
+            checkProvidersAvailable();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        CompletableFuture<Void> admission = admissionControl.acquireAsync();
+        if (admission.isDone()) {
+            if (admission.isCompletedExceptionally()) {
+                metrics.recordRejection();
+                return admission.thenApply(ignored -> null);
             }
+            return dispatchAdmittedAsync(key, request, excluded, preferred);
+        }
+        //the request waits for a permit without holding a thread
+        return admission
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        metrics.recordRejection();
+                    }
+                })
+                .thenCompose(ignored -> dispatchAdmittedAsync(key, request, excluded, preferred));
+    }
+
+    private <T> CompletableFuture<T> dispatchAdmittedAsync(String key,
+                                                           Function<Provider, CompletableFuture<T>> request,
+                                                           Provider excluded,
+                                                           Provider preferred) {
 
-            retryCount++;
+        Provider provider;
+        try {
+            provider = (preferred != null && tryAcquire(preferred)) ? preferred : acquireProvider(key, excluded);
+        } catch (RuntimeException e) {
+            admissionControl.release();
+            return CompletableFuture.failedFuture(e);
         }
+        if (provider == null) {
+            //only for a hedged call, there is no other provider than the excluded one
+            admissionControl.release();
+            return CompletableFuture.completedFuture(null);
+        }
+        return dispatchAsync(provider, request);
+    }
 
-        log.warn("No suitable provider was found after '{}' retries", maxRetryCount);
-        return null;
+    private CompletableFuture<String> getHedgedAsync(String key) {
+        hedgePolicy.onRequest();
+        HedgedRequest hedgedRequest = new HedgedRequest(key);
+        hedgedRequest.start(hedgePolicy.getDelayNanos(metrics.getResponseTimes()));
+        return hedgedRequest.result;
     }
 
     @Override
     public void registerAll(List<Provider> newProviders) {
-        writeThreadSafe(() -> providers.addAll(newProviders));
+        List<Provider> restored = new ArrayList<>(newProviders.size());
+        for (Provider provider : newProviders) {
+            if (restoreState(provider)) {
+                restored.add(provider);
+            }
+        }
+        restored.forEach(deadProviders::remove);
+        addProviders(() -> providers.addAll(restored));
     }
 
+    /**
+     * The added providers start with a closed circuit breaker, a provider passed as a new instance (same id) replaces
+     * the current one. A provider ejected by its circuit breaker which is still desired stays ejected until its
+     * backoff is over, a provider which was down in the previous run stays out until a heart beat finds it alive. The
+     * new instance of such a provider is the one which comes back.
+     */
+    @Override
+    public Diff<Provider> reconcile(Collection<Provider> desired) {
+        Set<Provider> desiredSet = new HashSet<>(desired);
+        return writeThreadSafe(() -> {
+            List<Provider> wanted = new ArrayList<>(desiredSet.size());
+            for (Provider provider : desired) {
+                if (ejectedProviders.replace(provider, provider) == null && !replaceHeldOut(provider)
+                        && restoreState(provider)) {
+                    wanted.add(provider);
+                }
+            }
+
+            Diff<Provider> diff = providers.replaceAll(wanted);
+            for (Provider provider : ejectedProviders.keySet()) {
+                if (!desiredSet.contains(provider)) {
+                    ejectedProviders.remove(provider);
+                    cancelReadmission(provider);
+                }
+            }
+            heldOutProviders.keySet().retainAll(desiredSet);
+            deadProviders.retainAll(desiredSet);
+            diff.getAdded().forEach(deadProviders::remove);
+            for (Provider provider : diff.getRemoved()) {
+                revokePermits(provider);
+                circuitBreakers.remove(provider);
+            }
+            for (Provider provider : diff.getAdded()) {
+                grantPermits(provider);
+            }
+            if (!diff.isEmpty()) {
+                selectionStrategy.onProvidersChanged(providers.snapshot().asList());
+            }
+            log.info("Providers of [{}] reconciled, added [{}], removed [{}]", name, diff.getAdded().size(),
+                    diff.getRemoved().size());
+            return diff;
+        });
+    }
+
+    /**
+     * A manually included provider starts with a closed circuit breaker.
+     */
     @Override
     public void include(Provider provider) {
-        writeThreadSafe(() -> providers.addOne(provider));
+        Objects.requireNonNull(provider, "The provider to include is missing");
+        heldOutProviders.remove(provider);
+        deadProviders.remove(provider);
+        ejectedProviders.remove(provider);
+        cancelReadmission(provider);
+        circuitBreakers.remove(provider);
+        addProviders(() -> providers.addOne(provider) ? List.of(provider) : List.of());
     }
 
+    /**
+     * A manually excluded provider is not re-included by its circuit breaker.
+     */
     @Override
     public void exclude(Provider provider) {
-        writeThreadSafe(() -> providers.remove(provider));
+        Objects.requireNonNull(provider, "The provider to exclude is missing");
+        heldOutProviders.remove(provider);
+        deadProviders.remove(provider);
+        ejectedProviders.remove(provider);
+        cancelReadmission(provider);
+        removeProviders(() -> providers.remove(provider) ? List.of(provider) : List.of());
     }
 
+    /**
+     * Runs a heart beat round right now (all the providers are probed concurrently) and waits until
+     * the dead providers are removed.
+     */
     @Override
     public void checkProviders() {
-        try {
-            Collection<Provider> items = providers.getContent();
-            log.info("Heart Beat check by [{}]", name);
-            log.debug("Heart Beat check by [{}] for providers [{}]", name, items);
-            for (Provider item : items) {
-                if (!item.isAlive()) {
-                    providers.remove(item);
-                }
+        log.info("Heart Beat check by [{}]", name);
+        heartbeatEngine.check().join();
+    }
+
+    /**
+     * Cancels the heart beats and the pending re-admissions of this load balancer, the timer it shares with the
+     * others keeps running. The state is saved a last time and the executors of the load balancer are shut down.
+     * Called by Spring when the load balancer is a bean.
+     */
+    @Override
+    public void close() {
+        heartbeatTask.cancel();
+        readmissions.values().forEach(HashedWheelTimer.Timeout::cancel);
+        readmissions.clear();
+        if (stateSnapshotTask != null) {
+            stateSnapshotTask.cancel();
+            saveState();
+        }
+        //running calls and probes finish, new ones are rejected
+        if (ownedDispatchExecutor != null) {
+            ownedDispatchExecutor.shutdown();
+        }
+        backgroundExecutor.shutdown();
+        log.info("Load Balancer closed: [{}]", name);
+    }
+
+    /**
+     * Saves the membership, the health and the response times of the providers to the state file, a restarted load
+     * balancer reads them back. Called periodically and on {@link #close()}.
+     */
+    public synchronized void saveState() {
+        if (stateFile == null) {
+            return;
+        }
+        Map<String, StateSnapshot.ProviderState> states = new LinkedHashMap<>();
+        for (Provider provider : providers.snapshot().asList()) {
+            states.put(provider.getId(),
+                    new StateSnapshot.ProviderState(StateSnapshot.Health.UP, provider.getResponseTime()));
+        }
+        List<Collection<Provider>> downProviders =
+                List.of(ejectedProviders.values(), deadProviders, heldOutProviders.values());
+        for (Collection<Provider> down : downProviders) {
+            for (Provider provider : down) {
+                states.put(provider.getId(),
+                        new StateSnapshot.ProviderState(StateSnapshot.Health.DOWN, provider.getResponseTime()));
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
+        //providers of the previous run which are not registered again (yet) are not forgotten
+        restoredStates.forEach(states::putIfAbsent);
+
+        LatencyHistogram responseTimes = metrics.getResponseTimes();
+        long[] counts = new long[responseTimes.getBucketCount()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = responseTimes.getCount(i);
+        }
+        try {
+            new StateSnapshot(System.currentTimeMillis(), states, counts, responseTimes.getTotalNanos())
+                    .write(stateFile);
+            log.debug("State of [{}] saved to [{}]", name, stateFile);
+        } catch (IOException | RuntimeException e) {
+            log.warn("State of [{}] can not be saved to [{}]", name, stateFile, e);
+        }
+    }
+
+    /**
+     * @return the providers currently used for the selection
+     */
+    public List<Provider> getProviders() {
+        return providers.snapshot().asList();
+    }
+
+    /**
+     * @return the providers which are out of the selection for now: ejected by their circuit breaker, found dead, or
+     * down in the previous run. Manually excluded providers are not part of them
+     */
+    public List<Provider> getUnavailableProviders() {
+        Set<Provider> unavailable = new LinkedHashSet<>(ejectedProviders.values());
+        unavailable.addAll(deadProviders);
+        unavailable.addAll(heldOutProviders.values());
+        //a dead provider is removed in the background
+        providers.snapshot().asList().forEach(unavailable::remove);
+        return new ArrayList<>(unavailable);
+    }
+
+    public AdmissionControl getAdmissionControl() {
+        return admissionControl;
+    }
+
+    /**
+     * @return {@code null} if caching is disabled
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public LoadBalancerMetrics getMetrics() {
+        return metrics;
+    }
+
+    public String getName() {
+        return name;
     }
 
     @Override
@@ -120,22 +586,490 @@ public class LoadBalancerImpl extends AbsConcurrentLoadBalancer {
         sb.append(", maxRetryCount=").append(maxRetryCount);
         sb.append(", heat beat check Initial delay=").append(hbInitial);
         sb.append(", heat beat check next delay=").append(hbNext);
+        sb.append(", heat beat check timeout millis=").append(hbTimeoutMillis);
+        sb.append(", circuit breaker=").append(circuitBreakerConfig);
+        sb.append(", hedging=").append(hedgePolicy);
         sb.append('}');
         return sb.toString();
     }
 
-    private AggregateProvidersStatus getAggregateProvidersStatus() {
-        int totalRemainingCapacity = 0;
-        for (Provider item : providers.getContent()) {
-            totalRemainingCapacity += item.getConcurrentCapacity();
+    /**
+     * All the dead providers of a heart beat round are removed at once.
+     */
+    private void removeDeadProviders(List<Provider> dead) {
+        log.info("Heart Beat check by [{}] removes providers [{}]", name, dead);
+        deadProviders.addAll(dead);
+        removeProviders(() -> providers.removeAll(dead));
+    }
+
+    private void restore(StateSnapshot snapshot) {
+        if (snapshot == null) {
+            return;
+        }
+        restoredStates.putAll(snapshot.getProviders());
+        try {
+            metrics.getResponseTimes().add(snapshot.getResponseTimeCounts(), snapshot.getResponseTimeTotalNanos());
+        } catch (IllegalArgumentException e) {
+            log.warn("Response times of the previous run are not compatible, they are not restored", e);
+        }
+        log.info("State of [{}] providers restored from [{}], saved at [{}]", restoredStates.size(), stateFile,
+                Instant.ofEpochMilli(snapshot.getSavedAtMillis()));
+    }
+
+    /**
+     * Applies the state of the previous run to a provider registered for the first time since the start.
+     *
+     * @return {@code false} if the provider was down, it is held out of the selection until it is probed alive
+     */
+    private boolean restoreState(Provider provider) {
+        if (restoredStates.isEmpty()) {
+            return true;
+        }
+        StateSnapshot.ProviderState state = restoredStates.remove(provider.getId());
+        if (state == null) {
+            return true;
+        }
+        provider.restoreResponseTime(state.responseTimeNanos());
+        if (state.health() == StateSnapshot.Health.UP) {
+            return true;
         }
-        return new AggregateProvidersStatus(providers.getSize(), totalRemainingCapacity);
+        heldOutProviders.put(provider, provider);
+        probeHeldOut(provider);
+        return false;
     }
 
-    @Value
-    class AggregateProvidersStatus {
-        int currentNumberOfProviders;
-        int availableCapacity;
+    /**
+     * A held out provider passed as a new instance replaces the current one, and is probed in turn.
+     *
+     * @return {@code false} if the provider is not held out
+     */
+    private boolean replaceHeldOut(Provider provider) {
+        Provider current = heldOutProviders.replace(provider, provider);
+        if (current == null) {
+            return false;
+        }
+        if (current != provider) {
+            probeHeldOut(provider);
+        }
+        return true;
     }
 
+    private void probeHeldOut(Provider provider) {
+        //the probe might time out on the timer thread
+        heartbeatEngine.probe(provider).thenAcceptAsync(alive -> releaseHeldOut(provider, alive), backgroundExecutor);
+    }
+
+    private void releaseHeldOut(Provider provider, boolean alive) {
+        //it might be included, excluded, reconciled away or replaced by a new instance in the meantime
+        boolean released = writeThreadSafe(() -> heldOutProviders.get(provider) == provider
+                && heldOutProviders.remove(provider) != null);
+        if (!released) {
+            return;
+        }
+        if (alive) {
+            log.info("Provider [{}] was down in the previous run and is alive again", provider);
+            try {
+                addProviders(() -> providers.addOne(provider) ? List.of(provider) : List.of());
+            } catch (IllegalArgumentException e) {
+                log.warn("Provider [{}] can not be re-included", provider, e);
+            }
+        } else {
+            log.info("Provider [{}] was down in the previous run and is still dead", provider);
+            deadProviders.add(provider);
+        }
+    }
+
+    /**
+     * Every change of the providers goes through here or {@link #removeProviders(Supplier)}, so the permits and the
+     * selection strategy are updated only for the providers which are really added, without scanning the pool.
+     *
+     * @param addition adds the providers and returns the ones which were actually added
+     */
+    private void addProviders(Supplier<List<Provider>> addition) {
+        writeThreadSafe(() -> {
+            List<Provider> added = addition.get();
+            if (!added.isEmpty()) {
+                for (Provider provider : added) {
+                    grantPermits(provider);
+                }
+                selectionStrategy.onProvidersChanged(providers.snapshot().asList());
+            }
+        });
+    }
+
+    /**
+     * The permits of the in-flight requests of a removed provider are given back when they complete.
+     *
+     * @param removal removes the providers and returns the ones which were actually removed
+     * @return {@code true} if any provider was removed
+     */
+    private boolean removeProviders(Supplier<List<Provider>> removal) {
+        return writeThreadSafe(() -> {
+            List<Provider> removed = removal.get();
+            if (!removed.isEmpty()) {
+                for (Provider provider : removed) {
+                    revokePermits(provider);
+                }
+                selectionStrategy.onProvidersChanged(providers.snapshot().asList());
+            }
+            return !removed.isEmpty();
+        });
+    }
+
+    /**
+     * A half-open provider only adds its trial requests, the admitted requests must find a provider to take them.
+     */
+    private void grantPermits(Provider provider) {
+        CircuitBreaker circuitBreaker = (circuitBreakerConfig != null) ? circuitBreakers.get(provider) : null;
+        int permits = (circuitBreaker != null && circuitBreaker.getState() == CircuitBreaker.State.HALF_OPEN)
+                ? Math.min(provider.getMaxConcurrentCapacity(), circuitBreakerConfig.getHalfOpenTrialRequests())
+                : provider.getMaxConcurrentCapacity();
+        grantedPermits.put(provider, permits);
+        admissionControl.addPermits(permits);
+    }
+
+    private void revokePermits(Provider provider) {
+        Integer permits = grantedPermits.remove(provider);
+        if (permits != null) {
+            admissionControl.removePermits(permits);
+        }
+    }
+
+    private void checkProvidersAvailable() {
+        if (providers.snapshot().size() == 0) {
+            log.warn("No providers available");
+            metrics.recordUnserved();
+            throw new NoProviderAvailableException("No providers available");
+        }
+    }
+
+    /**
+     * Called once the request is admitted, so at least one of the providers should have a free permit.
+     *
+     * @param key      routing key, {@code null} if there is none
+     * @param excluded provider which must not be picked, {@code null} if there is none
+     * @return the picked provider holding a permit for the request, {@code null} if only the excluded one could
+     * take it
+     * @throws RequestRejectedException     if the alive providers are all saturated
+     * @throws NoProviderAvailableException if no provider can take the request
+     */
+    private Provider acquireProvider(String key, Provider excluded) {
+
+        //a single volatile read, the picked index is always valid for this snapshot
+        CopyOnWriteUniqueList.Snapshot<Provider> snapshot = providers.snapshot();
+        if (snapshot.size() == 0) {
+            throw new NoProviderAvailableException("No providers available");
+        }
+
+        for (int retryCount = 0; retryCount <= maxRetryCount; retryCount++) {
+            int index = (key == null)
+                    ? selectionStrategy.pick(snapshot.asList())
+                    : selectionStrategy.pick(snapshot.asList(), key);
+            Provider provider = snapshot.get(index);
+            if (provider != excluded && tryAcquire(provider)) {
+                return provider;
+            }
+            metrics.recordRetry();
+        }
+
+        //the picked providers are saturated or unhealthy, any other one with a free permit will do
+        int offset = ThreadLocalRandom.current().nextInt(snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            Provider provider = snapshot.get((offset + i) % snapshot.size());
+            if (provider != excluded && tryAcquire(provider)) {
+                return provider;
+            }
+        }
+
+        if (excluded != null) {
+            return null;
+        }
+        for (int i = 0; i < snapshot.size(); i++) {
+            Provider provider = snapshot.get(i);
+            if (provider.isAlive() && provider.getConcurrentCapacity() <= 0 && isClosed(provider)) {
+                metrics.recordRejection();
+                throw new RequestRejectedException("All the alive providers are saturated");
+            }
+        }
+        log.warn("No suitable provider was found after '{}' retries", maxRetryCount);
+        metrics.recordUnserved();
+        throw new NoProviderAvailableException("No alive provider is available");
+    }
+
+    private boolean isClosed(Provider provider) {
+        CircuitBreaker circuitBreaker = (circuitBreakerConfig != null) ? circuitBreakers.get(provider) : null;
+        return circuitBreaker == null || circuitBreaker.getState() == CircuitBreaker.State.CLOSED;
+    }
+
+    /**
+     * The provider is considered loaded for the whole duration of the request, so strategies can see the real load.
+     */
+    private String dispatch(Provider provider) {
+        long start = System.nanoTime();
+        provider.beginRequest();
+        selectionStrategy.onRequestStarted(provider);
+        boolean failed = true;
+        try {
+            String result = provider.provide();
+            failed = false;
+            return result;
+        } finally {
+            completeRequest(provider, System.nanoTime() - start, failed);
+        }
+    }
+
+    private <T> CompletableFuture<T> dispatchAsync(Provider provider, Function<Provider, CompletableFuture<T>> request) {
+        long start = System.nanoTime();
+        provider.beginRequest();
+        selectionStrategy.onRequestStarted(provider);
+        CompletableFuture<T> result;
+        try {
+            result = request.apply(provider);
+        } catch (RuntimeException e) {
+            completeRequest(provider, System.nanoTime() - start, true);
+            return CompletableFuture.failedFuture(e);
+        }
+        return result.whenComplete((value, error) -> {
+            //a stage depending on a cancelled future fails with a wrapped cancellation
+            Throwable cause = (error instanceof CompletionException) ? error.getCause() : error;
+            if (cause instanceof CancellationException) {
+                cancelRequest(provider);
+            } else {
+                completeRequest(provider, System.nanoTime() - start, error != null);
+            }
+        });
+    }
+
+    /**
+     * A cancelled request (e.g. the loser of a hedged request) says nothing about the health of the provider.
+     */
+    private void cancelRequest(Provider provider) {
+        provider.endRequest();
+        selectionStrategy.onRequestCompleted(provider);
+        provider.releasePermit();
+        admissionControl.release();
+    }
+
+    /**
+     * Records the outcome of a request everywhere it is needed, before the provider is considered unloaded.
+     */
+    private void completeRequest(Provider provider, long responseTimeNanos, boolean failed) {
+        provider.recordResponseTime(responseTimeNanos);
+        provider.getMetrics().recordRequest(responseTimeNanos, failed);
+        metrics.recordRequest(responseTimeNanos, failed);
+        provider.endRequest();
+        selectionStrategy.onRequestCompleted(provider);
+        provider.releasePermit();
+        admissionControl.release();
+        if (failed) {
+            onFailure(provider);
+        } else {
+            onSuccess(provider);
+        }
+    }
+
+    /**
+     * @return {@code true} if the provider holds a permit for the request
+     */
+    private boolean tryAcquire(Provider provider) {
+        if (!provider.isAlive()) {
+            removeDeadProvider(provider);
+            return false;
+        }
+        if (!provider.tryAcquirePermit()) {
+            return false;
+        }
+        if (circuitBreakerConfig == null || circuitBreakerOf(provider).tryAcquire()) {
+            return true;
+        }
+        provider.releasePermit();
+        return false;
+    }
+
+    /**
+     * A provider found dead by a request leaves right away instead of at the next heart beat, so its permits are not
+     * admitted any more.
+     */
+    private void removeDeadProvider(Provider provider) {
+        if (deadProviders.add(provider)) {
+            backgroundExecutor.execute(() -> {
+                if (removeProviders(() -> providers.remove(provider) ? List.of(provider) : List.of())) {
+                    log.info("Provider [{}] of [{}] is dead, removed", provider, name);
+                }
+            });
+        }
+    }
+
+    private void onSuccess(Provider provider) {
+        if (circuitBreakerConfig != null && circuitBreakerOf(provider).onSuccess()) {
+            //closed after its trial requests, the provider takes its whole share again
+            writeThreadSafe(() -> {
+                Integer granted = grantedPermits.get(provider);
+                if (granted != null && granted < provider.getMaxConcurrentCapacity()) {
+                    grantedPermits.put(provider, provider.getMaxConcurrentCapacity());
+                    admissionControl.addPermits(provider.getMaxConcurrentCapacity() - granted);
+                }
+            });
+        }
+    }
+
+    private void onFailure(Provider provider) {
+        if (circuitBreakerConfig != null && circuitBreakerOf(provider).onFailure()) {
+            log.warn("Provider [{}] is ejected by its circuit breaker", provider);
+            eject(provider);
+        }
+    }
+
+    private CircuitBreaker circuitBreakerOf(Provider provider) {
+        CircuitBreaker circuitBreaker = circuitBreakers.get(provider);
+        return (circuitBreaker != null)
+                ? circuitBreaker
+                : circuitBreakers.computeIfAbsent(provider, key -> new CircuitBreaker(circuitBreakerConfig));
+    }
+
+    /**
+     * The provider leaves the selection right away, and comes back half-open once the backoff is over.
+     */
+    private void eject(Provider provider) {
+        //a provider which left in the meantime (excluded, reconciled away, dead) is not brought back by its breaker
+        boolean ejected = writeThreadSafe(() -> {
+            if (!removeProviders(() -> providers.remove(provider) ? List.of(provider) : List.of())) {
+                return false;
+            }
+            ejectedProviders.put(provider, provider);
+            return true;
+        });
+        if (!ejected) {
+            return;
+        }
+        provider.getMetrics().recordEjection();
+        metrics.recordEjection();
+        long backoff = circuitBreakerOf(provider).getBackoffMillis();
+        readmissions.put(provider, timer.schedule(() -> backgroundExecutor.execute(() -> readmit(provider)),
+                backoff, TimeUnit.MILLISECONDS));
+    }
+
+    private void cancelReadmission(Provider provider) {
+        HashedWheelTimer.Timeout readmission = readmissions.remove(provider);
+        if (readmission != null) {
+            readmission.cancel();
+        }
+    }
+
+    private void readmit(Provider ejected) {
+        //it might be excluded or included manually in the meantime
+        Provider provider = ejectedProviders.remove(ejected);
+        if (provider == null) {
+            return;
+        }
+        readmissions.remove(provider);
+        circuitBreakerOf(provider).halfOpen();
+        try {
+            addProviders(() -> providers.addOne(provider) ? List.of(provider) : List.of());
+            log.info("Provider [{}] is back for trial requests", provider);
+        } catch (IllegalArgumentException e) {
+            log.warn("Provider [{}] can not be re-included", provider, e);
+        }
+    }
+
+    /**
+     * The request is sent to a first provider, and if it does not answer within the hedge delay, to a second one.
+     * The first successful answer wins and the other call is cancelled. A failure is returned only when all the sent
+     * calls failed, hedging does not replace the retries.
+     */
+    private final class HedgedRequest {
+
+        private final String key;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        //calls which are sent and not completed yet
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private volatile Provider primaryProvider;
+        private volatile CompletableFuture<String> primaryCall;
+        private volatile Provider hedgeProvider;
+        private volatile CompletableFuture<String> hedgeCall;
+        private volatile HashedWheelTimer.Timeout hedgeTimer;
+        private volatile Throwable lastError;
+
+        private HedgedRequest(String key) {
+            this.key = key;
+        }
+
+        private void start(long delayNanos) {
+            executeAsync(key, provider -> {
+                primaryProvider = provider;
+                primaryCall = provider.provideAsync(dispatchExecutor);
+                return primaryCall;
+            }, null, null).whenComplete((value, error) -> onComplete(value, error, false));
+
+            if (!result.isDone()) {
+                hedgeTimer = timer.schedule(this::hedge, delayNanos, TimeUnit.NANOSECONDS);
+                if (result.isDone()) {
+                    hedgeTimer.cancel();
+                }
+            }
+        }
+
+        private void hedge() {
+            //the first call is still waiting for a permit, a second one would only add load
+            if (result.isDone() || primaryProvider == null || !hedgePolicy.tryAcquire()) {
+                return;
+            }
+            if (pending.getAndIncrement() == 0) {
+                //the first call completed in the meantime
+                return;
+            }
+            metrics.recordHedge();
+            executeAsync(key, provider -> {
+                hedgeProvider = provider;
+                hedgeCall = provider.provideAsync(dispatchExecutor);
+                return hedgeCall;
+            }, primaryProvider, null).whenComplete((value, error) -> onComplete(value, error, true));
+        }
+
+        private void onComplete(String value, Throwable error, boolean hedged) {
+            if (error == null && (value != null || !hedged)) {
+                if (result.complete(value)) {
+                    cancel(hedgeTimer);
+                    if (hedged) {
+                        cancel(primaryProvider, primaryCall);
+                    } else {
+                        cancel(hedgeProvider, hedgeCall);
+                    }
+                }
+                return;
+            }
+            //a failure, or no other provider for the hedged call
+            if (error != null) {
+                lastError = error;
+            }
+            if (pending.decrementAndGet() == 0) {
+                cancel(hedgeTimer);
+                if (lastError != null) {
+                    result.completeExceptionally(unwrap(lastError));
+                } else {
+                    result.complete(null);
+                }
+            }
+        }
+
+        /**
+         * The loser is cancelled only if that stops it: the permits of its provider are given back when the
+         * cancelled future completes. Otherwise it runs to completion and its outcome is ignored.
+         */
+        private void cancel(Provider provider, Future<?> call) {
+            if (provider != null && call != null && provider.supportsCancellation()) {
+                call.cancel(true);
+            }
+        }
+
+        private void cancel(HashedWheelTimer.Timeout timeout) {
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+
+        private Throwable unwrap(Throwable error) {
+            return (error instanceof CompletionException && error.getCause() != null) ? error.getCause() : error;
+        }
+    }
 }
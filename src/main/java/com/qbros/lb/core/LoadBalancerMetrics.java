@@ -0,0 +1,82 @@
+package com.qbros.lb.core;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link RequestMetrics} of all the requests of a load balancer, plus the load balancer specific counters.
+ */
+public class LoadBalancerMetrics extends RequestMetrics {
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder unserved = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+
+    /**
+     * A picked provider could not serve the request (dead, or rejected by its circuit breaker), another one is tried.
+     */
+    public void recordRetry() {
+        retries.increment();
+    }
+
+    /**
+     * No provider was found for the request.
+     */
+    public void recordUnserved() {
+        unserved.increment();
+    }
+
+    /**
+     * All the providers were saturated and the request was not admitted.
+     */
+    public void recordRejection() {
+        rejections.increment();
+    }
+
+    /**
+     * A hedged request was sent because the first provider was too slow.
+     */
+    public void recordHedge() {
+        hedges.increment();
+    }
+
+    /**
+     * A keyed request was served by the {@link ResponseCache}, or joined the provider call in flight for its key.
+     */
+    public void recordCacheHit() {
+        cacheHits.increment();
+    }
+
+    /**
+     * A keyed request was not cached, it was sent to a provider.
+     */
+    public void recordCacheMiss() {
+        cacheMisses.increment();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getUnserved() {
+        return unserved.sum();
+    }
+
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    public long getHedges() {
+        return hedges.sum();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+}
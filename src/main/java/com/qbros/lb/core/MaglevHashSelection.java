@@ -0,0 +1,125 @@
+package com.qbros.lb.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maglev consistent hashing (Google, NSDI 2016): a lookup table with a prime number of slots is filled by letting
+ * every provider claim slots in turns, following its own permutation of the table. Every provider gets almost the
+ * same number of slots, lookups are O(1) and including/excluding a provider moves only a small share of the slots.
+ */
+@Slf4j
+public class MaglevHashSelection extends AbsConsistentHashSelection {
+
+    //the size of the table should not change with every change of the providers, otherwise most of the keys move
+    private static final int MIN_TABLE_SIZE = 65537;
+    //minimum slots per provider, the bigger it is the more even the distribution
+    private static final int SLOTS_PER_PROVIDER = 100;
+
+    public MaglevHashSelection() {
+        this(0);
+    }
+
+    /**
+     * @param loadFactor see {@link AbsConsistentHashSelection}, {@code 0} to disable bounded loads
+     */
+    public MaglevHashSelection(double loadFactor) {
+        super(loadFactor);
+    }
+
+    @Override
+    protected LookupTable buildTable(List<Provider> providers) {
+        return new Maglev(providers, tableSize(providers.size()));
+    }
+
+    @Override
+    public String toString() {
+        return "MaglevHashSelection";
+    }
+
+    /**
+     * The size only grows when the number of providers crosses a power of two, so it is stable between changes.
+     */
+    private static int tableSize(int numberOfProviders) {
+        int required = numberOfProviders * SLOTS_PER_PROVIDER;
+        return (required <= MIN_TABLE_SIZE) ? MIN_TABLE_SIZE : nextPrime(Integer.highestOneBit(required) * 2);
+    }
+
+    private static int nextPrime(int from) {
+        int candidate = Math.max(from, 2);
+        while (!isPrime(candidate)) {
+            candidate++;
+        }
+        return candidate;
+    }
+
+    private static boolean isPrime(int value) {
+        if (value % 2 == 0) {
+            return value == 2;
+        }
+        for (int i = 3; (long) i * i <= value; i += 2) {
+            if (value % i == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Maglev implements LookupTable {
+
+        private final List<Provider> providers;
+        //slots[i] is the index of the provider owning the slot i
+        private final int[] slots;
+
+        private Maglev(List<Provider> providers, int size) {
+
+            this.providers = providers;
+            this.slots = new int[size];
+            Arrays.fill(slots, -1);
+
+            int n = providers.size();
+            long[] offsets = new long[n];
+            long[] skips = new long[n];
+            long[] next = new long[n];
+            for (int p = 0; p < n; p++) {
+                long hash = hash(providers.get(p).getId());
+                offsets[p] = Math.floorMod(hash, (long) size);
+                skips[p] = Math.floorMod(mix(hash ^ 0x9e3779b97f4a7c15L), (long) (size - 1)) + 1;
+            }
+
+            int filled = 0;
+            while (true) {
+                for (int p = 0; p < n; p++) {
+                    //the next slot in the permutation of p that is not claimed yet
+                    int slot = (int) ((offsets[p] + next[p] * skips[p]) % size);
+                    while (slots[slot] >= 0) {
+                        next[p]++;
+                        slot = (int) ((offsets[p] + next[p] * skips[p]) % size);
+                    }
+                    slots[slot] = p;
+                    next[p]++;
+                    if (++filled == size) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public List<Provider> providers() {
+            return providers;
+        }
+
+        @Override
+        public int candidates() {
+            return slots.length;
+        }
+
+        @Override
+        public int candidate(long hash, int attempt) {
+            return slots[(int) ((Math.floorMod(hash, (long) slots.length) + attempt) % slots.length)];
+        }
+    }
+}
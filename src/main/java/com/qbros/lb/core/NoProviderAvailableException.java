@@ -0,0 +1,11 @@
+package com.qbros.lb.core;
+
+/**
+ * Thrown by the load balancer when there is no provider that can service the request.
+ */
+public class NoProviderAvailableException extends RuntimeException {
+
+    public NoProviderAvailableException(String message) {
+        super(message);
+    }
+}
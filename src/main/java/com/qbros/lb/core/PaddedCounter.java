@@ -0,0 +1,57 @@
+package com.qbros.lb.core;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * A counter which is alone on its cache lines, so the threads incrementing it do not also invalidate the fields around
+ * it (false sharing).
+ * <p>
+ * The fields of a super class are always laid out before the fields of its sub classes, so the value is surrounded by
+ * the padding of the classes below. 15 longs cover two cache lines, which are fetched together by some CPUs.
+ */
+final class PaddedCounter extends PaddedCounterRightPadding {
+
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(PaddedCounterValue.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    PaddedCounter(long initialValue) {
+        value = initialValue;
+    }
+
+    /**
+     * A single atomic instruction on most CPUs, it never retries like a CAS loop.
+     */
+    long getAndAdd(long delta) {
+        return (long) VALUE.getAndAdd(this, delta);
+    }
+
+    long getAndIncrement() {
+        return getAndAdd(1);
+    }
+
+    long get() {
+        return (long) VALUE.getVolatile(this);
+    }
+}
+
+@SuppressWarnings("unused")
+abstract class PaddedCounterLeftPadding {
+    long p01, p02, p03, p04, p05, p06, p07, p08, p09, p10, p11, p12, p13, p14, p15;
+}
+
+abstract class PaddedCounterValue extends PaddedCounterLeftPadding {
+    volatile long value;
+}
+
+@SuppressWarnings("unused")
+abstract class PaddedCounterRightPadding extends PaddedCounterValue {
+    long p16, p17, p18, p19, p20, p21, p22, p23, p24, p25, p26, p27, p28, p29, p30;
+}
@@ -0,0 +1,82 @@
+package com.qbros.lb.core;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Peak sensitive exponentially weighted moving average of response times (as in Finagle / linkerd).
+ * <p>
+ * A sample above the current average replaces it right away, so latency spikes are seen immediately. Smaller samples
+ * are blended in with a weight depending on the time since the last sample, and the average also decays while there
+ * are no samples, so a provider that was slow once is tried again sooner or later.
+ * <p>
+ * Neither recording nor reading allocates or locks. Concurrent samples may race: one of them can be lost, or blended
+ * with the timestamp of the other one. As the average only steers the selection, it is not worth a lock on the
+ * response path of every request.
+ */
+public class PeakEwma {
+
+    private final double decayNanos;
+    private final LongSupplier nanoClock;
+    //volatile without locking, see the races above
+    private volatile double cost;
+    private volatile long lastUpdateNanos;
+
+    /**
+     * @param decayNanos time constant of the decay, the weight of the old average is {@code exp(-elapsed / decay)}
+     */
+    public PeakEwma(long decayNanos) {
+        this(decayNanos, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock source of {@link System#nanoTime()}, e.g. a controlled clock in the tests
+     */
+    public PeakEwma(long decayNanos, LongSupplier nanoClock) {
+        this.decayNanos = decayNanos;
+        this.nanoClock = nanoClock;
+        this.lastUpdateNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * The peak is compared to the decayed average, but a smaller sample is blended with the average of the last
+     * update, the decay of the elapsed time is applied only once: {@code cost * weight + sample * (1 - weight)}.
+     */
+    public void observe(long responseTimeNanos) {
+        long now = nanoClock.getAsLong();
+        double weight = weight(now);
+        if (responseTimeNanos > cost * weight) {
+            cost = responseTimeNanos;
+        } else {
+            cost = cost * weight + responseTimeNanos * (1 - weight);
+        }
+        lastUpdateNanos = now;
+    }
+
+    /**
+     * Starts again from a known average, e.g. the one of a previous run.
+     */
+    public void reset(double averageNanos) {
+        cost = averageNanos;
+        lastUpdateNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * @return the current average in nanoseconds, {@code 0} if there is no sample yet
+     */
+    public double get() {
+        return cost * weight(nanoClock.getAsLong());
+    }
+
+    /**
+     * @return weight of the average of the last update, {@code exp(-elapsed / decay)}
+     */
+    private double weight(long now) {
+        double elapsed = Math.max(0, now - lastUpdateNanos);
+        return Math.exp(-elapsed / decayNanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.3fms", get() / 1_000_000);
+    }
+}
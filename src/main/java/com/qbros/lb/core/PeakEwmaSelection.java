@@ -0,0 +1,63 @@
+package com.qbros.lb.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Latency aware selection: two distinct providers are sampled randomly (power of two choices), and the one with the
+ * lower {@code peak-EWMA response time * (outstanding requests + 1)} is picked. A provider without response time
+ * (no sample yet, or fully decayed) scores {@link #PENALTY}{@code  + outstanding requests} when it is busy, so the
+ * unknown providers are not flooded.
+ * <p>
+ * A provider that suddenly becomes slow is avoided after its first slow response, and the outstanding requests
+ * account for the requests it is still working on. Every pick is O(1) and does not allocate.
+ */
+@Slf4j
+public class PeakEwmaSelection implements SelectionStrategy {
+
+    //as in Finagle: above any real score, and still ordered by the outstanding requests
+    static final double PENALTY = Long.MAX_VALUE >> 16;
+
+    /**
+     * Without any knowledge about the providers it falls back to a random selection.
+     */
+    @Override
+    public int pick(int total) {
+        return ThreadLocalRandom.current().nextInt(total);
+    }
+
+    @Override
+    public int pick(List<Provider> providers) {
+
+        int total = providers.size();
+        if (total == 1) {
+            return 0;
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(total);
+        //second is picked among the remaining (total - 1) providers, so it never equals the first one
+        int second = random.nextInt(total - 1);
+        if (second >= first) {
+            second++;
+        }
+
+        return (score(providers.get(second)) < score(providers.get(first))) ? second : first;
+    }
+
+    private static double score(Provider provider) {
+        double cost = provider.getResponseTime();
+        int outstanding = provider.getOutstandingRequests();
+        if (cost == 0 && outstanding != 0) {
+            return PENALTY + outstanding;
+        }
+        return cost * (outstanding + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "PeakEwmaSelection";
+    }
+}
@@ -2,8 +2,10 @@ package com.qbros.lb.core;
 
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
@@ -13,8 +15,19 @@ public class Provider {
     private final String id;
     //this is the unique message generated by provider.
     private final String uniqueMsg;
+    //rendered once, so providing does not allocate
+    private final String response;
     //defines the number of concurrent clients it can service
+    private final int maxConcurrentCapacity;
+    //permits left, a request holds one from its dispatch until its completion
     private final AtomicInteger concurrentCapacity;
+    //number of requests dispatched to this provider which are not completed yet
+    private final AtomicInteger outstandingRequests = new AtomicInteger();
+    //response times of the requests, reacts quickly to spikes
+    private final PeakEwma responseTime = new PeakEwma(TimeUnit.SECONDS.toNanos(10));
+    private final RequestMetrics metrics = new RequestMetrics();
+    //relative share of the traffic this provider should receive from the weighted strategies
+    private final int weight;
     //use volatile to ensure thread visibility
     private volatile boolean isAlive;
 
@@ -23,7 +36,7 @@ public class Provider {
     }
 
     public Provider(int concurrentCapacity) {
-        this(UUID.randomUUID().toString());
+        this(UUID.randomUUID().toString(), concurrentCapacity);
     }
 
     /**
@@ -38,25 +51,142 @@ public class Provider {
         this(id, UUID.randomUUID().toString(), concurrentCapacity);
     }
 
+    /**
+     * The weight of the provider is the same as its {@code concurrentCapacity}, and at least 1 so a provider without
+     * capacity can still be created
+     */
     public Provider(String id, String uniqueMsg, int concurrentCapacity) {
+        this(id, uniqueMsg, concurrentCapacity, Math.max(1, concurrentCapacity));
+    }
+
+    /**
+     * @param weight relative share of the traffic used by the weighted strategies, it should be positive
+     */
+    public Provider(String id, String uniqueMsg, int concurrentCapacity, int weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Weight should be positive: " + weight);
+        }
         this.id = id;
         this.uniqueMsg = uniqueMsg;
+        this.response = String.format("%S Provided by %S", uniqueMsg, id);
         this.isAlive = true;
+        this.maxConcurrentCapacity = concurrentCapacity;
         this.concurrentCapacity = new AtomicInteger(concurrentCapacity);
+        this.weight = weight;
         log.info("Provider initialized [{}]", this);
     }
 
     public String provide() {
-        concurrentCapacity.decrementAndGet();
-        String result = String.format("%S Provided by %S", uniqueMsg, id);
+        return response;
+    }
+
+    /**
+     * Non-blocking version of {@link #provide()}. By default, it runs {@link #provide()} on the given executor,
+     * providers that can serve without blocking a thread should override it.
+     *
+     * @param executor used to run blocking work
+     * @return the provided value
+     */
+    public CompletableFuture<String> provideAsync(Executor executor) {
+        return CompletableFuture.supplyAsync(this::provide, executor);
+    }
+
+    /**
+     * @return {@code true} if cancelling the future of {@link #provideAsync} stops the call. It does not by default:
+     * {@link #provide()} keeps running on its thread, so the provider stays loaded until it returns
+     */
+    public boolean supportsCancellation() {
+        return false;
+    }
+
+    /**
+     * Takes one of the {@code concurrentCapacity} permits, it must be given back by {@link #releasePermit()}
+     * once the request is completed.
+     *
+     * @return {@code false} if the provider is already servicing as many requests as it can
+     */
+    public boolean tryAcquirePermit() {
+        for (; ; ) {
+            int current = concurrentCapacity.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (concurrentCapacity.compareAndSet(current, current - 1)) {
+                return true;
+            }
+        }
+    }
+
+    public void releasePermit() {
         concurrentCapacity.incrementAndGet();
-        return result;
     }
 
+    /**
+     * Called by the load balancer right before a request is dispatched to this provider.
+     * Every call must be followed by a call to {@link #endRequest()} once the request is completed.
+     */
+    public void beginRequest() {
+        outstandingRequests.incrementAndGet();
+    }
+
+    /**
+     * Called by the load balancer when a request dispatched to this provider is completed (successfully or not).
+     */
+    public void endRequest() {
+        outstandingRequests.decrementAndGet();
+    }
+
+    /**
+     * Called by the load balancer when a request dispatched to this provider is completed (successfully or not).
+     *
+     * @param responseTimeNanos how long the request took
+     */
+    public void recordResponseTime(long responseTimeNanos) {
+        responseTime.observe(responseTimeNanos);
+    }
+
+    /**
+     * Called when the load balancer restores what it learned in a previous run.
+     *
+     * @param responseTimeNanos peak-EWMA of the response times of the previous run
+     */
+    public void restoreResponseTime(double responseTimeNanos) {
+        responseTime.reset(responseTimeNanos);
+    }
+
+    /**
+     * @return peak-EWMA of the response times in nanoseconds, {@code 0} if there is no request yet
+     */
+    public double getResponseTime() {
+        return responseTime.get();
+    }
+
+    /**
+     * @return number of requests which are dispatched to this provider but not completed yet
+     */
+    public int getOutstandingRequests() {
+        return outstandingRequests.get();
+    }
+
+    /**
+     * @return number of permits left
+     */
     public int getConcurrentCapacity() {
         return concurrentCapacity.get();
     }
 
+    public int getMaxConcurrentCapacity() {
+        return maxConcurrentCapacity;
+    }
+
+    public RequestMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
     public String getId() {
         return id;
     }
@@ -73,6 +203,15 @@ public class Provider {
         return isAlive;
     }
 
+    /**
+     * The heart beat probe, it might block. {@link #isAlive()} is read on every pick, so it must not.
+     *
+     * @return {@code true} if the provider is alive and can service
+     */
+    public boolean check() {
+        return isAlive();
+    }
+
     public void setAlive(boolean alive) {
         isAlive = alive;
     }
@@ -81,6 +220,7 @@ public class Provider {
     public String toString() {
         return "Provider{" +
                 "id='" + id + '\'' +
+                ", weight=" + weight +
                 ", isAlive=" + isAlive +
                 '}';
     }
@@ -95,6 +235,7 @@ public class Provider {
 
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        //Objects.hash would allocate an array on every lookup
+        return id.hashCode();
     }
 }
@@ -0,0 +1,49 @@
+package com.qbros.lb.core;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * A provider as described by a {@link DiscoverySource}. Two equal definitions describe the same provider, so a
+ * provider is rebuilt only when its definition changes.
+ *
+ * @param id      unique id of the provider
+ * @param address {@code host:port} of an HTTP backend, {@code null} for an in-process provider
+ * @param weight  relative share of the traffic, also used as the concurrent capacity, {@code null} for the default
+ *                of the provider type
+ * @param zone    location of the provider (e.g. an availability zone), {@code null} if unknown
+ */
+public record ProviderDefinition(String id, String address, Integer weight, String zone) {
+
+    private static final int DEFAULT_WEIGHT = 5;
+    private static final Duration HTTP_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    public ProviderDefinition {
+        if (id == null || id.isBlank()) {
+            throw new IllegalArgumentException("Provider id is missing");
+        }
+        if (weight != null && weight <= 0) {
+            throw new IllegalArgumentException("Weight of [" + id + "] should be positive: " + weight);
+        }
+        if (address != null && address.lastIndexOf(':') <= 0) {
+            throw new IllegalArgumentException("Address of [" + id + "] should be host:port: " + address);
+        }
+    }
+
+    /**
+     * Default way to build the provider: an {@link HttpProvider} if there is an address, a plain {@link Provider}
+     * otherwise.
+     */
+    public Provider toProvider() {
+        if (address == null) {
+            int capacity = (weight != null) ? weight : DEFAULT_WEIGHT;
+            return new Provider(id, UUID.randomUUID().toString(), capacity, capacity);
+        }
+        int separator = address.lastIndexOf(':');
+        String host = address.substring(0, separator);
+        int port = Integer.parseInt(address.substring(separator + 1));
+        return (weight != null)
+                ? new HttpProvider(id, host, port, weight, HTTP_REQUEST_TIMEOUT)
+                : new HttpProvider(id, host, port);
+    }
+}
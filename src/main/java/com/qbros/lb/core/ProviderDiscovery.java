@@ -0,0 +1,84 @@
+package com.qbros.lb.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Keeps the providers of a load balancer in line with a {@link DiscoverySource}.
+ * <p>
+ * Every new version of the definitions is applied with a single {@link LoadBalancer#reconcile(java.util.Collection)}.
+ * A provider whose definition did not change is passed as the same instance, so it keeps its state (outstanding
+ * requests, response times, circuit breaker); a changed definition gets a new provider which replaces the old one.
+ */
+@Slf4j
+public class ProviderDiscovery implements AutoCloseable {
+
+    private final DiscoverySource source;
+    private final LoadBalancer loadBalancer;
+    private final Function<ProviderDefinition, Provider> factory;
+    //the provider built for every current definition, replaced as a whole by every update
+    private volatile Map<String, Discovered> discovered = Map.of();
+
+    public ProviderDiscovery(DiscoverySource source, LoadBalancer loadBalancer) {
+        this(source, loadBalancer, ProviderDefinition::toProvider);
+    }
+
+    /**
+     * @param factory builds the provider of a new or changed definition
+     */
+    public ProviderDiscovery(DiscoverySource source, LoadBalancer loadBalancer,
+                             Function<ProviderDefinition, Provider> factory) {
+        this.source = source;
+        this.loadBalancer = loadBalancer;
+        this.factory = factory;
+    }
+
+    /**
+     * Applies the current definitions before returning, then keeps applying the new ones in the background.
+     */
+    public void start() {
+        source.start(this::apply);
+    }
+
+    /**
+     * @return the provider discovered with this id, {@code null} if there is none
+     */
+    public Provider getProvider(String id) {
+        Discovered provider = discovered.get(id);
+        return (provider != null) ? provider.provider() : null;
+    }
+
+    /**
+     * Stops the source, the discovered providers stay in the load balancer.
+     */
+    @Override
+    public void close() {
+        source.close();
+    }
+
+    private void apply(List<ProviderDefinition> definitions) {
+        Map<String, Discovered> current = discovered;
+        Map<String, Discovered> next = new LinkedHashMap<>();
+        List<Provider> desired = new ArrayList<>(definitions.size());
+        for (ProviderDefinition definition : definitions) {
+            Discovered previous = current.get(definition.id());
+            Discovered provider = (previous != null && previous.definition().equals(definition))
+                    ? previous : new Discovered(definition, factory.apply(definition));
+            next.put(definition.id(), provider);
+            desired.add(provider.provider());
+        }
+
+        Diff<Provider> diff = loadBalancer.reconcile(desired);
+        discovered = next;
+        log.info("Discovered [{}] providers, added [{}], removed [{}]", desired.size(), diff.getAdded(),
+                diff.getRemoved());
+    }
+
+    private record Discovered(ProviderDefinition definition, Provider provider) {
+    }
+}
@@ -0,0 +1,50 @@
+package com.qbros.lb.core;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and response times of the requests of a provider. Recording does not contend, and does not allocate once
+ * the response time buckets it hits exist.
+ * <p>
+ * Memory: about 1KB per provider, plus 32 bytes per response time bucket in use (see {@link LatencyHistogram}), e.g.
+ * about 16MB for 10,000 providers answering within 20 buckets.
+ */
+public class RequestMetrics {
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder ejections = new LongAdder();
+    private final LatencyHistogram responseTimes = new LatencyHistogram();
+
+    /**
+     * @param responseTimeNanos how long the request took
+     * @param failed            {@code true} if the request failed
+     */
+    public void recordRequest(long responseTimeNanos, boolean failed) {
+        requests.increment();
+        if (failed) {
+            failures.increment();
+        }
+        responseTimes.record(responseTimeNanos);
+    }
+
+    public void recordEjection() {
+        ejections.increment();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public long getEjections() {
+        return ejections.sum();
+    }
+
+    public LatencyHistogram getResponseTimes() {
+        return responseTimes;
+    }
+}
@@ -0,0 +1,12 @@
+package com.qbros.lb.core;
+
+/**
+ * Thrown by the load balancer when all the providers are saturated and the request could not be admitted: the wait
+ * queue is full, or the request waited too long. The caller should back off.
+ */
+public class RequestRejectedException extends RuntimeException {
+
+    public RequestRejectedException(String message) {
+        super(message);
+    }
+}
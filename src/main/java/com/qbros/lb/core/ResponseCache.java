@@ -0,0 +1,98 @@
+package com.qbros.lb.core;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Responses of the keyed requests, in front of the providers.
+ * <p>
+ * Single flight: concurrent requests for a key which is not cached share the same provider call, the others only wait
+ * for it. A failed call is not cached.
+ * <p>
+ * Freshness: a response is served for {@code ttlMillis}. During the next {@code staleWhileRevalidateMillis} it is still
+ * served, but the first request reloads it in the background; after that, the next request waits for a new call.
+ * <p>
+ * Size: at most {@code maximumSize} responses, evicted by W-TinyLFU (Caffeine), so a burst of one-off keys does not
+ * push the hot keys out.
+ */
+public class ResponseCache {
+
+    private final AsyncLoadingCache<String, String> cache;
+    private final Function<String, CompletableFuture<String>> loader;
+    private final LoadBalancerMetrics metrics;
+
+    /**
+     * @param loader   sends the request of a key to a provider
+     * @param executor runs the background reloads and the maintenance of the cache
+     */
+    public ResponseCache(Config config, Function<String, CompletableFuture<String>> loader,
+                         Executor executor, LoadBalancerMetrics metrics) {
+        if (config.maximumSize <= 0 || config.ttlMillis < 0 || config.staleWhileRevalidateMillis < 0) {
+            throw new IllegalArgumentException("Invalid cache configuration: " + config);
+        }
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(config.maximumSize)
+                .expireAfterWrite(Duration.ofMillis(config.ttlMillis + config.staleWhileRevalidateMillis))
+                .executor(executor);
+        if (config.staleWhileRevalidateMillis > 0 && config.ttlMillis > 0) {
+            builder.refreshAfterWrite(Duration.ofMillis(config.ttlMillis));
+        }
+        //the background reloads of the stale responses go through the same loader
+        this.cache = builder.buildAsync((key, ignored) -> loader.apply(key));
+        this.loader = loader;
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param key the key of the request, responses are cached per key
+     * @return the cached response, or the one of the call in flight for this key, or a new call
+     */
+    public CompletableFuture<String> get(String key) {
+        boolean[] loaded = new boolean[1];
+        CompletableFuture<String> response = cache.get(key, (k, ignored) -> {
+            loaded[0] = true;
+            return loader.apply(k);
+        });
+        if (loaded[0]) {
+            metrics.recordCacheMiss();
+        } else {
+            metrics.recordCacheHit();
+        }
+        //the shared future must not be cancelled or completed by one of the callers
+        return response.copy();
+    }
+
+    /**
+     * Removes the cached response of a key, the next request calls a provider.
+     */
+    public void invalidate(String key) {
+        cache.synchronous().invalidate(key);
+    }
+
+    /**
+     * @return number of keys cached or in flight (approximate)
+     */
+    public long size() {
+        return cache.synchronous().estimatedSize();
+    }
+
+    @Value
+    @Builder
+    public static class Config {
+        @Builder.Default
+        long maximumSize = 10_000;
+        //how long a response is fresh, 0 only shares the calls in flight
+        @Builder.Default
+        long ttlMillis = 1000;
+        //how long a response is still served after its ttl while it is reloaded, 0 disables it
+        @Builder.Default
+        long staleWhileRevalidateMillis = 0;
+    }
+}
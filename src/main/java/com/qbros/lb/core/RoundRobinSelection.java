@@ -1,34 +1,38 @@
 package com.qbros.lb.core;
 
-import lombok.extern.slf4j.Slf4j;
+import java.util.List;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
-@Slf4j
+/**
+ * Every pick takes the next value of a single counter with one atomic increment (no CAS retry loop), and the index
+ * is derived from it modulo the current number of providers. The counter is never wrapped by hand, so the picks stay
+ * evenly distributed even when the number of providers changes between two calls.
+ */
 public class RoundRobinSelection implements SelectionStrategy {
 
-    private final AtomicInteger atomicCounter = new AtomicInteger(0);
+    //padded, as it is written by every picking thread
+    private final PaddedCounter counter = new PaddedCounter(1);
 
     /**
-     * Used the following NonBlocking RoundRobin solution
-     * <a href="https://dzone.com/articles/atomicinteger-on-java-and-round-robin">link</a>
-     *
      * @param total number of providers that we need to select one of them
      * @return the index of the selected provider
      */
     @Override
     public int pick(int total) {
+        return (int) Math.floorMod(counter.getAndIncrement(), (long) total);
+    }
 
-        int counter;
-        int nextIndex;
+    /**
+     * The counter is advanced by the size of the batch at once, so the batch gets consecutive providers.
+     */
+    @Override
+    public void pickBatch(List<Provider> providers, int[] indexes) {
 
-        do {
-            counter = atomicCounter.get();
-            nextIndex = (counter + 1) % total;
-            log.debug("total {}, counter {}, next{}", total, counter, nextIndex);
-        } while (!atomicCounter.compareAndSet(counter, nextIndex));
+        long total = providers.size();
+        long first = counter.getAndAdd(indexes.length);
 
-        return nextIndex;
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = (int) Math.floorMod(first + i, total);
+        }
     }
 
     @Override
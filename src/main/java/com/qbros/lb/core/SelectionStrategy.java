@@ -1,5 +1,7 @@
 package com.qbros.lb.core;
 
+import java.util.List;
+
 /**
  * This interface defines contract for different selection strategies.
  */
@@ -12,4 +14,73 @@ public interface SelectionStrategy {
      * @return the picked number from all possible options
      */
     int pick(int total);
+
+    /**
+     * picks the index of the next provider, strategies that need to look at the state of the providers
+     * (e.g. their load) should override this method.
+     *
+     * @param providers all possible options, it must not be modified
+     * @return the index of the picked provider
+     */
+    default int pick(List<Provider> providers) {
+        return pick(providers.size());
+    }
+
+    /**
+     * picks the index of the provider for the given routing key, strategies that provide key affinity
+     * should override this method. The others ignore the key.
+     *
+     * @param providers all possible options, it must not be modified
+     * @param key       routing key
+     * @return the index of the picked provider
+     */
+    default int pick(List<Provider> providers, String key) {
+        return pick(providers);
+    }
+
+    /**
+     * picks the indexes of several providers in a single pass, e.g. for a fan-out. Strategies that can reserve all
+     * the picks at once (e.g. {@link RoundRobinSelection}) should override this method.
+     *
+     * @param providers all possible options, it must not be modified
+     * @param indexes   filled with the indexes of the picked providers, its length is the number of picks
+     */
+    default void pickBatch(List<Provider> providers, int[] indexes) {
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = pick(providers);
+        }
+    }
+
+    /**
+     * Called by the load balancer (while holding its write lock) every time the set of providers changes.
+     * Strategies that precompute their state should rebuild it here, never while picking.
+     * <p>
+     * A rebuild is a full one, so its cost (e.g. O(n) for the weighted strategies, O(n * virtual nodes * log) for the
+     * hash ring) is paid by every change. Batched changes ({@link LoadBalancer#registerAll(List)},
+     * {@link LoadBalancer#reconcile(java.util.Collection)}) are a single change, whatever the number of providers.
+     * <p>
+     * A reader may still pick from the previous list for a short while, so {@link #pick(List)} should check
+     * which list its state was built for.
+     *
+     * @param providers the new providers, it must not be modified
+     */
+    default void onProvidersChanged(List<Provider> providers) {
+    }
+
+    /**
+     * Called by the load balancer right after {@link Provider#beginRequest()}. Strategies that need the total load of
+     * the providers keep it up to date here, instead of summing it on every pick.
+     *
+     * @param provider the provider the request is sent to
+     */
+    default void onRequestStarted(Provider provider) {
+    }
+
+    /**
+     * Called by the load balancer right after {@link Provider#endRequest()}, see {@link #onRequestStarted(Provider)}.
+     *
+     * @param provider the provider which completed the request
+     */
+    default void onRequestCompleted(Provider provider) {
+    }
 }
@@ -0,0 +1,87 @@
+package com.qbros.lb.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Smooth weighted round robin, as implemented by nginx.
+ * <p>
+ * On every pick each provider's current weight is increased by its {@link Provider#getWeight() weight}, the provider
+ * with the highest current weight is picked and its current weight is decreased by the total weight. With the weights
+ * {5, 1, 1} it produces {a, a, b, a, c, a, a} instead of sending bursts of five requests to {@code a}.
+ * <p>
+ * Every pick is O(n) and mutually exclusive, the weights are only (re)loaded when the providers change.
+ */
+@Slf4j
+public class SmoothWeightedRoundRobinSelection implements SelectionStrategy {
+
+    //used while the weights are not loaded for the list of providers
+    private final AtomicInteger fallbackCounter = new AtomicInteger();
+    //use volatile to publish the rebuilt state to the readers
+    private volatile State state = new State(List.of());
+
+    /**
+     * Without any knowledge about the weights it falls back to a plain round robin.
+     */
+    @Override
+    public int pick(int total) {
+        return Math.floorMod(fallbackCounter.getAndIncrement(), total);
+    }
+
+    @Override
+    public int pick(List<Provider> providers) {
+
+        State current = state;
+        //the state is not built for this list yet (it is being changed right now)
+        if (current.providers != providers) {
+            return pick(providers.size());
+        }
+
+        return current.next();
+    }
+
+    @Override
+    public void onProvidersChanged(List<Provider> providers) {
+        state = new State(providers);
+        log.debug("Weights reloaded for [{}] providers", providers.size());
+    }
+
+    @Override
+    public String toString() {
+        return "SmoothWeightedRoundRobinSelection";
+    }
+
+    private static final class State {
+
+        private final List<Provider> providers;
+        private final int[] weights;
+        private final int[] currentWeights;
+        private final int totalWeight;
+
+        private State(List<Provider> providers) {
+            this.providers = providers;
+            this.weights = new int[providers.size()];
+            this.currentWeights = new int[providers.size()];
+            int total = 0;
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = providers.get(i).getWeight();
+                total += weights[i];
+            }
+            this.totalWeight = total;
+        }
+
+        private synchronized int next() {
+            int best = 0;
+            for (int i = 0; i < weights.length; i++) {
+                currentWeights[i] += weights[i];
+                if (currentWeights[i] > currentWeights[best]) {
+                    best = i;
+                }
+            }
+            currentWeights[best] -= totalWeight;
+            return best;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.qbros.lb.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * What a load balancer learned about its providers, persisted so a restarted load balancer does not start cold.
+ * <p>
+ * Binary layout (big endian), written through a memory mapped file:
+ * <pre>
+ * int    magic 'LBS1'
+ * long   saved at (epoch millis)
+ * int    number of providers
+ *        short id length, id (UTF-8), byte health, double response time EWMA (nanos)
+ * int    number of response time buckets
+ *        long count of every bucket
+ * long   total response time (nanos)
+ * long   CRC32 of all the previous bytes
+ * </pre>
+ * A snapshot is written to a temporary file which is then moved over the previous one, so a crash while saving never
+ * leaves a truncated snapshot behind.
+ */
+@Slf4j
+public final class StateSnapshot {
+
+    private static final int MAGIC = 0x4C425331;
+
+    public enum Health {
+        /**
+         * Used for the selection.
+         */
+        UP,
+        /**
+         * Ejected by its circuit breaker or removed by the heart beats.
+         */
+        DOWN
+    }
+
+    /**
+     * @param responseTimeNanos peak-EWMA of the response times
+     */
+    public record ProviderState(Health health, double responseTimeNanos) {
+    }
+
+    private final long savedAtMillis;
+    private final Map<String, ProviderState> providers;
+    private final long[] responseTimeCounts;
+    private final long responseTimeTotalNanos;
+
+    public StateSnapshot(long savedAtMillis, Map<String, ProviderState> providers, long[] responseTimeCounts,
+                         long responseTimeTotalNanos) {
+        this.savedAtMillis = savedAtMillis;
+        this.providers = Collections.unmodifiableMap(new LinkedHashMap<>(providers));
+        this.responseTimeCounts = responseTimeCounts.clone();
+        this.responseTimeTotalNanos = responseTimeTotalNanos;
+    }
+
+    /**
+     * @return {@code null} if there is no snapshot, or if it is corrupted or not compatible
+     */
+    public static StateSnapshot read(Path file) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            int checked = buffer.limit() - Long.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().limit(checked));
+            if (buffer.getLong(checked) != crc.getValue() || buffer.getInt() != MAGIC) {
+                log.warn("State snapshot [{}] is corrupted, starting cold", file);
+                return null;
+            }
+
+            long savedAtMillis = buffer.getLong();
+            int providerCount = buffer.getInt();
+            Map<String, ProviderState> providers = new LinkedHashMap<>();
+            for (int i = 0; i < providerCount; i++) {
+                byte[] id = new byte[buffer.getShort()];
+                buffer.get(id);
+                Health health = Health.values()[buffer.get()];
+                providers.put(new String(id, StandardCharsets.UTF_8), new ProviderState(health, buffer.getDouble()));
+            }
+            long[] counts = new long[buffer.getInt()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buffer.getLong();
+            }
+            return new StateSnapshot(savedAtMillis, providers, counts, buffer.getLong());
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            log.warn("State snapshot [{}] can not be read, starting cold", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * @throws IOException the previous snapshot, if any, is left untouched then
+     */
+    public void write(Path file) throws IOException {
+        int size = Integer.BYTES + Long.BYTES + Integer.BYTES;
+        for (String id : providers.keySet()) {
+            int length = id.getBytes(StandardCharsets.UTF_8).length;
+            if (length > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Provider id is too long: " + id);
+            }
+            size += Short.BYTES + length + Byte.BYTES + Double.BYTES;
+        }
+        size += Integer.BYTES + responseTimeCounts.length * Long.BYTES + Long.BYTES + Long.BYTES;
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(MAGIC);
+            buffer.putLong(savedAtMillis);
+            buffer.putInt(providers.size());
+            providers.forEach((id, state) -> {
+                byte[] encoded = id.getBytes(StandardCharsets.UTF_8);
+                buffer.putShort((short) encoded.length);
+                buffer.put(encoded);
+                buffer.put((byte) state.health().ordinal());
+                buffer.putDouble(state.responseTimeNanos());
+            });
+            buffer.putInt(responseTimeCounts.length);
+            for (long count : responseTimeCounts) {
+                buffer.putLong(count);
+            }
+            buffer.putLong(responseTimeTotalNanos);
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().flip());
+            buffer.putLong(crc.getValue());
+            buffer.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public long getSavedAtMillis() {
+        return savedAtMillis;
+    }
+
+    /**
+     * @return the state of every known provider, by id
+     */
+    public Map<String, ProviderState> getProviders() {
+        return providers;
+    }
+
+    public long[] getResponseTimeCounts() {
+        return responseTimeCounts.clone();
+    }
+
+    public long getResponseTimeTotalNanos() {
+        return responseTimeTotalNanos;
+    }
+}
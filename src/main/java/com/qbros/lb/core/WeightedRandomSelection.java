@@ -0,0 +1,100 @@
+package com.qbros.lb.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Picks the providers randomly, proportional to their {@link Provider#getWeight() weight}.
+ * <p>
+ * It uses the alias method (Vose): the table is built in O(n) when the providers change, and every pick is O(1)
+ * (one random column plus one biased coin flip) regardless of the number of providers.
+ */
+@Slf4j
+public class WeightedRandomSelection implements SelectionStrategy {
+
+    //use volatile to publish the rebuilt table to the readers
+    private volatile AliasTable table = new AliasTable(List.of());
+
+    /**
+     * Without any knowledge about the weights it falls back to a uniform random selection.
+     */
+    @Override
+    public int pick(int total) {
+        return ThreadLocalRandom.current().nextInt(total);
+    }
+
+    @Override
+    public int pick(List<Provider> providers) {
+
+        AliasTable current = table;
+        //the table is not built for this list yet (it is being changed right now)
+        if (current.providers != providers) {
+            return pick(providers.size());
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int column = random.nextInt(current.probability.length);
+        return (random.nextDouble() < current.probability[column]) ? column : current.alias[column];
+    }
+
+    @Override
+    public void onProvidersChanged(List<Provider> providers) {
+        table = new AliasTable(providers);
+        log.debug("Alias table rebuilt for [{}] providers", providers.size());
+    }
+
+    @Override
+    public String toString() {
+        return "WeightedRandomSelection";
+    }
+
+    private static final class AliasTable {
+
+        private final List<Provider> providers;
+        private final double[] probability;
+        private final int[] alias;
+
+        private AliasTable(List<Provider> providers) {
+
+            int n = providers.size();
+            this.providers = providers;
+            this.probability = new double[n];
+            this.alias = new int[n];
+
+            long totalWeight = 0;
+            for (Provider provider : providers) {
+                totalWeight += provider.getWeight();
+            }
+
+            //scale the weights so that the average column is exactly 1
+            double[] scaled = new double[n];
+            Deque<Integer> small = new ArrayDeque<>();
+            Deque<Integer> large = new ArrayDeque<>();
+            for (int i = 0; i < n; i++) {
+                scaled[i] = (double) providers.get(i).getWeight() * n / totalWeight;
+                (scaled[i] < 1.0 ? small : large).push(i);
+            }
+
+            while (!small.isEmpty() && !large.isEmpty()) {
+                int less = small.pop();
+                int more = large.pop();
+                probability[less] = scaled[less];
+                alias[less] = more;
+                scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+                (scaled[more] < 1.0 ? small : large).push(more);
+            }
+
+            //what remains is 1 up to rounding errors
+            while (!large.isEmpty()) {
+                probability[large.pop()] = 1.0;
+            }
+            while (!small.isEmpty()) {
+                probability[small.pop()] = 1.0;
+            }
+        }
+    }
+}
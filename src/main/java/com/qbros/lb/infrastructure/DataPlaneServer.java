@@ -0,0 +1,560 @@
+package com.qbros.lb.infrastructure;
+
+import com.qbros.lb.core.BackendErrorException;
+import com.qbros.lb.core.HashedWheelTimer;
+import com.qbros.lb.core.LoadBalancer;
+import com.qbros.lb.core.NoProviderAvailableException;
+import com.qbros.lb.core.RequestRejectedException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A minimal HTTP/1.1 listener serving {@code GET <path>} with {@link LoadBalancer#getAsync()} of the load balancer
+ * routed to the path, without going through the servlet container and Spring MVC.
+ * <p>
+ * A single thread runs a {@link Selector} over all the connections, it never blocks: the provider calls complete on
+ * the executors of the load balancers and wake the selector up. Connections are kept alive (unless the client asks
+ * for {@code Connection: close}, or speaks HTTP/1.0 without keep-alive) and requests can be pipelined, their
+ * responses are written back in order, several at once when they are ready. A connection stops being read while it
+ * has {@link #MAX_PIPELINED_REQUESTS} requests in flight, and is closed when it has none and no byte went through for
+ * {@code idleTimeoutMillis}.
+ * <p>
+ * A failing connection is closed without affecting the others. When no connection can be accepted (e.g. too many
+ * open files), accepting is paused for {@link #ACCEPT_RETRY_MILLIS}.
+ * <p>
+ * Only what the balancing endpoints need is supported: requests without a body, or with a {@code Content-Length}
+ * body which is ignored, and a plain text response.
+ */
+@Slf4j
+public class DataPlaneServer implements AutoCloseable {
+
+    static final int MAX_PIPELINED_REQUESTS = 64;
+    static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60_000;
+    static final long ACCEPT_RETRY_MILLIS = 100;
+    //request line, headers and body of a request must fit in it
+    private static final int MAX_REQUEST_SIZE = 8192;
+    private static final byte[] HEADERS_END = {'\r', '\n', '\r', '\n'};
+
+    private final InetSocketAddress address;
+    private final Map<String, ? extends LoadBalancer> routes;
+    private final long idleTimeoutMillis;
+    private final HashedWheelTimer timer = HashedWheelTimer.shared();
+    //connections having a response completed by another thread
+    private final Queue<Connection> completed = new ConcurrentLinkedQueue<>();
+    //work handed over to the event loop by the timer
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private SelectionKey acceptKey;
+    private Thread eventLoop;
+    private volatile boolean closed;
+
+    /**
+     * @param address where to listen, port 0 picks a free one
+     * @param routes  load balancer of every path, e.g. {@code /lb/random}
+     */
+    public DataPlaneServer(InetSocketAddress address, Map<String, ? extends LoadBalancer> routes) {
+        this(address, routes, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param idleTimeoutMillis a connection without request in flight is closed after that long without any byte
+     *                          going through
+     */
+    public DataPlaneServer(InetSocketAddress address, Map<String, ? extends LoadBalancer> routes,
+                           long idleTimeoutMillis) {
+        if (idleTimeoutMillis <= 0) {
+            throw new IllegalArgumentException("Invalid idle timeout: " + idleTimeoutMillis);
+        }
+        this.address = address;
+        this.routes = Map.copyOf(routes);
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * @throws UncheckedIOException if the address can not be bound
+     */
+    public void start() {
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(address, 1024);
+            serverChannel.configureBlocking(false);
+            acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("Can not listen on " + address, e);
+        }
+
+        eventLoop = new Thread(this::run, "lb-data-plane");
+        eventLoop.setDaemon(true);
+        eventLoop.start();
+        log.info("Data plane listening on {} for {}", getAddress(), routes.keySet());
+    }
+
+    /**
+     * @return the bound address, with the actual port
+     */
+    public InetSocketAddress getAddress() {
+        try {
+            return (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Closes the listener and all the connections, the calls in flight are not answered.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (eventLoop == null) {
+            closeQuietly();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+                    task.run();
+                }
+                for (Connection connection = completed.poll(); connection != null; connection = completed.poll()) {
+                    connection.guarded(connection::flush);
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    connection.guarded(() -> {
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.flush();
+                        }
+                    });
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!closed) {
+                log.error("Data plane stopped", e);
+            }
+        } finally {
+            closeQuietly();
+        }
+    }
+
+    private void accept() {
+        for (; ; ) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                //the pending connections stay in the backlog, the selector would report them again right away
+                log.warn("Can not accept connections, retrying in {} ms", ACCEPT_RETRY_MILLIS, e);
+                acceptKey.interestOps(0);
+                timer.schedule(() -> execute(() -> acceptKey.interestOps(SelectionKey.OP_ACCEPT)),
+                        ACCEPT_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connection.scheduleIdleCheck(idleTimeoutMillis);
+            } catch (IOException e) {
+                log.debug("Can not set the connection of {} up", channel, e);
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    /**
+     * Runs the task on the event loop.
+     */
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void closeQuietly() {
+        try {
+            if (selector != null) {
+                for (SelectionKey key : selector.keys()) {
+                    key.channel().close();
+                }
+                selector.close();
+            }
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            log.debug("Error while closing the data plane", e);
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Error while closing {}", channel, e);
+        }
+    }
+
+    private void responseCompleted(Connection connection) {
+        if (Thread.currentThread() == eventLoop) {
+            //completed right away, the connection is flushed after the parsing
+            return;
+        }
+        completed.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * The state of a client connection, only used by the event loop thread.
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private SelectionKey key;
+        //received bytes not parsed yet, in write mode
+        private final ByteBuffer input = ByteBuffer.allocate(MAX_REQUEST_SIZE);
+        //responses of the parsed requests, in the order of the requests
+        private final ArrayDeque<CompletableFuture<ByteBuffer>> responses = new ArrayDeque<>();
+        //completed responses being written
+        private final ArrayDeque<ByteBuffer> output = new ArrayDeque<>();
+        //no request is parsed any more: the client closed its side, or asked for the connection to be closed
+        private boolean lastRequestParsed;
+        private long lastActivityNanos = System.nanoTime();
+        private HashedWheelTimer.Timeout idleCheck;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * An unexpected failure, an {@link Error} included, only closes this connection: the event loop keeps serving
+         * the others.
+         */
+        void guarded(Runnable action) {
+            try {
+                action.run();
+            } catch (RuntimeException | Error e) {
+                log.warn("Connection of {} failed, closed", channel, e);
+                close();
+            }
+        }
+
+        void scheduleIdleCheck(long delayMillis) {
+            idleCheck = timer.schedule(() -> execute(() -> guarded(this::checkIdle)), delayMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+
+        private void checkIdle() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            long idleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActivityNanos);
+            if (!responses.isEmpty() || !output.isEmpty()) {
+                //waiting for the load balancer or for the client to read, not idle
+                scheduleIdleCheck(idleTimeoutMillis);
+            } else if (idleMillis >= idleTimeoutMillis) {
+                log.debug("Connection of {} idle for {} ms, closed", channel, idleMillis);
+                close();
+            } else {
+                scheduleIdleCheck(idleTimeoutMillis - idleMillis);
+            }
+        }
+
+        void read() {
+            int read;
+            try {
+                read = channel.read(input);
+            } catch (IOException e) {
+                log.debug("Connection reset by the client", e);
+                close();
+                return;
+            }
+            if (read > 0) {
+                lastActivityNanos = System.nanoTime();
+            }
+            if (read < 0) {
+                //half-closed: the requests already received are still answered
+                lastRequestParsed = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+            parse();
+            flush();
+        }
+
+        private void parse() {
+            byte[] bytes = input.array();
+            int start = 0;
+            while (responses.size() < MAX_PIPELINED_REQUESTS && !lastRequestParsed) {
+                int headersEnd = indexOf(bytes, start, input.position(), HEADERS_END);
+                if (headersEnd < 0) {
+                    if (start == 0 && !input.hasRemaining()) {
+                        respondAndClose(431, "Request Header Fields Too Large");
+                    }
+                    break;
+                }
+                Request request = Request.parse(new String(bytes, start, headersEnd - start,
+                        StandardCharsets.ISO_8859_1));
+                if (request == null) {
+                    respondAndClose(400, "Bad Request");
+                    break;
+                }
+                if (request.chunked) {
+                    respondAndClose(501, "Not Implemented");
+                    break;
+                }
+                int headSize = headersEnd + HEADERS_END.length - start;
+                if (request.contentLength > MAX_REQUEST_SIZE - headSize) {
+                    respondAndClose(413, "Payload Too Large");
+                    break;
+                }
+                int requestEnd = start + headSize + request.contentLength;
+                if (requestEnd > input.position()) {
+                    //the body is not fully received yet
+                    break;
+                }
+                start = requestEnd;
+                lastRequestParsed = !request.keepAlive;
+                dispatch(request);
+            }
+
+            input.flip().position(start);
+            input.compact();
+            boolean reading = !lastRequestParsed && responses.size() < MAX_PIPELINED_REQUESTS;
+            key.interestOps(reading
+                    ? key.interestOps() | SelectionKey.OP_READ
+                    : key.interestOps() & ~SelectionKey.OP_READ);
+        }
+
+        private void dispatch(Request request) {
+            LoadBalancer loadBalancer = routes.get(request.path);
+            CompletableFuture<ByteBuffer> response;
+            if (!"GET".equals(request.method)) {
+                response = CompletableFuture.completedFuture(
+                        response(405, "Method Not Allowed", "Allow: GET\r\n", "", request.keepAlive));
+            } else if (loadBalancer == null) {
+                response = CompletableFuture.completedFuture(
+                        response(404, "Not Found", "", "", request.keepAlive));
+            } else {
+                CompletableFuture<String> call;
+                try {
+                    call = loadBalancer.getAsync();
+                } catch (RuntimeException e) {
+                    call = CompletableFuture.failedFuture(e);
+                }
+                response = call.handle((body, failure) -> response(body, failure, request.keepAlive));
+            }
+            responses.add(response);
+            response.whenComplete((ignored, failure) -> responseCompleted(this));
+        }
+
+        private void respondAndClose(int status, String reason) {
+            lastRequestParsed = true;
+            responses.add(CompletableFuture.completedFuture(response(status, reason, "", reason, false)));
+        }
+
+        /**
+         * Writes the completed responses in order. Once some are written, the requests which were waiting for room
+         * in the pipeline are parsed, and their responses which are already completed are written in turn.
+         */
+        void flush() {
+            //closed while some calls were in flight
+            while (channel.isOpen()) {
+                int written = 0;
+                while (!responses.isEmpty() && responses.peek().isDone()) {
+                    output.add(responses.poll().join());
+                    written++;
+                }
+                if (!output.isEmpty()) {
+                    try {
+                        //gathering write: the responses of pipelined requests go in the same packets
+                        if (channel.write(output.toArray(new ByteBuffer[0])) > 0) {
+                            lastActivityNanos = System.nanoTime();
+                        }
+                    } catch (IOException e) {
+                        log.debug("Connection reset by the client", e);
+                        close();
+                        return;
+                    }
+                    while (!output.isEmpty() && !output.peek().hasRemaining()) {
+                        output.poll();
+                    }
+                }
+
+                if (!output.isEmpty()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                if (lastRequestParsed && responses.isEmpty()) {
+                    close();
+                    return;
+                }
+                //room for more pipelined requests only if some responses just left, the ones received come first
+                boolean roomMade = written > 0 && responses.size() < MAX_PIPELINED_REQUESTS;
+                if (!roomMade || lastRequestParsed || (key.interestOps() & SelectionKey.OP_READ) != 0) {
+                    return;
+                }
+                parse();
+            }
+        }
+
+        private void close() {
+            if (idleCheck != null) {
+                idleCheck.cancel();
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            closeQuietly(channel);
+        }
+    }
+
+    private static ByteBuffer response(String body, Throwable failure, boolean keepAlive) {
+        if (failure == null) {
+            return response(200, "OK", "", body, keepAlive);
+        }
+        Throwable cause = (failure instanceof CompletionException && failure.getCause() != null)
+                ? failure.getCause()
+                : failure;
+        if (cause instanceof RequestRejectedException) {
+            return response(429, "Too Many Requests", "Retry-After: 1\r\n", cause.getMessage(), keepAlive);
+        }
+        if (cause instanceof NoProviderAvailableException) {
+            return response(503, "Service Unavailable", "", cause.getMessage(), keepAlive);
+        }
+        if (cause instanceof BackendErrorException) {
+            return response(502, "Bad Gateway", "", cause.getMessage(), keepAlive);
+        }
+        log.warn("Request failed", cause);
+        return response(500, "Internal Server Error", "", "", keepAlive);
+    }
+
+    private static ByteBuffer response(int status, String reason, String headers, String body, boolean keepAlive) {
+        byte[] content = (body != null) ? body.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        String head = "HTTP/1.1 " + status + " " + reason + "\r\n"
+                + "Content-Type: text/plain;charset=UTF-8\r\n"
+                + "Content-Length: " + content.length + "\r\n"
+                + (keepAlive ? "" : "Connection: close\r\n")
+                + headers
+                + "\r\n";
+        byte[] encodedHead = head.getBytes(StandardCharsets.ISO_8859_1);
+        return ByteBuffer.allocate(encodedHead.length + content.length).put(encodedHead).put(content).flip();
+    }
+
+    private static int indexOf(byte[] bytes, int from, int to, byte[] searched) {
+        for (int i = from; i <= to - searched.length; i++) {
+            int j = 0;
+            while (j < searched.length && bytes[i + j] == searched[j]) {
+                j++;
+            }
+            if (j == searched.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The parts of a request head the data plane cares about.
+     */
+    private static final class Request {
+
+        private String method;
+        private String path;
+        private boolean keepAlive;
+        private int contentLength;
+        private boolean chunked;
+
+        /**
+         * @param head request line and headers, without the final empty line
+         * @return {@code null} if the head is malformed
+         */
+        static Request parse(String head) {
+            String[] lines = head.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+                return null;
+            }
+            Request request = new Request();
+            request.method = requestLine[0];
+            int query = requestLine[1].indexOf('?');
+            request.path = (query < 0) ? requestLine[1] : requestLine[1].substring(0, query);
+            request.keepAlive = requestLine[2].equals("HTTP/1.1");
+
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon <= 0) {
+                    return null;
+                }
+                String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                String value = lines[i].substring(colon + 1).trim().toLowerCase(Locale.ROOT);
+                switch (name) {
+                    case "connection":
+                        if (value.contains("close")) {
+                            request.keepAlive = false;
+                        } else if (value.contains("keep-alive")) {
+                            request.keepAlive = true;
+                        }
+                        break;
+                    case "content-length":
+                        try {
+                            request.contentLength = Integer.parseInt(value);
+                        } catch (NumberFormatException e) {
+                            return null;
+                        }
+                        if (request.contentLength < 0) {
+                            return null;
+                        }
+                        break;
+                    case "transfer-encoding":
+                        request.chunked = !value.equals("identity");
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return request;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.qbros.lb.infrastructure;
+
+import com.qbros.lb.core.HttpProvider;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.Provider;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link HttpProvider}s of a load balancer by id, as registered through the backend endpoints.
+ */
+public class HttpBackends {
+
+    private final LoadBalancerImpl loadBalancer;
+    private final Map<String, HttpProvider> providersMap = new ConcurrentHashMap<>();
+
+    public HttpBackends(LoadBalancerImpl loadBalancer) {
+        this.loadBalancer = loadBalancer;
+    }
+
+    public void register(String id, String host, int port) {
+        loadBalancer.include(providersMap.computeIfAbsent(id.toUpperCase(), key -> new HttpProvider(key, host, port)));
+    }
+
+    /**
+     * The backends become the given ones in a single change. A known backend keeps its state, unless its address
+     * changed: it is then replaced by a new one.
+     */
+    public MembershipChange reconcile(List<Backend> backends) {
+        List<Provider> desired = new ArrayList<>(backends.size());
+        for (Backend backend : backends) {
+            InetSocketAddress address = InetSocketAddress.createUnresolved(backend.host(), backend.port());
+            desired.add(providersMap.compute(backend.id().toUpperCase(), (id, current) ->
+                    (current != null && current.getAddress().equals(address))
+                            ? current : new HttpProvider(id, backend.host(), backend.port())));
+        }
+        return MembershipChange.of(loadBalancer.reconcile(desired));
+    }
+
+    /**
+     * @throws ResponseStatusException 404 if the backend is unknown
+     */
+    public void exclude(String id) {
+        loadBalancer.exclude(backendById(id));
+    }
+
+    /**
+     * @throws ResponseStatusException 404 if the backend is unknown
+     */
+    public void include(String id) {
+        loadBalancer.include(backendById(id));
+    }
+
+    private HttpProvider backendById(String id) {
+        HttpProvider provider = providersMap.get(id.toUpperCase());
+        if (provider == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown backend: " + id);
+        }
+        return provider;
+    }
+
+    /**
+     * A backend of the reconcile endpoints.
+     */
+    public record Backend(String id, String host, int port) {
+    }
+}
@@ -0,0 +1,151 @@
+package com.qbros.lb.infrastructure;
+
+import com.qbros.lb.core.CircuitBreaker;
+import com.qbros.lb.core.ExecutionMode;
+import com.qbros.lb.core.FileDiscoverySource;
+import com.qbros.lb.core.LeastOutstandingSelection;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.ProviderDiscovery;
+import com.qbros.lb.core.RandomSelection;
+import com.qbros.lb.core.RoundRobinSelection;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The load balancers used by the controllers, they are beans so the metrics (and other infrastructure) can find them.
+ * Spring closes them on shutdown (their inferred destroy method is {@code close()}).
+ */
+@Configuration
+public class LoadBalancerConfiguration {
+
+    //threads of the provider calls and heart beats, see lb.execution-mode
+    private final ExecutionMode executionMode;
+    //where the load balancers save their state for the next start, null if they start cold
+    private final Path stateDirectory;
+
+    public LoadBalancerConfiguration(@Value("${lb.execution-mode:PLATFORM}") ExecutionMode executionMode,
+                                     @Value("${lb.state-dir:}") String stateDirectory) {
+        this.executionMode = executionMode;
+        this.stateDirectory = stateDirectory.isEmpty() ? null : Path.of(stateDirectory);
+    }
+
+    @Bean
+    public LoadBalancerImpl randomLoadBalancer() {
+        return LoadBalancerImpl.builder()
+                .name("random LB")
+                .stateFile(stateFile("random"))
+                .selectionStrategy(new RandomSelection())
+                .maxRetryCount(3)
+                .executionMode(executionMode)
+                .build();
+    }
+
+    @Bean
+    public LoadBalancerImpl roundRobinLoadBalancer() {
+        return LoadBalancerImpl.builder()
+                .name("round robin LB")
+                .stateFile(stateFile("round-robin"))
+                .selectionStrategy(new RoundRobinSelection())
+                .maxRetryCount(3)
+                .executionMode(executionMode)
+                .build();
+    }
+
+    @Bean
+    public LoadBalancerImpl proxyLoadBalancer() {
+        return LoadBalancerImpl.builder()
+                .name("proxy LB")
+                .stateFile(stateFile("proxy"))
+                .selectionStrategy(new LeastOutstandingSelection())
+                .maxCapacity(100)
+                .maxRetryCount(3)
+                .executionMode(executionMode)
+                .circuitBreaker(CircuitBreaker.Config.builder().build())
+                .build();
+    }
+
+    /**
+     * The providers of the random load balancer are read from {@code lb.discovery.random-file} instead of being
+     * hardcoded in {@link RandomLBController}.
+     */
+    @Bean(initMethod = "start")
+    @ConditionalOnProperty("lb.discovery.random-file")
+    public ProviderDiscovery randomDiscovery(@Qualifier("randomLoadBalancer") LoadBalancerImpl loadBalancer,
+                                             @Value("${lb.discovery.random-file}") Path file) {
+        return new ProviderDiscovery(new FileDiscoverySource(file), loadBalancer);
+    }
+
+    /**
+     * Same as {@link #randomDiscovery}, for {@link RoundRobinLBController}.
+     */
+    @Bean(initMethod = "start")
+    @ConditionalOnProperty("lb.discovery.round-robin-file")
+    public ProviderDiscovery roundRobinDiscovery(@Qualifier("roundRobinLoadBalancer") LoadBalancerImpl loadBalancer,
+                                                 @Value("${lb.discovery.round-robin-file}") Path file) {
+        return new ProviderDiscovery(new FileDiscoverySource(file), loadBalancer);
+    }
+
+    /**
+     * {@code GET /lb/random} and {@code GET /lb/roundrobin} served on {@code lb.data-plane.port} without Spring MVC,
+     * the admin endpoints stay on the servlet container.
+     */
+    @Bean(initMethod = "start")
+    @ConditionalOnProperty("lb.data-plane.port")
+    public DataPlaneServer dataPlaneServer(@Qualifier("randomLoadBalancer") LoadBalancerImpl random,
+                                           @Qualifier("roundRobinLoadBalancer") LoadBalancerImpl roundRobin,
+                                           @Value("${lb.data-plane.port}") int port,
+                                           @Value("${lb.data-plane.idle-timeout-millis:60000}")
+                                           long idleTimeoutMillis) {
+        return new DataPlaneServer(new InetSocketAddress(port),
+                Map.of("/lb/random", random, "/lb/roundrobin", roundRobin), idleTimeoutMillis);
+    }
+
+    /**
+     * The backends of the TCP proxy, registered through {@link TcpProxyController}. A connection is a request: its
+     * response time is the lifetime of the connection.
+     */
+    @Bean
+    @ConditionalOnProperty("lb.tcp-proxy.port")
+    public LoadBalancerImpl tcpProxyLoadBalancer() {
+        return LoadBalancerImpl.builder()
+                .name("tcp proxy LB")
+                .stateFile(stateFile("tcp-proxy"))
+                .selectionStrategy(new LeastOutstandingSelection())
+                .maxCapacity(100)
+                .maxRetryCount(3)
+                .executionMode(executionMode)
+                .circuitBreaker(CircuitBreaker.Config.builder().build())
+                .build();
+    }
+
+    /**
+     * Connections accepted on {@code lb.tcp-proxy.port} are piped to the backends of the TCP proxy load balancer.
+     */
+    @Bean(initMethod = "start")
+    @ConditionalOnProperty("lb.tcp-proxy.port")
+    public TcpProxy tcpProxy(@Qualifier("tcpProxyLoadBalancer") LoadBalancerImpl loadBalancer,
+                             @Value("${lb.tcp-proxy.port}") int port,
+                             @Value("${lb.tcp-proxy.idle-timeout-millis:300000}") long idleTimeoutMillis) {
+        return new TcpProxy(new InetSocketAddress(port), loadBalancer, TcpProxy.Config.builder()
+                .idleTimeoutMillis(idleTimeoutMillis)
+                .build());
+    }
+
+    @Bean
+    public MeterBinder loadBalancerMeterBinder(List<LoadBalancerImpl> loadBalancers) {
+        return new LoadBalancerMeterBinder(loadBalancers);
+    }
+
+    private Path stateFile(String loadBalancer) {
+        return (stateDirectory != null) ? stateDirectory.resolve(loadBalancer + ".state") : null;
+    }
+}
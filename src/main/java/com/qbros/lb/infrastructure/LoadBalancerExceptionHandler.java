@@ -0,0 +1,52 @@
+package com.qbros.lb.infrastructure;
+
+import com.qbros.lb.core.BackendErrorException;
+import com.qbros.lb.core.InvalidRequestException;
+import com.qbros.lb.core.NoProviderAvailableException;
+import com.qbros.lb.core.RequestRejectedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+/**
+ * Maps the load balancer failures of the controllers to HTTP statuses, so the clients know they should back off.
+ */
+@Slf4j
+@RestControllerAdvice
+public class LoadBalancerExceptionHandler {
+
+    /**
+     * All the providers are saturated.
+     */
+    @ExceptionHandler(RequestRejectedException.class)
+    public ResponseEntity<String> rejected(RequestRejectedException e) {
+        log.debug("Request rejected: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(e.getMessage());
+    }
+
+    /**
+     * Only the invalid requests of the clients, the other illegal arguments are internal errors.
+     */
+    @ExceptionHandler(InvalidRequestException.class)
+    public ResponseEntity<String> badRequest(InvalidRequestException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    /**
+     * The provider answered with a server error.
+     */
+    @ExceptionHandler(BackendErrorException.class)
+    public ResponseEntity<String> backendError(BackendErrorException e) {
+        return ResponseEntity.status(HttpStatus.BAD_GATEWAY).body(e.getMessage());
+    }
+
+    @ExceptionHandler(NoProviderAvailableException.class)
+    public ResponseEntity<String> noProvider(NoProviderAvailableException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+    }
+}
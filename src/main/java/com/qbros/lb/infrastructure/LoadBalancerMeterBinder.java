@@ -0,0 +1,81 @@
+package com.qbros.lb.infrastructure;
+
+import com.qbros.lb.core.LatencyHistogram;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.LoadBalancerMetrics;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Exposes the counters and response time percentiles of every load balancer through Micrometer
+ * ({@code /actuator/metrics/lb.*}). The meters only read the counters of {@link LoadBalancerMetrics}, nothing is
+ * recorded twice. The per-provider metrics are exposed by {@link LoadBalancerMetricsController}.
+ */
+public class LoadBalancerMeterBinder implements MeterBinder {
+
+    private static final double[] PERCENTILES = {50, 95, 99, 99.9};
+
+    private final List<LoadBalancerImpl> loadBalancers;
+
+    public LoadBalancerMeterBinder(List<LoadBalancerImpl> loadBalancers) {
+        this.loadBalancers = loadBalancers;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (LoadBalancerImpl loadBalancer : loadBalancers) {
+            LoadBalancerMetrics metrics = loadBalancer.getMetrics();
+            String name = loadBalancer.getName();
+
+            counter(registry, "lb.requests", "requests dispatched to the providers", name, metrics,
+                    LoadBalancerMetrics::getRequests);
+            counter(registry, "lb.failures", "failed requests", name, metrics, LoadBalancerMetrics::getFailures);
+            counter(registry, "lb.retries", "picked providers which could not serve", name, metrics,
+                    LoadBalancerMetrics::getRetries);
+            counter(registry, "lb.unserved", "requests for which no provider was found", name, metrics,
+                    LoadBalancerMetrics::getUnserved);
+            counter(registry, "lb.rejections", "requests rejected because all the providers were saturated", name,
+                    metrics, LoadBalancerMetrics::getRejections);
+            counter(registry, "lb.hedges", "hedged requests sent to a second provider", name, metrics,
+                    LoadBalancerMetrics::getHedges);
+            counter(registry, "lb.cache.hits", "keyed requests served by the response cache or a call in flight", name,
+                    metrics, LoadBalancerMetrics::getCacheHits);
+            counter(registry, "lb.cache.misses", "keyed requests sent to a provider by the response cache", name,
+                    metrics, LoadBalancerMetrics::getCacheMisses);
+            counter(registry, "lb.ejections", "providers ejected by their circuit breaker", name, metrics,
+                    LoadBalancerMetrics::getEjections);
+
+            Gauge.builder("lb.providers", loadBalancer, it -> it.getProviders().size())
+                    .description("providers used for the selection")
+                    .tag("balancer", name)
+                    .register(registry);
+            Gauge.builder("lb.providers.unavailable", loadBalancer, it -> it.getUnavailableProviders().size())
+                    .description("providers ejected by their circuit breaker, found dead or down in the previous run")
+                    .tag("balancer", name)
+                    .register(registry);
+
+            LatencyHistogram responseTimes = metrics.getResponseTimes();
+            for (double percentile : PERCENTILES) {
+                Gauge.builder("lb.response.time", responseTimes, it -> it.getValueAtPercentile(percentile) / 1e9)
+                        .description("response time percentiles of the providers")
+                        .baseUnit("seconds")
+                        .tag("balancer", name)
+                        .tag("percentile", String.valueOf(percentile))
+                        .register(registry);
+            }
+        }
+    }
+
+    private void counter(MeterRegistry registry, String meter, String description, String balancer,
+                         LoadBalancerMetrics metrics, ToDoubleFunction<LoadBalancerMetrics> count) {
+        FunctionCounter.builder(meter, metrics, count)
+                .description(description)
+                .tag("balancer", balancer)
+                .register(registry);
+    }
+}
@@ -0,0 +1,151 @@
+package com.qbros.lb.infrastructure;
+
+import com.qbros.lb.core.LatencyHistogram;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.LoadBalancerMetrics;
+import com.qbros.lb.core.Provider;
+import com.qbros.lb.core.RequestMetrics;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Per-balancer and per-provider metrics in the Prometheus text format. The providers which are out of the selection
+ * (ejected, dead, down in the previous run) keep their series, {@code lb_provider_up} tells them apart.
+ */
+@RestController
+public class LoadBalancerMetricsController {
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    //the buckets of the exposed histograms, every power of two microseconds
+    private static final int EXPOSED_BUCKET_STEP = 8;
+
+    private final List<LoadBalancerImpl> loadBalancers;
+
+    public LoadBalancerMetricsController(List<LoadBalancerImpl> loadBalancers) {
+        this.loadBalancers = loadBalancers;
+    }
+
+    @GetMapping(value = "lb/metrics", produces = CONTENT_TYPE)
+    public String metrics() {
+        StringBuilder out = new StringBuilder();
+
+        balancerCounter(out, "lb_requests_total", "Requests dispatched to the providers", RequestMetrics::getRequests);
+        balancerCounter(out, "lb_failures_total", "Failed requests", RequestMetrics::getFailures);
+        balancerCounter(out, "lb_retries_total", "Picked providers which could not serve",
+                LoadBalancerMetrics::getRetries);
+        balancerCounter(out, "lb_unserved_total", "Requests for which no provider was found",
+                LoadBalancerMetrics::getUnserved);
+        balancerCounter(out, "lb_rejections_total", "Requests rejected because all the providers were saturated",
+                LoadBalancerMetrics::getRejections);
+        balancerCounter(out, "lb_hedges_total", "Hedged requests sent to a second provider",
+                LoadBalancerMetrics::getHedges);
+        balancerCounter(out, "lb_cache_hits_total", "Keyed requests served by the response cache or a call in flight",
+                LoadBalancerMetrics::getCacheHits);
+        balancerCounter(out, "lb_cache_misses_total", "Keyed requests sent to a provider by the response cache",
+                LoadBalancerMetrics::getCacheMisses);
+        balancerCounter(out, "lb_ejections_total", "Providers ejected by their circuit breaker",
+                RequestMetrics::getEjections);
+        header(out, "lb_response_time_seconds", "Response time of the providers", "histogram");
+        for (LoadBalancerImpl loadBalancer : loadBalancers) {
+            histogram(out, "lb_response_time_seconds", labels(loadBalancer, null),
+                    loadBalancer.getMetrics().getResponseTimes());
+        }
+
+        providerCounter(out, "lb_provider_requests_total", "Requests dispatched to the provider",
+                RequestMetrics::getRequests);
+        providerCounter(out, "lb_provider_failures_total", "Failed requests of the provider",
+                RequestMetrics::getFailures);
+        providerCounter(out, "lb_provider_ejections_total", "Times the provider was ejected by its circuit breaker",
+                RequestMetrics::getEjections);
+        header(out, "lb_provider_up", "1 if the provider is used for the selection, 0 if it is out of it", "gauge");
+        for (LoadBalancerImpl loadBalancer : loadBalancers) {
+            for (Provider provider : loadBalancer.getProviders()) {
+                sample(out, "lb_provider_up", labels(loadBalancer, provider), 1);
+            }
+            for (Provider provider : loadBalancer.getUnavailableProviders()) {
+                sample(out, "lb_provider_up", labels(loadBalancer, provider), 0);
+            }
+        }
+        header(out, "lb_provider_outstanding_requests", "Requests the provider is working on", "gauge");
+        for (LoadBalancerImpl loadBalancer : loadBalancers) {
+            for (Provider provider : providers(loadBalancer)) {
+                sample(out, "lb_provider_outstanding_requests", labels(loadBalancer, provider),
+                        provider.getOutstandingRequests());
+            }
+        }
+        header(out, "lb_provider_response_time_seconds", "Response time of the provider", "histogram");
+        for (LoadBalancerImpl loadBalancer : loadBalancers) {
+            for (Provider provider : providers(loadBalancer)) {
+                histogram(out, "lb_provider_response_time_seconds", labels(loadBalancer, provider),
+                        provider.getMetrics().getResponseTimes());
+            }
+        }
+
+        return out.toString();
+    }
+
+    private void balancerCounter(StringBuilder out, String name, String help,
+                                 ToLongFunction<LoadBalancerMetrics> count) {
+        header(out, name, help, "counter");
+        for (LoadBalancerImpl loadBalancer : loadBalancers) {
+            sample(out, name, labels(loadBalancer, null), count.applyAsLong(loadBalancer.getMetrics()));
+        }
+    }
+
+    private void providerCounter(StringBuilder out, String name, String help, ToLongFunction<RequestMetrics> count) {
+        header(out, name, help, "counter");
+        for (LoadBalancerImpl loadBalancer : loadBalancers) {
+            for (Provider provider : providers(loadBalancer)) {
+                sample(out, name, labels(loadBalancer, provider), count.applyAsLong(provider.getMetrics()));
+            }
+        }
+    }
+
+    /**
+     * The current providers and the ones which are out of the selection, so their series do not vanish while they are
+     * out.
+     */
+    private List<Provider> providers(LoadBalancerImpl loadBalancer) {
+        List<Provider> providers = new ArrayList<>(loadBalancer.getProviders());
+        providers.addAll(loadBalancer.getUnavailableProviders());
+        return providers;
+    }
+
+    private void histogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        long cumulative = 0;
+        for (int bucket = 0; bucket < histogram.getBucketCount(); bucket++) {
+            cumulative += histogram.getCount(bucket);
+            if ((bucket + 1) % EXPOSED_BUCKET_STEP == 0) {
+                double le = histogram.getUpperBoundMicros(bucket) / 1e6;
+                out.append(name).append("_bucket{").append(labels).append(",le=\"").append(le).append("\"} ")
+                        .append(cumulative).append('\n');
+            }
+        }
+        out.append(name).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(cumulative).append('\n');
+        out.append(name).append("_sum{").append(labels).append("} ").append(histogram.getTotalNanos() / 1e9)
+                .append('\n');
+        out.append(name).append("_count{").append(labels).append("} ").append(cumulative).append('\n');
+    }
+
+    private void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name).append('{').append(labels).append("} ").append(value).append('\n');
+    }
+
+    private String labels(LoadBalancerImpl loadBalancer, Provider provider) {
+        String labels = "balancer=\"" + escape(loadBalancer.getName()) + "\"";
+        return (provider == null) ? labels : labels + ",provider=\"" + escape(provider.getId()) + "\"";
+    }
+
+    private String escape(String value) {
+        return String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,21 @@
+package com.qbros.lb.infrastructure;
+
+import com.qbros.lb.core.Diff;
+import com.qbros.lb.core.Provider;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Response of the reconcile endpoints: the ids of the providers which were actually added and removed.
+ */
+public record MembershipChange(List<String> added, List<String> removed) {
+
+    static MembershipChange of(Diff<Provider> diff) {
+        return new MembershipChange(ids(diff.getAdded()), ids(diff.getRemoved()));
+    }
+
+    private static List<String> ids(List<Provider> providers) {
+        return providers.stream().map(Provider::getId).collect(Collectors.toList());
+    }
+}
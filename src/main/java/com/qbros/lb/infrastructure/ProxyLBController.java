@@ -0,0 +1,270 @@
+package com.qbros.lb.infrastructure;
+
+import com.qbros.lb.core.BackendErrorException;
+import com.qbros.lb.core.HttpProvider;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.NoProviderAvailableException;
+import com.qbros.lb.core.RequestRejectedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * This controller puts the load balancer in front of real HTTP backends: every request sent to
+ * {@code lb/proxy/forward/**} is forwarded (method, path, query, headers and body) to one of the registered
+ * {@link HttpProvider}s, and the response is streamed back.
+ */
+@Slf4j
+@RestController
+@RequestMapping("lb/proxy")
+public class ProxyLBController {
+
+    private static final String FORWARD_PATH = "/lb/proxy/forward";
+    private static final String FORWARDING_ATTRIBUTE = ProxyLBController.class.getName() + ".forwarding";
+
+    private final LoadBalancerImpl loadBalancer;
+    private final HttpBackends backends;
+
+    public ProxyLBController(@Qualifier("proxyLoadBalancer") LoadBalancerImpl loadBalancer) {
+        this.loadBalancer = loadBalancer;
+        this.backends = new HttpBackends(loadBalancer);
+    }
+
+    @RequestMapping("forward/**")
+    public DeferredResult<ResponseEntity<StreamingResponseBody>> forward(HttpServletRequest request) {
+
+        String path = request.getRequestURI().substring(request.getContextPath().length() + FORWARD_PATH.length());
+        String pathAndQuery = (path.isEmpty() ? "/" : path)
+                + ((request.getQueryString() != null) ? "?" + request.getQueryString() : "");
+
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        for (String name : Collections.list(request.getHeaderNames())) {
+            headers.put(name, Collections.list(request.getHeaders(name)));
+        }
+
+        DeferredResult<ResponseEntity<StreamingResponseBody>> response = new DeferredResult<>();
+        Forwarding forwarding = new Forwarding();
+        response.onTimeout(() -> {
+            forwarding.abort();
+            response.setResult(ResponseEntity.status(HttpStatus.GATEWAY_TIMEOUT).build());
+        });
+        response.onError(error -> forwarding.abort());
+        request.setAttribute(FORWARDING_ATTRIBUTE, forwarding);
+
+        //the provider stays loaded until the response body is streamed back to the client, or is never going to be
+        loadBalancer.executeAsync(null, provider -> forwarding.start(((HttpProvider) provider)
+                        .forward(request.getMethod(), pathAndQuery, headers, requestBody(request)),
+                        backendResponse -> response.setResult(toResponseEntity(backendResponse, forwarding))))
+                .whenComplete((ignored, error) -> {
+                    Throwable cause = (error instanceof CompletionException) ? error.getCause() : error;
+                    if (cause == null || cause instanceof BackendErrorException
+                            || cause instanceof CancellationException) {
+                        //the response is already streamed back, or the client request is over
+                        return;
+                    }
+                    if (cause instanceof RequestRejectedException) {
+                        //all the backends are saturated
+                        response.setResult(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                                .header(HttpHeaders.RETRY_AFTER, "1").build());
+                    } else if (cause instanceof NoProviderAvailableException) {
+                        //no alive provider was found
+                        response.setResult(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+                    } else {
+                        log.warn("Forwarding [{} {}] failed", request.getMethod(), pathAndQuery, error);
+                        response.setResult(ResponseEntity.status(HttpStatus.BAD_GATEWAY).build());
+                    }
+                });
+
+        return response;
+    }
+
+    @PostMapping("backends/{id}")
+    public void register(@PathVariable String id, @RequestParam String host, @RequestParam int port) {
+        backends.register(id, host, port);
+    }
+
+    /**
+     * The backends become the given ones in a single change, see {@link HttpBackends#reconcile}.
+     */
+    @PutMapping("backends")
+    public MembershipChange reconcile(@RequestBody List<HttpBackends.Backend> desired) {
+        return backends.reconcile(desired);
+    }
+
+    @PostMapping("exclude/{id}")
+    public void excludeById(@PathVariable String id) {
+        backends.exclude(id);
+    }
+
+    @PostMapping("include/{id}")
+    public void includeById(@PathVariable String id) {
+        backends.include(id);
+    }
+
+    /**
+     * Called once the client request is over (see {@link ProxyWebConfiguration}): a body that was not streamed back
+     * by then never will be, e.g. the streaming timed out before it started.
+     */
+    static void requestCompleted(HttpServletRequest request) {
+        Forwarding forwarding = (Forwarding) request.getAttribute(FORWARDING_ATTRIBUTE);
+        if (forwarding != null) {
+            forwarding.abort();
+        }
+    }
+
+    /**
+     * The body is read from the servlet request while it is sent to the backend.
+     */
+    private HttpRequest.BodyPublisher requestBody(HttpServletRequest request) {
+
+        long contentLength = request.getContentLengthLong();
+        if (contentLength <= 0 && request.getHeader(HttpHeaders.TRANSFER_ENCODING) == null) {
+            return HttpRequest.BodyPublishers.noBody();
+        }
+
+        HttpRequest.BodyPublisher stream = HttpRequest.BodyPublishers.ofInputStream(() -> {
+            try {
+                return request.getInputStream();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return (contentLength > 0) ? HttpRequest.BodyPublishers.fromPublisher(stream, contentLength) : stream;
+    }
+
+    private ResponseEntity<StreamingResponseBody> toResponseEntity(HttpResponse<InputStream> backendResponse,
+                                                                   Forwarding forwarding) {
+        HttpHeaders headers = new HttpHeaders();
+        backendResponse.headers().map().forEach((name, values) -> {
+            if (!HttpProvider.NOT_FORWARDED_HEADERS.contains(name.toLowerCase(Locale.ROOT))) {
+                headers.addAll(name, values);
+            }
+        });
+
+        StreamingResponseBody body = out -> forwarding.streamTo(out, backendResponse);
+        return ResponseEntity.status(backendResponse.statusCode()).headers(headers).body(body);
+    }
+
+    /**
+     * A request forwarded to a backend, the backend is loaded until {@link #streamed} is completed: once the response
+     * body is streamed back, or as soon as the client request is over without it (timeout, error, client gone).
+     */
+    private static final class Forwarding {
+
+        private static final int BUFFER_SIZE = 8192;
+
+        static final int SENT = 0;
+        static final int RECEIVED = 1;
+        static final int STREAMING = 2;
+        static final int DONE = 3;
+
+        private final AtomicInteger state = new AtomicInteger(SENT);
+        private final CompletableFuture<Void> streamed = new CompletableFuture<>();
+        private volatile CompletableFuture<HttpResponse<InputStream>> backendCall;
+        private volatile InputStream body;
+
+        CompletableFuture<Void> start(CompletableFuture<HttpResponse<InputStream>> backendCall,
+                                      Consumer<HttpResponse<InputStream>> onResponse) {
+            this.backendCall = backendCall;
+            if (state.get() == DONE) {
+                //aborted while the backend was picked
+                backendCall.cancel(true);
+            }
+            return backendCall.thenCompose(backendResponse -> {
+                body = backendResponse.body();
+                if (state.compareAndSet(SENT, RECEIVED)) {
+                    onResponse.accept(backendResponse);
+                } else {
+                    closeQuietly(body);
+                    streamed.cancel(false);
+                }
+                return streamed;
+            });
+        }
+
+        void streamTo(OutputStream out, HttpResponse<InputStream> backendResponse) throws IOException {
+            if (!state.compareAndSet(RECEIVED, STREAMING)) {
+                //aborted in the meantime
+                return;
+            }
+            boolean writing = false;
+            try (InputStream in = backendResponse.body()) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                    writing = true;
+                    out.write(buffer, 0, read);
+                    writing = false;
+                }
+                if (backendResponse.statusCode() >= 500) {
+                    //forwarded as is to the client, but a failure for the circuit breaker of the backend
+                    streamed.completeExceptionally(new BackendErrorException("Backend answered with status ["
+                            + backendResponse.statusCode() + "]", backendResponse.statusCode()));
+                } else {
+                    streamed.complete(null);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (writing || state.get() == DONE || Thread.currentThread().isInterrupted()) {
+                    //the client is gone, or its request timed out: it says nothing about the backend
+                    streamed.cancel(false);
+                } else {
+                    streamed.completeExceptionally(e);
+                }
+                throw e;
+            } finally {
+                state.set(DONE);
+            }
+        }
+
+        /**
+         * The client request is over: what is not streamed back yet never will be.
+         */
+        void abort() {
+            int previous = state.getAndSet(DONE);
+            if (previous == DONE) {
+                return;
+            }
+            CompletableFuture<HttpResponse<InputStream>> call = backendCall;
+            if (call != null) {
+                //aborts the exchange if the response head is not received yet
+                call.cancel(true);
+            }
+            //unblocks the streaming if it is stuck on the backend
+            closeQuietly(body);
+            streamed.cancel(false);
+        }
+
+        private static void closeQuietly(InputStream in) {
+            if (in == null) {
+                return;
+            }
+            try {
+                in.close();
+            } catch (IOException e) {
+                log.debug("Error while closing the backend response", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.qbros.lb.infrastructure;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * A forwarded request goes through several async dispatches (waiting for the backend, then streaming its body back),
+ * only the end of the last one tells that the client request is over, whatever happened to it.
+ */
+@Configuration
+public class ProxyWebConfiguration implements WebMvcConfigurer {
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                        Exception ex) {
+                ProxyLBController.requestCompleted(request);
+            }
+        }).addPathPatterns("/lb/proxy/forward/**");
+    }
+}
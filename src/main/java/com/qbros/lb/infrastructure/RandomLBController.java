@@ -2,12 +2,18 @@ package com.qbros.lb.infrastructure;
 
 import com.qbros.lb.core.LoadBalancerImpl;
 import com.qbros.lb.core.Provider;
-import com.qbros.lb.core.RandomSelection;
+import com.qbros.lb.core.ProviderDiscovery;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
 
 /**
  * This controller is added to test the random Load balancer in action.
@@ -16,21 +22,23 @@ import java.util.Map;
 @RequestMapping("lb/random")
 public class RandomLBController {
 
-    private final LoadBalancerImpl loadBalancer = LoadBalancerImpl.builder()
-            .name("random LB")
-            .selectionStrategy(new RandomSelection())
-            .maxRetryCount(3)
-            .build();
+    private final LoadBalancerImpl loadBalancer;
+    private final Map<String, Provider> providersMap = new ConcurrentHashMap<>();
+    //null if the providers are hardcoded
+    private final ProviderDiscovery discovery;
 
-    private final Map<String, Provider> providersMap = new HashMap<>();
-
-    public RandomLBController() {
-        List<Provider> providerList = List.of(new Provider("P1"), new Provider("P2"), new Provider("P3"),
-                new Provider("P4"), new Provider("P5"), new Provider("P6"), new Provider("P7"),
-                new Provider("P8"), new Provider("P9"), new Provider("P10"));
-
-        providerList.forEach(provider -> providersMap.put(provider.getId(), provider));
-        loadBalancer.registerAll(providerList);
+    public RandomLBController(@Qualifier("randomLoadBalancer") LoadBalancerImpl loadBalancer,
+                              @Qualifier("randomDiscovery") Optional<ProviderDiscovery> discovery) {
+        this.loadBalancer = loadBalancer;
+        this.discovery = discovery.orElse(null);
+        //the discovered providers are already registered
+        if (this.discovery == null) {
+            List<Provider> providerList = List.of(new Provider("P1"), new Provider("P2"), new Provider("P3"),
+                    new Provider("P4"), new Provider("P5"), new Provider("P6"), new Provider("P7"),
+                    new Provider("P8"), new Provider("P9"), new Provider("P10"));
+            providerList.forEach(provider -> providersMap.put(provider.getId(), provider));
+            loadBalancer.registerAll(providerList);
+        }
     }
 
     @GetMapping
@@ -38,13 +46,57 @@ public class RandomLBController {
         return loadBalancer.get();
     }
 
+    /**
+     * The servlet thread is released while the provider is working.
+     */
+    @GetMapping("async")
+    public Mono<String> provideAsync() {
+        return Mono.fromFuture(loadBalancer.getAsync());
+    }
+
+    /**
+     * Fan-out: {@code count} providers are called concurrently.
+     */
+    @GetMapping("batch")
+    public Mono<List<String>> provideBatch(@RequestParam(defaultValue = "3") int count) {
+        return Mono.fromFuture(loadBalancer.getBatchAsync(count));
+    }
+
+    /**
+     * The providers become the given ones in a single change, e.g. {@code ["P1", "P11"]}. Unknown ids are
+     * created, the known ones keep their state. Disabled when the providers are discovered, the discovery would
+     * overwrite them with the next change of its file.
+     */
+    @PutMapping("providers")
+    public MembershipChange reconcile(@RequestBody List<String> ids) {
+        if (discovery != null) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "The providers are discovered, change their file");
+        }
+        List<Provider> desired = ids.stream()
+                .map(id -> providersMap.computeIfAbsent(id.toUpperCase(), Provider::new))
+                .collect(Collectors.toList());
+        return MembershipChange.of(loadBalancer.reconcile(desired));
+    }
+
     @PostMapping("exclude/{id}")
     public void excludeById(@PathVariable String id) {
-        loadBalancer.exclude(providersMap.get(id.toUpperCase()));
+        loadBalancer.exclude(providerById(id));
     }
 
     @PostMapping("include/{id}")
     public void includeById(@PathVariable String id) {
-        loadBalancer.include(providersMap.get(id.toUpperCase()));
+        loadBalancer.include(providerById(id));
+    }
+
+    /**
+     * @throws ResponseStatusException 404 if the provider is unknown
+     */
+    private Provider providerById(String id) {
+        Provider discovered = (discovery != null) ? discovery.getProvider(id) : null;
+        Provider provider = (discovered != null) ? discovered : providersMap.get(id.toUpperCase());
+        if (provider == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown provider: " + id);
+        }
+        return provider;
     }
 }
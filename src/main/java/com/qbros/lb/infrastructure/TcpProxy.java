@@ -0,0 +1,565 @@
+package com.qbros.lb.infrastructure;
+
+import com.qbros.lb.core.HashedWheelTimer;
+import com.qbros.lb.core.HttpProvider;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.Provider;
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Layer 4 balancing: every TCP connection accepted on the listening port is piped, byte for byte in both
+ * directions, to the address of an {@link HttpProvider} picked by the load balancer. Nothing is parsed, so any
+ * protocol (databases, TLS, gRPC, ...) goes through.
+ * <p>
+ * A connection is a request of the load balancer ({@link LoadBalancerImpl#executeAsync}): it holds a permit of its
+ * backend, counts as outstanding for the selection, and a backend which can not be connected to counts as a failure
+ * for its circuit breaker; the connection is then retried on another pick, up to {@code connectAttempts} times.
+ * <p>
+ * A single thread runs a {@link Selector} over all the connections. The bytes go through pooled direct buffers, so
+ * they are never copied onto the heap, and a side which can not keep up stops the other one from being read. When a
+ * side closes its output, the output towards the other side is shut down too (half-close), the connection is closed
+ * once both directions are over, or when no byte went through for {@code idleTimeoutMillis}.
+ * <p>
+ * A failing connection is closed without affecting the others. When no connection can be accepted (e.g. too many
+ * open files), accepting is paused for {@link #ACCEPT_RETRY_MILLIS}.
+ */
+@Slf4j
+public class TcpProxy implements AutoCloseable {
+
+    static final long ACCEPT_RETRY_MILLIS = 100;
+    //host names are resolved there, a DNS lookup must not block the event loop
+    private static final ExecutorService RESOLVER = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "lb-tcp-proxy-resolver");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final InetSocketAddress address;
+    private final LoadBalancerImpl loadBalancer;
+    private final Config config;
+    private final HashedWheelTimer timer = HashedWheelTimer.shared();
+    //work handed over to the event loop by the other threads
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    //only used by the event loop thread
+    private final BufferPool buffers;
+    private final Set<Tunnel> tunnels = new HashSet<>();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private SelectionKey acceptKey;
+    private Thread eventLoop;
+    private volatile boolean closed;
+
+    /**
+     * @param address      where to listen, port 0 picks a free one
+     * @param loadBalancer picks the backends, its providers must be {@link HttpProvider}s
+     */
+    public TcpProxy(InetSocketAddress address, LoadBalancerImpl loadBalancer, Config config) {
+        if (config.bufferSize <= 0 || config.idleTimeoutMillis <= 0 || config.connectTimeoutMillis <= 0
+                || config.connectAttempts <= 0 || config.maxPooledBuffers < 0) {
+            throw new IllegalArgumentException("Invalid TCP proxy configuration: " + config);
+        }
+        this.address = address;
+        this.loadBalancer = loadBalancer;
+        this.config = config;
+        this.buffers = new BufferPool(config.bufferSize, config.maxPooledBuffers);
+    }
+
+    /**
+     * @throws UncheckedIOException if the address can not be bound
+     */
+    public void start() {
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(address, 1024);
+            serverChannel.configureBlocking(false);
+            acceptKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException("Can not listen on " + address, e);
+        }
+
+        eventLoop = new Thread(this::run, "lb-tcp-proxy");
+        eventLoop.setDaemon(true);
+        eventLoop.start();
+        log.info("TCP proxy listening on {} for [{}]", getAddress(), loadBalancer.getName());
+    }
+
+    /**
+     * @return the bound address, with the actual port
+     */
+    public InetSocketAddress getAddress() {
+        try {
+            return (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return number of client connections accepted and not closed yet
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * Closes the listener and all the connections.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (eventLoop == null) {
+            closeQuietly();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                selector.select();
+                for (Runnable task = tasks.poll(); task != null; task = tasks.poll()) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        log.warn("TCP proxy task failed", e);
+                    }
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Tunnel tunnel = (Tunnel) key.attachment();
+                    try {
+                        tunnel.onReady(key);
+                    } catch (RuntimeException e) {
+                        log.warn("Connection of {} failed, closed", remoteAddressOf(tunnel.client), e);
+                        tunnel.close();
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!closed) {
+                log.error("TCP proxy stopped", e);
+            }
+        } finally {
+            new ArrayList<>(tunnels).forEach(Tunnel::close);
+            closeQuietly();
+        }
+    }
+
+    private void accept() {
+        for (; ; ) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                //the pending connections stay in the backlog, the selector would report them again right away
+                log.warn("Can not accept connections, retrying in {} ms", ACCEPT_RETRY_MILLIS, e);
+                acceptKey.interestOps(0);
+                timer.schedule(() -> execute(() -> acceptKey.interestOps(SelectionKey.OP_ACCEPT)),
+                        ACCEPT_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            SelectionKey clientKey;
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                clientKey = channel.register(selector, SelectionKey.OP_READ);
+            } catch (IOException e) {
+                log.debug("Can not set the connection of {} up", remoteAddressOf(channel), e);
+                closeQuietly(channel);
+                continue;
+            }
+            Tunnel tunnel = new Tunnel(channel);
+            tunnel.clientKey = clientKey;
+            clientKey.attach(tunnel);
+            tunnels.add(tunnel);
+            openConnections.incrementAndGet();
+            tunnel.scheduleIdleCheck(config.idleTimeoutMillis);
+            tunnel.dispatch();
+        }
+    }
+
+    /**
+     * Runs the task on the event loop.
+     */
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void closeQuietly() {
+        try {
+            if (selector != null) {
+                selector.close();
+            }
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            log.debug("Error while closing the TCP proxy", e);
+        }
+    }
+
+    /**
+     * A client connection and its backend connection, only used by the event loop thread.
+     */
+    private final class Tunnel {
+
+        private final SocketChannel client;
+        private SelectionKey clientKey;
+        //client to backend, the client can send before the backend is connected
+        private final Pipe upstream;
+        //backend to client
+        private final Pipe downstream;
+        //null until a backend is picked
+        private SocketChannel backend;
+        private SelectionKey backendKey;
+        //completed when the connection to the picked backend is over, the backend is loaded until then
+        private CompletableFuture<Void> lifetime;
+        private boolean connected;
+        private boolean connectFailed;
+        private int attempts;
+        private long lastActivityNanos = System.nanoTime();
+        private HashedWheelTimer.Timeout idleCheck;
+        private boolean closed;
+
+        Tunnel(SocketChannel client) {
+            this.client = client;
+            this.upstream = new Pipe(buffers.acquire());
+            this.downstream = new Pipe(buffers.acquire());
+        }
+
+        /**
+         * Asks the load balancer for a backend.
+         */
+        void dispatch() {
+            attempts++;
+            connectFailed = false;
+            loadBalancer.executeAsync(null, this::open)
+                    .whenComplete((ignored, failure) -> execute(() -> {
+                        if (connected || closed) {
+                            return;
+                        }
+                        if (connectFailed && attempts < config.connectAttempts) {
+                            dispatch();
+                            return;
+                        }
+                        //no backend available, rejected, or none could be connected to
+                        log.debug("No backend for the connection of {}", remoteAddressOf(client), failure);
+                        close();
+                    }));
+        }
+
+        /**
+         * Called by the load balancer with the picked backend, on any thread. The address of the backend is resolved
+         * on the {@link #RESOLVER}, then connected to on the event loop.
+         */
+        private CompletableFuture<Void> open(Provider provider) {
+            CompletableFuture<Void> attempt = new CompletableFuture<>();
+            InetSocketAddress address = ((HttpProvider) provider).getAddress();
+            CompletableFuture.supplyAsync(() -> new InetSocketAddress(address.getHostString(), address.getPort()),
+                            RESOLVER)
+                    .whenComplete((remote, failure) -> execute(() -> connect(address, remote, attempt)));
+            return attempt;
+        }
+
+        /**
+         * @param remote resolved address of the backend, {@code null} if the resolution failed
+         */
+        private void connect(InetSocketAddress address, InetSocketAddress remote, CompletableFuture<Void> attempt) {
+            if (closed) {
+                //the client left while the backend was picked, it says nothing about the backend
+                attempt.cancel(false);
+                return;
+            }
+            lifetime = attempt;
+            if (remote == null || remote.isUnresolved()) {
+                connectFailed(new ConnectException("Can not resolve " + address));
+                return;
+            }
+            try {
+                backend = SocketChannel.open();
+                backend.configureBlocking(false);
+                backend.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                if (backend.connect(remote)) {
+                    backendKey = backend.register(selector, 0, this);
+                    connected();
+                } else {
+                    backendKey = backend.register(selector, SelectionKey.OP_CONNECT, this);
+                    SocketChannel connecting = backend;
+                    timer.schedule(() -> execute(() -> {
+                        if (!closed && !connected && backend == connecting) {
+                            connectFailed(new ConnectException("Connect timed out: " + remote));
+                        }
+                    }), config.connectTimeoutMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (IOException | RuntimeException e) {
+                connectFailed(e);
+            }
+        }
+
+        private void connected() {
+            connected = true;
+            touch();
+            log.debug("Connection of {} piped to {}", remoteAddressOf(client), remoteAddressOf(backend));
+            //what the client already sent
+            onReady(backendKey);
+        }
+
+        private void connectFailed(Exception e) {
+            log.debug("Can not connect to the backend", e);
+            closeQuietly(backend);
+            backend = null;
+            backendKey = null;
+            connectFailed = true;
+            CompletableFuture<Void> failed = lifetime;
+            lifetime = null;
+            failed.completeExceptionally(e);
+        }
+
+        void onReady(SelectionKey key) {
+            try {
+                if (key == backendKey && !connected) {
+                    if (!key.isValid() || !key.isConnectable() || !backend.finishConnect()) {
+                        return;
+                    }
+                    connected();
+                    return;
+                }
+                if (key.isValid() && key.isReadable()) {
+                    if (key == clientKey) {
+                        read(client, upstream);
+                    } else {
+                        read(backend, downstream);
+                    }
+                }
+                if (connected) {
+                    write(upstream, backend);
+                }
+                write(downstream, client);
+                if (upstream.shutdown && downstream.shutdown) {
+                    close();
+                    return;
+                }
+                updateInterest();
+            } catch (IOException e) {
+                if (key == backendKey && !connected) {
+                    connectFailed(e);
+                    return;
+                }
+                log.debug("Connection of {} reset", remoteAddressOf(client), e);
+                close();
+            }
+        }
+
+        private void read(SocketChannel source, Pipe pipe) throws IOException {
+            if (!pipe.wantsRead()) {
+                return;
+            }
+            int read = source.read(pipe.buffer);
+            if (read < 0) {
+                pipe.eof = true;
+            } else if (read > 0) {
+                touch();
+            }
+        }
+
+        private void write(Pipe pipe, SocketChannel sink) throws IOException {
+            if (pipe.buffer.position() > 0) {
+                pipe.buffer.flip();
+                if (sink.write(pipe.buffer) > 0) {
+                    touch();
+                }
+                pipe.buffer.compact();
+            }
+            if (pipe.eof && pipe.buffer.position() == 0 && !pipe.shutdown) {
+                //half-close: the other side sees the end of the stream, and can still answer
+                sink.shutdownOutput();
+                pipe.shutdown = true;
+            }
+        }
+
+        private void updateInterest() {
+            clientKey.interestOps((upstream.wantsRead() ? SelectionKey.OP_READ : 0)
+                    | (downstream.hasPending() ? SelectionKey.OP_WRITE : 0));
+            if (connected) {
+                backendKey.interestOps((downstream.wantsRead() ? SelectionKey.OP_READ : 0)
+                        | (upstream.hasPending() ? SelectionKey.OP_WRITE : 0));
+            }
+        }
+
+        private void touch() {
+            lastActivityNanos = System.nanoTime();
+        }
+
+        void scheduleIdleCheck(long delayMillis) {
+            idleCheck = timer.schedule(() -> execute(this::checkIdle), delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        private void checkIdle() {
+            if (closed) {
+                return;
+            }
+            long idleMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastActivityNanos);
+            if (idleMillis >= config.idleTimeoutMillis) {
+                log.debug("Connection of {} idle for {} ms, closed", remoteAddressOf(client), idleMillis);
+                close();
+            } else {
+                scheduleIdleCheck(config.idleTimeoutMillis - idleMillis);
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (idleCheck != null) {
+                idleCheck.cancel();
+            }
+            closeQuietly(client);
+            closeQuietly(backend);
+            buffers.release(upstream.buffer);
+            buffers.release(downstream.buffer);
+            tunnels.remove(this);
+            openConnections.decrementAndGet();
+            if (lifetime != null) {
+                if (connected) {
+                    lifetime.complete(null);
+                } else {
+                    //still connecting
+                    lifetime.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * One direction of a tunnel.
+     */
+    private static final class Pipe {
+
+        //bytes read from the source and not written to the sink yet, in write mode
+        private final ByteBuffer buffer;
+        //the source closed its output
+        private boolean eof;
+        //the output towards the sink is shut down, this direction is over
+        private boolean shutdown;
+
+        Pipe(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        boolean wantsRead() {
+            return !eof && buffer.hasRemaining();
+        }
+
+        boolean hasPending() {
+            return buffer.position() > 0;
+        }
+    }
+
+    /**
+     * Direct buffers are expensive to allocate and only freed by the GC, the ones of the closed connections are
+     * reused. Only used by the event loop thread.
+     */
+    private static final class BufferPool {
+
+        private final int bufferSize;
+        private final int maxPooled;
+        private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+
+        BufferPool(int bufferSize, int maxPooled) {
+            this.bufferSize = bufferSize;
+            this.maxPooled = maxPooled;
+        }
+
+        ByteBuffer acquire() {
+            ByteBuffer buffer = free.poll();
+            return (buffer != null) ? buffer : ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        void release(ByteBuffer buffer) {
+            if (free.size() < maxPooled) {
+                free.push(buffer.clear());
+            }
+        }
+    }
+
+    private static Object remoteAddressOf(SocketChannel channel) {
+        try {
+            return channel.getRemoteAddress();
+        } catch (IOException e) {
+            return "?";
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Error while closing {}", channel, e);
+        }
+    }
+
+    @Value
+    @Builder
+    public static class Config {
+        //size of the buffer of each direction of a connection
+        @Builder.Default
+        int bufferSize = 16 * 1024;
+        //a connection without any byte going through for that long is closed
+        @Builder.Default
+        long idleTimeoutMillis = 300_000;
+        @Builder.Default
+        long connectTimeoutMillis = 5_000;
+        //backends tried for a connection, including the first one
+        @Builder.Default
+        int connectAttempts = 3;
+        //direct buffers kept for the next connections
+        @Builder.Default
+        int maxPooledBuffers = 1024;
+    }
+}
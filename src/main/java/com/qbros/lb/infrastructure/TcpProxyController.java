@@ -0,0 +1,44 @@
+package com.qbros.lb.infrastructure;
+
+import com.qbros.lb.core.LoadBalancerImpl;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * The backends of the {@link TcpProxy}, they have their own load balancer: the long-lived connections must neither
+ * hold the permits of the HTTP proxy nor be measured as its response times.
+ */
+@RestController
+@RequestMapping("lb/tcp")
+@ConditionalOnProperty("lb.tcp-proxy.port")
+public class TcpProxyController {
+
+    private final HttpBackends backends;
+
+    public TcpProxyController(@Qualifier("tcpProxyLoadBalancer") LoadBalancerImpl loadBalancer) {
+        this.backends = new HttpBackends(loadBalancer);
+    }
+
+    @PostMapping("backends/{id}")
+    public void register(@PathVariable String id, @RequestParam String host, @RequestParam int port) {
+        backends.register(id, host, port);
+    }
+
+    @PutMapping("backends")
+    public MembershipChange reconcile(@RequestBody List<HttpBackends.Backend> desired) {
+        return backends.reconcile(desired);
+    }
+
+    @PostMapping("exclude/{id}")
+    public void excludeById(@PathVariable String id) {
+        backends.exclude(id);
+    }
+
+    @PostMapping("include/{id}")
+    public void includeById(@PathVariable String id) {
+        backends.include(id);
+    }
+}
@@ -0,0 +1,22 @@
+package com.qbros.lb.infrastructure;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executors;
+
+/**
+ * With {@code lb.execution-mode=VIRTUAL}, Tomcat handles every request on its own virtual thread, so the blocking
+ * {@code get()} of the controllers only parks a virtual thread instead of holding one of the worker threads.
+ */
+@Configuration
+@ConditionalOnProperty(name = "lb.execution-mode", havingValue = "VIRTUAL")
+public class VirtualThreadConfiguration {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+}
@@ -0,0 +1,161 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.NoProviderAvailableException;
+import com.qbros.lb.core.Provider;
+import com.qbros.lb.core.RequestRejectedException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AdmissionControlTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void permitIsHeldUntilTheRequestIsCompleted() throws Exception {
+
+        Provider provider = blockingProvider("P1", 1);
+        LoadBalancerImpl loadBalancer = loadBalancer(10, 5000);
+        loadBalancer.include(provider);
+
+        CompletableFuture<String> first = loadBalancer.getAsync();
+        CompletableFuture<String> second = loadBalancer.getAsync();
+
+        assertThat(provider.getConcurrentCapacity()).isZero();
+        assertThat(loadBalancer.getAdmissionControl().getQueueLength()).isEqualTo(1);
+        assertThat(second).isNotDone();
+
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).endsWith("P1");
+        assertThat(second.get(5, TimeUnit.SECONDS)).endsWith("P1");
+        assertThat(provider.getConcurrentCapacity()).isEqualTo(1);
+        assertThat(loadBalancer.getAdmissionControl().getAvailablePermits()).isEqualTo(1);
+    }
+
+    @Test
+    void fullQueueIsRejectedRightAway() {
+
+        LoadBalancerImpl loadBalancer = loadBalancer(1, 5000);
+        loadBalancer.include(blockingProvider("P1", 1));
+
+        loadBalancer.getAsync();
+        CompletableFuture<String> queued = loadBalancer.getAsync();
+        CompletableFuture<String> rejected = loadBalancer.getAsync();
+
+        assertThat(queued).isNotDone();
+        assertThat(rejected).isCompletedExceptionally();
+        assertThatThrownBy(rejected::get)
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(RequestRejectedException.class);
+        assertThat(loadBalancer.getMetrics().getRejections()).isEqualTo(1);
+    }
+
+    @Test
+    void requestIsRejectedAfterTheMaxWait() {
+
+        LoadBalancerImpl loadBalancer = loadBalancer(10, 100);
+        loadBalancer.include(blockingProvider("P1", 1));
+
+        loadBalancer.getAsync();
+        long start = System.nanoTime();
+
+        assertThatThrownBy(loadBalancer::get).isInstanceOf(RequestRejectedException.class);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(100);
+        assertThat(loadBalancer.getAdmissionControl().getQueueLength()).isZero();
+    }
+
+    @Test
+    void saturatedProviderIsSkipped() throws Exception {
+
+        Provider busy = blockingProvider("busy", 1);
+        LoadBalancerImpl loadBalancer = loadBalancer(10, 1000);
+        loadBalancer.include(busy);
+        CompletableFuture<String> inFlight = loadBalancer.getAsync();
+        loadBalancer.include(new Provider("idle", 1));
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(loadBalancer.get()).endsWith("IDLE");
+        }
+
+        release.countDown();
+        inFlight.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void permitsFollowTheProviders() {
+
+        Provider p1 = new Provider("P1", 5);
+        Provider p2 = new Provider("P2", 3);
+        LoadBalancerImpl loadBalancer = loadBalancer(10, 1000);
+
+        loadBalancer.registerAll(List.of(p1, p2));
+        assertThat(loadBalancer.getAdmissionControl().getAvailablePermits()).isEqualTo(8);
+
+        loadBalancer.exclude(p1);
+        assertThat(loadBalancer.getAdmissionControl().getAvailablePermits()).isEqualTo(3);
+
+        loadBalancer.include(p1);
+        assertThat(loadBalancer.getAdmissionControl().getAvailablePermits()).isEqualTo(8);
+    }
+
+    @Test
+    void admittedRequest_failsWhenNoProviderCanTakeIt() throws Exception {
+
+        Provider dead = new Provider("P1", 5);
+        LoadBalancerImpl loadBalancer = loadBalancer(10, 1000);
+        loadBalancer.include(dead);
+        dead.setAlive(false);
+
+        assertThatThrownBy(loadBalancer::get).isInstanceOf(NoProviderAvailableException.class);
+        assertThatThrownBy(() -> loadBalancer.getAsync().get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(NoProviderAvailableException.class);
+
+        //it leaves without waiting for a heart beat, with its permits
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!loadBalancer.getProviders().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(loadBalancer.getProviders()).isEmpty();
+        assertThat(loadBalancer.getAdmissionControl().getAvailablePermits()).isZero();
+    }
+
+    private LoadBalancerImpl loadBalancer(int queueSize, int maxWaitMillis) {
+        return LoadBalancerImpl.builder()
+                .dispatchExecutor(executor)
+                .admissionQueueSize(queueSize)
+                .admissionMaxWaitMillis(maxWaitMillis)
+                .build();
+    }
+
+    private Provider blockingProvider(String id, int concurrentCapacity) {
+        return new Provider(id, concurrentCapacity) {
+            @Override
+            public String provide() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.provide();
+            }
+        };
+    }
+}
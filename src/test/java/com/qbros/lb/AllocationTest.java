@@ -0,0 +1,101 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.CircuitBreaker;
+import com.qbros.lb.core.ConsistentHashRingSelection;
+import com.qbros.lb.core.LeastOutstandingSelection;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.MaglevHashSelection;
+import com.qbros.lb.core.PeakEwmaSelection;
+import com.qbros.lb.core.Provider;
+import com.qbros.lb.core.RandomSelection;
+import com.qbros.lb.core.RoundRobinSelection;
+import com.qbros.lb.core.SelectionStrategy;
+import com.qbros.lb.core.SmoothWeightedRoundRobinSelection;
+import com.qbros.lb.core.WeightedRandomSelection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The steady state of {@link LoadBalancerImpl#get()} must not allocate: the allocated bytes of the calling thread are
+ * measured around many calls.
+ */
+class AllocationTest {
+
+    private static final int WARMUP_CALLS = 50_000;
+    private static final int MEASURED_CALLS = 100_000;
+
+    private static com.sun.management.ThreadMXBean threadMXBean;
+    private LoadBalancerImpl loadBalancer;
+
+    @BeforeAll
+    static void setUp() {
+        Assumptions.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (loadBalancer != null) {
+            loadBalancer.close();
+        }
+    }
+
+    static Stream<Arguments> strategies() {
+        return Stream.of(
+                Arguments.of(new RandomSelection(), false),
+                Arguments.of(new RoundRobinSelection(), false),
+                Arguments.of(new LeastOutstandingSelection(), false),
+                Arguments.of(new PeakEwmaSelection(), false),
+                Arguments.of(new SmoothWeightedRoundRobinSelection(), false),
+                Arguments.of(new WeightedRandomSelection(), false),
+                Arguments.of(new ConsistentHashRingSelection(), true),
+                Arguments.of(new MaglevHashSelection(), true));
+    }
+
+    @ParameterizedTest
+    @MethodSource("strategies")
+    void getDoesNotAllocate(SelectionStrategy strategy, boolean keyed) {
+
+        loadBalancer = LoadBalancerImpl.builder()
+                .selectionStrategy(strategy)
+                .maxCapacity(100)
+                .circuitBreaker(CircuitBreaker.Config.builder().build())
+                .build();
+        loadBalancer.registerAll(IntStream.range(0, 100)
+                .mapToObj(i -> new Provider("P" + i))
+                .collect(Collectors.toList()));
+        String key = keyed ? "tenant-42" : null;
+
+        call(loadBalancer, key, WARMUP_CALLS);
+
+        long threadId = Thread.currentThread().threadId();
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        call(loadBalancer, key, MEASURED_CALLS);
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+
+        //a few bytes of slack for the measurement itself
+        assertThat(allocated).as("bytes allocated by %d calls", MEASURED_CALLS).isLessThan(1024);
+    }
+
+    private void call(LoadBalancerImpl loadBalancer, String key, int calls) {
+        for (int i = 0; i < calls; i++) {
+            if (loadBalancer.get(key) == null) {
+                throw new AssertionError("no provider");
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.CircuitBreaker;
+import com.qbros.lb.core.LoadBalancer;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.NoProviderAvailableException;
+import com.qbros.lb.core.Provider;
+import com.qbros.lb.core.RoundRobinSelection;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CircuitBreakerTest {
+
+    private final CircuitBreaker.Config config = CircuitBreaker.Config.builder()
+            .slidingWindowSize(10)
+            .minimumNumberOfCalls(10)
+            .failureRateThreshold(0.5)
+            .consecutiveFailureThreshold(3)
+            .openBackoffMillis(200)
+            .build();
+
+    @Test
+    void opensOnConsecutiveFailures() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(config);
+
+        assertThat(circuitBreaker.onFailure()).isFalse();
+        assertThat(circuitBreaker.onFailure()).isFalse();
+        assertThat(circuitBreaker.onFailure()).isTrue();
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void opensOnFailureRate() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(config);
+
+        boolean opened = false;
+        for (int i = 0; i < 10; i++) {
+            opened = (i % 2 == 1) ? circuitBreaker.onFailure() : success(circuitBreaker);
+        }
+
+        //failures alternate with successes, only the failure rate (5 of 10) opens it
+        assertThat(opened).isTrue();
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    void halfOpen_letsTrialRequestsThrough() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(config);
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.onFailure();
+        }
+
+        circuitBreaker.halfOpen();
+        assertThat(circuitBreaker.tryAcquire()).isTrue();
+        assertThat(circuitBreaker.tryAcquire()).isFalse();
+
+        //failed trial opens it again with a longer backoff
+        assertThat(circuitBreaker.onFailure()).isTrue();
+        assertThat(circuitBreaker.getBackoffMillis()).isEqualTo(400);
+
+        circuitBreaker.halfOpen();
+        assertThat(circuitBreaker.tryAcquire()).isTrue();
+        circuitBreaker.onSuccess();
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(circuitBreaker.getBackoffMillis()).isEqualTo(200);
+    }
+
+    @Test
+    void get_failingProviderIsEjectedAndComesBack() throws InterruptedException {
+
+        AtomicBoolean failing = new AtomicBoolean(true);
+        Provider flaky = new Provider("flaky") {
+            @Override
+            public String provide() {
+                if (failing.get()) {
+                    throw new IllegalStateException("backend error");
+                }
+                return super.provide();
+            }
+        };
+        LoadBalancer loadBalancer = LoadBalancerImpl.builder()
+                .selectionStrategy(new RoundRobinSelection())
+                .circuitBreaker(config)
+                .build();
+        loadBalancer.registerAll(List.of(flaky, new Provider("healthy")));
+
+        int errors = 0;
+        for (int i = 0; i < 50; i++) {
+            try {
+                assertThat(loadBalancer.get()).endsWith("HEALTHY");
+            } catch (IllegalStateException e) {
+                errors++;
+            }
+        }
+        assertThat(errors).isEqualTo(3);
+
+        //after the backoff the trial request is let through
+        failing.set(false);
+        Thread.sleep(500);
+        assertThat(List.of(loadBalancer.get(), loadBalancer.get())).anyMatch(value -> value.endsWith("FLAKY"));
+    }
+
+    @Test
+    void halfOpenProvider_isOnlyAdmittedForItsTrialRequests() throws InterruptedException {
+
+        AtomicBoolean failing = new AtomicBoolean(true);
+        Provider flaky = new Provider("flaky", 5) {
+            @Override
+            public String provide() {
+                if (failing.get()) {
+                    throw new IllegalStateException("backend error");
+                }
+                return super.provide();
+            }
+        };
+        LoadBalancerImpl loadBalancer = LoadBalancerImpl.builder().circuitBreaker(config).build();
+        loadBalancer.include(flaky);
+
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(loadBalancer::get).isInstanceOf(IllegalStateException.class);
+        }
+        assertThat(loadBalancer.getAdmissionControl().getAvailablePermits()).isZero();
+        assertThatThrownBy(loadBalancer::get).isInstanceOf(NoProviderAvailableException.class);
+
+        failing.set(false);
+        awaitPermits(loadBalancer, 1);
+        assertThat(loadBalancer.get()).endsWith("FLAKY");
+        assertThat(loadBalancer.getAdmissionControl().getAvailablePermits()).isEqualTo(5);
+    }
+
+    @Test
+    void get_disabledByDefault() {
+
+        Provider broken = new Provider("broken") {
+            @Override
+            public String provide() {
+                throw new IllegalStateException("backend error");
+            }
+        };
+        LoadBalancer loadBalancer = LoadBalancerImpl.builder().build();
+        loadBalancer.include(broken);
+
+        for (int i = 0; i < 10; i++) {
+            assertThatThrownBy(loadBalancer::get).isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    private static void awaitPermits(LoadBalancerImpl loadBalancer, int permits) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (loadBalancer.getAdmissionControl().getAvailablePermits() != permits && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(loadBalancer.getAdmissionControl().getAvailablePermits()).isEqualTo(permits);
+    }
+
+    private boolean success(CircuitBreaker circuitBreaker) {
+        circuitBreaker.onSuccess();
+        return false;
+    }
+}
@@ -0,0 +1,125 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.*;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsistentHashSelectionTest {
+
+    private final List<Provider> providers = IntStream.range(0, 10)
+            .mapToObj(i -> new Provider("P" + i))
+            .collect(Collectors.toList());
+
+    static Stream<Arguments> strategies() {
+        return Stream.of(
+                Arguments.of((Supplier<SelectionStrategy>) ConsistentHashRingSelection::new),
+                Arguments.of((Supplier<SelectionStrategy>) MaglevHashSelection::new));
+    }
+
+    static Stream<Arguments> boundedStrategies() {
+        return Stream.of(
+                Arguments.of((Supplier<SelectionStrategy>) () -> new ConsistentHashRingSelection(160, 1.25)),
+                Arguments.of((Supplier<SelectionStrategy>) () -> new MaglevHashSelection(1.25)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("strategies")
+    void get_sameKeySameProvider(Supplier<SelectionStrategy> strategy) {
+
+        LoadBalancer loadBalancer = LoadBalancerImpl.builder().selectionStrategy(strategy.get()).build();
+        loadBalancer.registerAll(providers);
+
+        for (int tenant = 0; tenant < 100; tenant++) {
+            String first = loadBalancer.get("tenant-" + tenant);
+            for (int i = 0; i < 5; i++) {
+                assertThat(loadBalancer.get("tenant-" + tenant)).isEqualTo(first);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("strategies")
+    void exclude_onlyMovesTheKeysOfTheExcludedProvider(Supplier<SelectionStrategy> supplier) {
+
+        SelectionStrategy strategy = supplier.get();
+        strategy.onProvidersChanged(providers);
+        List<Integer> before = owners(strategy, providers);
+
+        List<Provider> remaining = new ArrayList<>(providers);
+        Provider excluded = remaining.remove(3);
+        strategy.onProvidersChanged(remaining);
+        List<Integer> after = owners(strategy, remaining);
+
+        int moved = 0;
+        for (int key = 0; key < before.size(); key++) {
+            Provider owner = providers.get(before.get(key));
+            if (!owner.equals(excluded)) {
+                if (!remaining.get(after.get(key)).equals(owner)) {
+                    moved++;
+                }
+            }
+        }
+
+        //keys of the other providers should (almost) never move
+        assertThat(moved).isLessThan(before.size() / 20);
+    }
+
+    @ParameterizedTest
+    @MethodSource("boundedStrategies")
+    void boundedLoad_spillsKeysOfAnOverloadedProvider(Supplier<SelectionStrategy> supplier) {
+
+        SelectionStrategy strategy = supplier.get();
+        strategy.onProvidersChanged(providers);
+        int owner = strategy.pick(providers, "hot-tenant");
+
+        Provider hot = providers.get(owner);
+        for (int i = 0; i < 5; i++) {
+            hot.beginRequest();
+            strategy.onRequestStarted(hot);
+        }
+
+        assertThat(strategy.pick(providers, "hot-tenant")).isNotEqualTo(owner);
+
+        for (int i = 0; i < 5; i++) {
+            hot.endRequest();
+            strategy.onRequestCompleted(hot);
+        }
+        assertThat(strategy.pick(providers, "hot-tenant")).isEqualTo(owner);
+    }
+
+    @ParameterizedTest
+    @MethodSource("boundedStrategies")
+    void boundedLoad_everyProviderOverloaded_picksTheLeastLoadedCandidate(Supplier<SelectionStrategy> supplier) {
+
+        SelectionStrategy strategy = supplier.get();
+        strategy.onProvidersChanged(providers);
+        int owner = strategy.pick(providers, "hot-tenant");
+
+        //the strategy is not told about these requests, so its bound stays at 1 and every provider is over it
+        for (int i = 0; i < providers.size(); i++) {
+            for (int request = 0; request < ((i == owner) ? 5 : 3); request++) {
+                providers.get(i).beginRequest();
+            }
+        }
+
+        int picked = strategy.pick(providers, "hot-tenant");
+        assertThat(picked).isNotEqualTo(owner);
+        assertThat(providers.get(picked).getOutstandingRequests()).isEqualTo(3);
+    }
+
+    private List<Integer> owners(SelectionStrategy strategy, List<Provider> providers) {
+        return IntStream.range(0, 2000)
+                .mapToObj(key -> strategy.pick(providers, "key-" + key))
+                .collect(Collectors.toList());
+    }
+}
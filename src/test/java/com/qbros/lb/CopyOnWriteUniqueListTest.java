@@ -0,0 +1,157 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.CopyOnWriteUniqueList;
+import com.qbros.lb.core.Diff;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CopyOnWriteUniqueListTest {
+
+    @Test
+    void addAll() {
+        CopyOnWriteUniqueList<Integer> collection = new CopyOnWriteUniqueList<>();
+        collection.addAll(List.of(1, 2, 3));
+        collection.addAll(List.of(1, 2, 3, 4, 5, 6));
+        assertThat(collection.getSize()).isEqualTo(6);
+        assertThat(collection.getContent()).containsExactly(1, 2, 3, 4, 5, 6);
+    }
+
+    @Test
+    void addAll_exceedsCapacity() {
+        CopyOnWriteUniqueList<Integer> collection = new CopyOnWriteUniqueList<>(2);
+        assertThatThrownBy(() -> collection.addAll(List.of(1, 2, 3))).isInstanceOf(IllegalArgumentException.class);
+        assertThat(collection.getContent()).isEmpty();
+    }
+
+    @Test
+    void addOne_with_duplicates() {
+        CopyOnWriteUniqueList<Integer> collection = new CopyOnWriteUniqueList<>();
+        collection.addOne(1);
+        collection.addOne(2);
+        collection.addOne(2);
+        collection.addOne(3);
+        assertThat(collection.getSize()).isEqualTo(3);
+        assertThat(collection.getContent()).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    void remove() {
+        CopyOnWriteUniqueList<Integer> collection = new CopyOnWriteUniqueList<>();
+        collection.addAll(List.of(1, 2, 3));
+        collection.remove(2);
+        collection.remove(4);
+        assertThat(collection.getContent()).containsExactly(1, 3);
+        collection.addOne(2);
+        assertThat(collection.getContent()).containsExactly(1, 3, 2);
+    }
+
+    @Test
+    void snapshot_isNotAffectedByLaterWrites() {
+        CopyOnWriteUniqueList<Integer> collection = new CopyOnWriteUniqueList<>();
+        collection.addAll(List.of(1, 2, 3));
+        CopyOnWriteUniqueList.Snapshot<Integer> snapshot = collection.snapshot();
+
+        collection.remove(3);
+        collection.remove(2);
+
+        assertThat(snapshot.size()).isEqualTo(3);
+        assertThat(snapshot.get(2)).isEqualTo(3);
+        assertThat(collection.getAtIndex(2)).isNull();
+        assertThat(collection.snapshot().asList()).containsExactly(1);
+    }
+
+    @Test
+    void remove_movesTheLastItem() {
+        CopyOnWriteUniqueList<Integer> collection = new CopyOnWriteUniqueList<>();
+        collection.addAll(List.of(1, 2, 3, 4));
+        assertThat(collection.removeAll(List.of(1, 5))).containsExactly(1);
+        assertThat(collection.getContent()).containsExactly(4, 2, 3);
+        assertThat(collection.remove(2)).isTrue();
+        assertThat(collection.getContent()).containsExactly(4, 3);
+    }
+
+    @Test
+    void replaceAll_appliesTheDiffInOneSnapshot() {
+        CopyOnWriteUniqueList<Integer> collection = new CopyOnWriteUniqueList<>();
+        collection.addAll(List.of(1, 2, 3, 4));
+        CopyOnWriteUniqueList.Snapshot<Integer> before = collection.snapshot();
+
+        Diff<Integer> diff = collection.replaceAll(List.of(2, 4, 5, 5, 6));
+
+        assertThat(diff.getAdded()).containsExactly(5, 6);
+        assertThat(diff.getRemoved()).containsExactlyInAnyOrder(1, 3);
+        assertThat(collection.getContent()).containsExactlyInAnyOrder(2, 4, 5, 6);
+        assertThat(before.asList()).containsExactly(1, 2, 3, 4);
+        assertThat(collection.replaceAll(List.of(6, 5, 4, 2)).isEmpty()).isTrue();
+    }
+
+    @Test
+    @SuppressWarnings("StringOperationCanBeSimplified")
+    void replaceAll_replacesOtherInstancesInPlace() {
+        CopyOnWriteUniqueList<String> collection = new CopyOnWriteUniqueList<>();
+        String a = "a";
+        collection.addAll(List.of(a, "b"));
+        String newA = new String("a");
+
+        Diff<String> diff = collection.replaceAll(List.of(newA, "b"));
+
+        assertThat(diff.getAdded()).singleElement().isSameAs(newA);
+        assertThat(diff.getRemoved()).singleElement().isSameAs(a);
+        assertThat(collection.getAtIndex(0)).isSameAs(newA);
+        assertThat(collection.remove("a")).isTrue();
+        assertThat(collection.getContent()).containsExactly("b");
+    }
+
+    @Test
+    void replaceAll_exceedsCapacity() {
+        CopyOnWriteUniqueList<Integer> collection = new CopyOnWriteUniqueList<>(2);
+        collection.addAll(List.of(1, 2));
+        assertThatThrownBy(() -> collection.replaceAll(List.of(3, 4, 5))).isInstanceOf(IllegalArgumentException.class);
+        assertThat(collection.getContent()).containsExactly(1, 2);
+    }
+
+    @Test
+    void largePool_randomChurn() {
+        int poolSize = 50_000;
+        CopyOnWriteUniqueList<Integer> collection = new CopyOnWriteUniqueList<>(poolSize);
+        List<Integer> items = IntStream.range(0, poolSize).boxed().collect(Collectors.toList());
+        assertThat(collection.addAll(items)).hasSize(poolSize);
+        CopyOnWriteUniqueList.Snapshot<Integer> full = collection.snapshot();
+
+        Random random = new Random(42);
+        Set<Integer> expected = new HashSet<>(items);
+        for (int i = 0; i < 20_000; i++) {
+            Integer item = random.nextInt(poolSize);
+            if (expected.remove(item)) {
+                assertThat(collection.remove(item)).isTrue();
+            } else {
+                expected.add(item);
+                assertThat(collection.addOne(item)).isTrue();
+            }
+        }
+        List<Integer> batch = new ArrayList<>(expected).subList(0, 1000);
+        assertThat(collection.removeAll(batch)).hasSize(1000);
+        expected.removeAll(batch);
+
+        assertThat(collection.getContent()).containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(collection.getSize()).isEqualTo(expected.size());
+        assertThat(full.size()).isEqualTo(poolSize);
+        assertThat(full.asList()).containsExactlyElementsOf(items);
+
+        collection.removeAll(new ArrayList<>(expected));
+        assertThat(collection.getContent()).isEmpty();
+        collection.addAll(Collections.singletonList(7));
+        assertThat(collection.getContent()).containsExactly(7);
+    }
+}
@@ -0,0 +1,239 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.ExecutionMode;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.Provider;
+import com.qbros.lb.infrastructure.DataPlaneServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DataPlaneServerTest {
+
+    private LoadBalancerImpl loadBalancer;
+    private DataPlaneServer server;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.close();
+        }
+        if (loadBalancer != null) {
+            loadBalancer.close();
+        }
+    }
+
+    @Test
+    void get_isServedByTheLoadBalancerOfThePath() throws Exception {
+
+        start(LoadBalancerImpl.builder().build(), new Provider("P1"));
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        for (int i = 0; i < 3; i++) {
+            HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri("/lb?ignored=1")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            assertThat(response.statusCode()).isEqualTo(200);
+            assertThat(response.body()).endsWith("Provided by P1");
+        }
+        assertThat(client.send(HttpRequest.newBuilder(uri("/other")).build(),
+                HttpResponse.BodyHandlers.ofString()).statusCode()).isEqualTo(404);
+        assertThat(client.send(HttpRequest.newBuilder(uri("/lb")).POST(HttpRequest.BodyPublishers.ofString("x"))
+                .build(), HttpResponse.BodyHandlers.ofString()).statusCode()).isEqualTo(405);
+    }
+
+    @Test
+    void pipelinedRequests_areAnsweredInOrder() throws Exception {
+
+        //the first call is the slowest one, the responses must not be reordered anyway
+        Provider slowFirst = new Provider("P1") {
+            private int calls;
+
+            @Override
+            public String provide() {
+                int call;
+                synchronized (this) {
+                    call = ++calls;
+                }
+                sleep(call == 1 ? 300 : 0);
+                return "call-" + call;
+            }
+        };
+        start(LoadBalancerImpl.builder().executionMode(ExecutionMode.VIRTUAL).build(), slowFirst);
+
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write(("GET /lb HTTP/1.1\r\nHost: a\r\n\r\n"
+                    + "GET /lb HTTP/1.1\r\nHost: a\r\n\r\n"
+                    + "GET /lb HTTP/1.1\r\nHost: a\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+
+            String responses = readAll(socket.getInputStream());
+
+            assertThat(bodies(responses)).containsExactly("call-1", "call-2", "call-3");
+            assertThat(responses).containsOnlyOnce("Connection: close");
+        }
+    }
+
+    @Test
+    void moreRequestsThanThePipeline_areAllAnsweredInOrder() throws Exception {
+
+        Provider slow = new Provider("P1", 100) {
+            private final AtomicInteger calls = new AtomicInteger();
+
+            @Override
+            public String provide() {
+                int call = calls.incrementAndGet();
+                sleep(50);
+                return "call-" + call;
+            }
+        };
+        start(LoadBalancerImpl.builder().executionMode(ExecutionMode.VIRTUAL).build(), slow);
+        //more than the 64 requests of a connection in flight
+        int requests = 70;
+
+        try (Socket socket = connect()) {
+            StringBuilder pipeline = new StringBuilder();
+            for (int i = 1; i < requests; i++) {
+                pipeline.append("GET /lb HTTP/1.1\r\n\r\n");
+            }
+            pipeline.append("GET /lb HTTP/1.1\r\nConnection: close\r\n\r\n");
+            socket.getOutputStream().write(pipeline.toString().getBytes(StandardCharsets.US_ASCII));
+
+            assertThat(bodies(readAll(socket.getInputStream())))
+                    .hasSize(requests)
+                    .allMatch(body -> body.startsWith("call-"));
+        }
+
+        //the event loop is still serving
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        assertThat(client.send(HttpRequest.newBuilder(uri("/lb")).build(), HttpResponse.BodyHandlers.ofString())
+                .statusCode()).isEqualTo(200);
+    }
+
+    @Test
+    void halfClosedConnection_getsItsResponses() throws Exception {
+
+        start(LoadBalancerImpl.builder().build(), new Provider("P1"));
+
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write(("GET /lb HTTP/1.1\r\n\r\nGET /lb HTTP/1.1\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            socket.shutdownOutput();
+
+            assertThat(bodies(readAll(socket.getInputStream())))
+                    .hasSize(2)
+                    .allMatch(body -> body.endsWith("Provided by P1"));
+        }
+    }
+
+    @Test
+    void http10_closesTheConnection() throws Exception {
+
+        start(LoadBalancerImpl.builder().build(), new Provider("P1"));
+
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write("GET /lb HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+
+            //the server closes the connection, the client did not
+            assertThat(readAll(socket.getInputStream())).startsWith("HTTP/1.1 200 OK").endsWith("Provided by P1");
+        }
+    }
+
+    @Test
+    void loadBalancerFailures_areMappedToStatuses() throws Exception {
+
+        start(LoadBalancerImpl.builder().build());
+
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write(("GET /lb HTTP/1.1\r\n\r\n"
+                    + "GET /lb HTTP/1.1\r\nContent-Length: 2\r\n\r\nab"
+                    + "garbage\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+
+            String responses = readAll(socket.getInputStream());
+
+            assertThat(responses.split("HTTP/1.1 ")).extracting(response -> response.split("\r\n")[0])
+                    .containsExactly("", "503 Service Unavailable", "503 Service Unavailable", "400 Bad Request");
+        }
+    }
+
+    @Test
+    void idleConnection_isClosed_andTheOthersAreStillServed() throws Exception {
+
+        this.loadBalancer = LoadBalancerImpl.builder().build();
+        loadBalancer.include(new Provider("P1"));
+        server = new DataPlaneServer(new InetSocketAddress("127.0.0.1", 0), Map.of("/lb", loadBalancer), 200);
+        server.start();
+
+        try (Socket idle = connect(); Socket reset = connect()) {
+            //closed by the client with a RST, the failure stays on that connection
+            reset.setSoLinger(true, 0);
+            reset.getOutputStream().write("GET /lb HTTP/1.1\r\n".getBytes(StandardCharsets.US_ASCII));
+            reset.close();
+
+            long start = System.nanoTime();
+            assertThat(idle.getInputStream().read()).isEqualTo(-1);
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(3000);
+        }
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        assertThat(client.send(HttpRequest.newBuilder(uri("/lb")).build(), HttpResponse.BodyHandlers.ofString())
+                .body()).endsWith("Provided by P1");
+    }
+
+    private void start(LoadBalancerImpl loadBalancer, Provider... providers) {
+        this.loadBalancer = loadBalancer;
+        loadBalancer.registerAll(List.of(providers));
+        server = new DataPlaneServer(new InetSocketAddress("127.0.0.1", 0), Map.of("/lb", loadBalancer));
+        server.start();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort() + path);
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("127.0.0.1", server.getAddress().getPort());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        in.transferTo(bytes);
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The bodies of the concatenated responses, they all have a {@code Content-Length}.
+     */
+    private static List<String> bodies(String responses) {
+        return Arrays.stream(responses.split("HTTP/1.1 "))
+                .filter(response -> !response.isEmpty())
+                .map(response -> response.substring(response.indexOf("\r\n\r\n") + 4))
+                .collect(Collectors.toList());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.FileDiscoverySource;
+import com.qbros.lb.core.HttpProvider;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.Provider;
+import com.qbros.lb.core.ProviderDefinition;
+import com.qbros.lb.core.ProviderDiscovery;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileDiscoveryTest {
+
+    @TempDir
+    Path directory;
+
+    private LoadBalancerImpl loadBalancer;
+    private ProviderDiscovery discovery;
+    private FileDiscoverySource source;
+
+    @AfterEach
+    void tearDown() {
+        if (discovery != null) {
+            discovery.close();
+        }
+        if (source != null) {
+            source.close();
+        }
+        if (loadBalancer != null) {
+            loadBalancer.close();
+        }
+    }
+
+    @Test
+    void start_registersTheDefinedProviders() throws Exception {
+
+        Path file = write("{\"providers\": ["
+                + "{\"id\": \"P1\", \"weight\": 3, \"zone\": \"a\"},"
+                + "{\"id\": \"B1\", \"address\": \"localhost:9000\"}]}");
+        startDiscovery(file);
+
+        assertThat(ids()).containsExactlyInAnyOrder("P1", "B1");
+        assertThat(discovery.getProvider("P1").getWeight()).isEqualTo(3);
+        assertThat(discovery.getProvider("B1")).isInstanceOf(HttpProvider.class);
+    }
+
+    @Test
+    void fileChanges_applyOnlyTheDiff() throws Exception {
+
+        Path file = write("{\"providers\": [{\"id\": \"P1\"}, {\"id\": \"P2\"}, {\"id\": \"P3\", \"weight\": 1}]}");
+        startDiscovery(file);
+        Provider p1 = discovery.getProvider("P1");
+        Provider p3 = discovery.getProvider("P3");
+
+        write("{\"providers\": [{\"id\": \"P1\"}, {\"id\": \"P3\", \"weight\": 2}, {\"id\": \"P4\"}]}");
+
+        awaitTrue(() -> ids().contains("P4"));
+        assertThat(ids()).containsExactlyInAnyOrder("P1", "P3", "P4");
+        //unchanged definition: same provider, its state is kept
+        assertThat(discovery.getProvider("P1")).isSameAs(p1);
+        //changed definition: new provider
+        assertThat(discovery.getProvider("P3")).isNotSameAs(p3);
+        assertThat(discovery.getProvider("P3").getWeight()).isEqualTo(2);
+        assertThat(loadBalancer.getProviders()).contains(discovery.getProvider("P3"));
+    }
+
+    @Test
+    void burstOfWrites_isAppliedOnce() throws Exception {
+
+        Path file = write("{\"providers\": [{\"id\": \"P0\"}]}");
+        List<List<ProviderDefinition>> published = new CopyOnWriteArrayList<>();
+        source = new FileDiscoverySource(file, 300);
+        source.start(published::add);
+
+        for (int i = 1; i <= 10; i++) {
+            write("{\"providers\": [{\"id\": \"P" + i + "\"}]}");
+        }
+
+        awaitTrue(() -> published.size() == 2);
+        Thread.sleep(500);
+        assertThat(published).hasSize(2);
+        assertThat(published.get(1)).extracting(ProviderDefinition::id).containsExactly("P10");
+    }
+
+    @Test
+    void invalidFile_keepsTheCurrentProviders() throws Exception {
+
+        Path file = write("{\"providers\": [{\"id\": \"P1\"}]}");
+        startDiscovery(file);
+
+        write("{\"providers\": [{\"id\": ");
+        Thread.sleep(500);
+        assertThat(ids()).containsExactly("P1");
+
+        //so is a document without any providers, only an explicit empty list removes them
+        write("{}");
+        Thread.sleep(500);
+        assertThat(ids()).containsExactly("P1");
+
+        //duplicates are rejected as well
+        write("{\"providers\": [{\"id\": \"P1\"}, {\"id\": \"P1\", \"weight\": 2}]}");
+        Thread.sleep(500);
+        assertThat(ids()).containsExactly("P1");
+
+        write("{\"providers\": [{\"id\": \"P2\"}]}");
+        awaitTrue(() -> ids().contains("P2"));
+        assertThat(ids()).containsExactly("P2");
+    }
+
+    @Test
+    void start_failsOnAnInvalidFile() throws Exception {
+
+        Path file = write("not json");
+        loadBalancer = LoadBalancerImpl.builder().build();
+        ProviderDiscovery invalid = new ProviderDiscovery(new FileDiscoverySource(file, 50), loadBalancer);
+
+        assertThatThrownBy(invalid::start).isInstanceOf(IllegalStateException.class);
+    }
+
+    private void startDiscovery(Path file) {
+        loadBalancer = LoadBalancerImpl.builder().maxCapacity(20).build();
+        discovery = new ProviderDiscovery(new FileDiscoverySource(file, 50), loadBalancer);
+        discovery.start();
+    }
+
+    /**
+     * Written to a temporary file then moved, the way configuration tools replace their files.
+     */
+    private Path write(String content) throws IOException {
+        Path file = directory.resolve("providers.json");
+        Path temporary = Files.writeString(directory.resolve("providers.json.tmp"), content);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    private List<String> ids() {
+        return loadBalancer.getProviders().stream().map(Provider::getId).collect(Collectors.toList());
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,123 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.CircuitBreaker;
+import com.qbros.lb.core.HashedWheelTimer;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.Provider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HashedWheelTimerTest {
+
+    private final HashedWheelTimer timer = new HashedWheelTimer("test-timer", 5, TimeUnit.MILLISECONDS, 16);
+
+    @AfterEach
+    void tearDown() {
+        timer.close();
+    }
+
+    @Test
+    void schedule_neverFiresBeforeTheDeadline() throws InterruptedException {
+
+        int numberOfTimers = 200;
+        CountDownLatch fired = new CountDownLatch(numberOfTimers);
+        AtomicInteger early = new AtomicInteger();
+        for (int i = 0; i < numberOfTimers; i++) {
+            //longer than a turn of the wheel for some of them
+            long delayMillis = i % 150;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            timer.schedule(() -> {
+                if (System.nanoTime() < deadline) {
+                    early.incrementAndGet();
+                }
+                fired.countDown();
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+
+        assertThat(fired.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(early).hasValue(0);
+        assertThat(timer.getPendingTimeouts()).isZero();
+    }
+
+    @Test
+    void cancel_taskDoesNotRun() throws InterruptedException {
+
+        AtomicInteger runs = new AtomicInteger();
+        List<HashedWheelTimer.Timeout> timeouts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            timeouts.add(timer.schedule(runs::incrementAndGet, 50, TimeUnit.MILLISECONDS));
+        }
+        timeouts.forEach(HashedWheelTimer.Timeout::cancel);
+
+        assertThat(timer.getPendingTimeouts()).isZero();
+        Thread.sleep(150);
+        assertThat(runs).hasValue(0);
+        assertThat(timeouts.get(0).cancel()).isFalse();
+    }
+
+    @Test
+    void scheduleAtFixedRate_runsUntilCancelled() throws InterruptedException {
+
+        CountDownLatch runs = new CountDownLatch(5);
+        HashedWheelTimer.Timeout periodic = timer.scheduleAtFixedRate(runs::countDown, 0, 10, TimeUnit.MILLISECONDS);
+
+        assertThat(runs.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(periodic.cancel()).isTrue();
+        assertThat(timer.getPendingTimeouts()).isZero();
+    }
+
+    @Test
+    void failingTask_doesNotStopTheTimer() throws InterruptedException {
+
+        CountDownLatch fired = new CountDownLatch(1);
+        timer.schedule(() -> {
+            throw new IllegalStateException("boom");
+        }, 0, TimeUnit.MILLISECONDS);
+        timer.schedule(fired::countDown, 10, TimeUnit.MILLISECONDS);
+
+        assertThat(fired.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void sharedTimer_canNotBeClosed() {
+        assertThatThrownBy(() -> HashedWheelTimer.shared().close()).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void close_releasesTheTasksOfTheLoadBalancer() {
+
+        Provider broken = new Provider("broken") {
+            @Override
+            public String provide() {
+                throw new IllegalStateException("broken");
+            }
+        };
+        LoadBalancerImpl loadBalancer = LoadBalancerImpl.builder()
+                .timer(timer)
+                .circuitBreaker(CircuitBreaker.Config.builder().consecutiveFailureThreshold(1).build())
+                .build();
+        loadBalancer.registerAll(List.of(broken, new Provider("healthy")));
+        while (!loadBalancer.getProviders().equals(List.of(new Provider("healthy")))) {
+            try {
+                loadBalancer.get();
+            } catch (IllegalStateException ignored) {
+                //the broken provider until it is ejected
+            }
+        }
+        //the heart beats and the re-admission of the ejected provider
+        assertThat(timer.getPendingTimeouts()).isEqualTo(2);
+
+        loadBalancer.close();
+
+        assertThat(timer.getPendingTimeouts()).isZero();
+    }
+}
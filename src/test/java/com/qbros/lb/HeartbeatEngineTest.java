@@ -0,0 +1,162 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.HashedWheelTimer;
+import com.qbros.lb.core.HeartbeatEngine;
+import com.qbros.lb.core.LoadBalancer;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.Provider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HeartbeatEngineTest {
+
+    private final HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 64);
+
+    @AfterEach
+    void tearDown() {
+        timer.close();
+    }
+
+    @Test
+    void check_slowProbesTimeOutConcurrently() {
+
+        List<Provider> providers = IntStream.range(0, 20)
+                .mapToObj(i -> (i % 2 == 0) ? new Provider("P" + i) : slowProvider("P" + i, 5000))
+                .collect(Collectors.toList());
+        List<List<Provider>> batches = new CopyOnWriteArrayList<>();
+        HeartbeatEngine engine = new HeartbeatEngine(() -> providers, batches::add, timer,
+                Executors.newCachedThreadPool(), 10_000, 200);
+
+        long start = System.nanoTime();
+        List<Provider> dead = engine.check().join();
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        //ten serial probes would take ten timeouts at least
+        assertThat(elapsedMillis).isLessThan(2000);
+        assertThat(dead).hasSize(10).allMatch(provider -> Integer.parseInt(provider.getId().substring(1)) % 2 == 1);
+        assertThat(batches).containsExactly(dead);
+    }
+
+    @Test
+    void check_timedOutProbeIsInterrupted() throws InterruptedException {
+
+        CountDownLatch interrupted = new CountDownLatch(1);
+        List<Provider> providers = List.of(new Provider("hanging") {
+            @Override
+            public boolean isAlive() {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return true;
+            }
+        });
+        HeartbeatEngine engine = new HeartbeatEngine(() -> providers, dead -> {
+        }, timer, Executors.newCachedThreadPool(), 10_000, 100);
+
+        assertThat(engine.check().join()).isEqualTo(providers);
+        assertThat(interrupted.await(2, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void check_providerIsNotProbedAgainWhileItsPreviousProbeRuns() {
+
+        AtomicInteger probes = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<Provider> providers = List.of(new Provider("stuck") {
+            @Override
+            public boolean isAlive() {
+                probes.incrementAndGet();
+                //ignores the interrupts
+                while (release.getCount() > 0) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                return true;
+            }
+        });
+        HeartbeatEngine engine = new HeartbeatEngine(() -> providers, dead -> {
+        }, timer, Executors.newCachedThreadPool(), 10_000, 100);
+
+        try {
+            for (int round = 0; round < 3; round++) {
+                assertThat(engine.check().join()).isEqualTo(providers);
+            }
+            assertThat(probes).hasValue(1);
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void start_probesAreSpreadOverTheInterval() throws InterruptedException {
+
+        int numberOfProviders = 50;
+        List<Long> probeTimes = new CopyOnWriteArrayList<>();
+        CountDownLatch probed = new CountDownLatch(numberOfProviders);
+        List<Provider> providers = IntStream.range(0, numberOfProviders)
+                .mapToObj(i -> new Provider("P" + i) {
+                    @Override
+                    public boolean isAlive() {
+                        probeTimes.add(System.nanoTime());
+                        probed.countDown();
+                        return true;
+                    }
+                })
+                .collect(Collectors.toList());
+        HeartbeatEngine engine = new HeartbeatEngine(() -> providers, dead -> {
+        }, timer, Executors.newCachedThreadPool(), 1000, 100);
+
+        engine.start(0);
+
+        assertThat(probed.await(5, TimeUnit.SECONDS)).isTrue();
+        long spreadMillis = TimeUnit.NANOSECONDS.toMillis(
+                probeTimes.stream().max(Long::compare).get() - probeTimes.stream().min(Long::compare).get());
+        assertThat(spreadMillis).isGreaterThan(300);
+    }
+
+    @Test
+    void checkProviders_removesTheDeadProvidersAtOnce() {
+
+        Provider dead = new Provider("dead");
+        dead.setAlive(false);
+        Provider hanging = slowProvider("hanging", 5000);
+        Provider alive = new Provider("alive");
+        LoadBalancer loadBalancer = LoadBalancerImpl.builder().heartBeatCheckTimeoutMillis(200).build();
+        loadBalancer.registerAll(List.of(dead, hanging, alive));
+
+        loadBalancer.checkProviders();
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(loadBalancer.get()).endsWith("ALIVE");
+        }
+    }
+
+    private Provider slowProvider(String id, long delayMillis) {
+        return new Provider(id) {
+            @Override
+            public boolean isAlive() {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return true;
+            }
+        };
+    }
+}
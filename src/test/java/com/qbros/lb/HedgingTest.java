@@ -0,0 +1,188 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.HedgePolicy;
+import com.qbros.lb.core.LatencyHistogram;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.Provider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HedgingTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void slowProviderIsHedged() throws InterruptedException {
+
+        Provider slow = slowProvider("slow");
+        LoadBalancerImpl loadBalancer = loadBalancer(HedgePolicy.Config.builder()
+                .delayMillis(20)
+                .budgetRatio(1)
+                .build());
+        loadBalancer.registerAll(List.of(slow, new Provider("fast")));
+
+        long start = System.nanoTime();
+        assertThat(loadBalancer.get()).endsWith("FAST");
+
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(1000);
+        assertThat(loadBalancer.getMetrics().getHedges()).isEqualTo(1);
+        //the loser can not be stopped, it holds its permit until it returns
+        Thread.sleep(100);
+        assertThat(slow.getOutstandingRequests()).isEqualTo(1);
+
+        release.countDown();
+        for (int i = 0; i < 100 && slow.getOutstandingRequests() > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(slow.getOutstandingRequests()).isZero();
+        assertThat(slow.getConcurrentCapacity()).isEqualTo(slow.getMaxConcurrentCapacity());
+        assertThat(loadBalancer.getMetrics().getFailures()).isZero();
+    }
+
+    @Test
+    void cancellableLoserIsCancelled() throws Exception {
+
+        CompletableFuture<String> never = new CompletableFuture<>();
+        Provider slow = new Provider("slow") {
+            @Override
+            public CompletableFuture<String> provideAsync(Executor executor) {
+                return never;
+            }
+
+            @Override
+            public boolean supportsCancellation() {
+                return true;
+            }
+        };
+        LoadBalancerImpl loadBalancer = loadBalancer(HedgePolicy.Config.builder()
+                .delayMillis(20)
+                .budgetRatio(1)
+                .build());
+        loadBalancer.registerAll(List.of(slow, new Provider("fast")));
+
+        assertThat(loadBalancer.getAsync().get(5, TimeUnit.SECONDS)).endsWith("FAST");
+
+        //cancelling stops the call, its permit is given back without a failure
+        for (int i = 0; i < 100 && slow.getOutstandingRequests() > 0; i++) {
+            Thread.sleep(50);
+        }
+        assertThat(never).isCancelled();
+        assertThat(slow.getOutstandingRequests()).isZero();
+        assertThat(slow.getConcurrentCapacity()).isEqualTo(slow.getMaxConcurrentCapacity());
+        assertThat(loadBalancer.getMetrics().getFailures()).isZero();
+    }
+
+    @Test
+    void fastProviderIsNotHedged() throws Exception {
+
+        LoadBalancerImpl loadBalancer = loadBalancer(HedgePolicy.Config.builder()
+                .delayMillis(1000)
+                .budgetRatio(1)
+                .build());
+        loadBalancer.registerAll(List.of(new Provider("P1"), new Provider("P2")));
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(loadBalancer.getAsync().get(5, TimeUnit.SECONDS)).endsWith("P1");
+        }
+        assertThat(loadBalancer.getMetrics().getHedges()).isZero();
+    }
+
+    @Test
+    void hedgingIsLimitedByTheBudget() throws Exception {
+
+        LoadBalancerImpl loadBalancer = loadBalancer(HedgePolicy.Config.builder()
+                .delayMillis(10)
+                .budgetRatio(0)
+                .build());
+        loadBalancer.registerAll(List.of(slowProvider("slow"), new Provider("fast")));
+
+        executor.execute(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        });
+        assertThat(loadBalancer.getAsync().get(5, TimeUnit.SECONDS)).endsWith("SLOW");
+        assertThat(loadBalancer.getMetrics().getHedges()).isZero();
+    }
+
+    @Test
+    void budget_earnsAFractionOfATokenPerRequest() {
+
+        HedgePolicy policy = new HedgePolicy(HedgePolicy.Config.builder().budgetRatio(0.1).maxBurst(1).build());
+
+        assertThat(policy.tryAcquire()).isFalse();
+        for (int i = 0; i < 100; i++) {
+            policy.onRequest();
+        }
+        assertThat(policy.tryAcquire()).isTrue();
+        assertThat(policy.tryAcquire()).isFalse();
+    }
+
+    @Test
+    void delay_isDerivedFromThePercentile() {
+
+        HedgePolicy policy = new HedgePolicy(HedgePolicy.Config.builder()
+                .defaultDelayMillis(50)
+                .minimumSamples(100)
+                .delayRefreshMillis(0)
+                .build());
+        LatencyHistogram responseTimes = new LatencyHistogram();
+
+        assertThat(policy.getDelayNanos(responseTimes)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+
+        for (int i = 0; i < 95; i++) {
+            responseTimes.record(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+        for (int i = 0; i < 5; i++) {
+            responseTimes.record(TimeUnit.SECONDS.toNanos(1));
+        }
+        assertThat(policy.getDelayNanos(responseTimes))
+                .isBetween(TimeUnit.MILLISECONDS.toNanos(10), TimeUnit.MILLISECONDS.toNanos(12));
+    }
+
+    /**
+     * The first provider is always picked first, so the hedged request goes to the other one.
+     */
+    private LoadBalancerImpl loadBalancer(HedgePolicy.Config hedging) {
+        return LoadBalancerImpl.builder()
+                .selectionStrategy(totalProviders -> 0)
+                .maxRetryCount(1)
+                .dispatchExecutor(executor)
+                .hedging(hedging)
+                .build();
+    }
+
+    private Provider slowProvider(String id) {
+        return new Provider(id) {
+            @Override
+            public String provide() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.provide();
+            }
+        };
+    }
+}
@@ -0,0 +1,129 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.BackendErrorException;
+import com.qbros.lb.core.HttpProvider;
+import com.qbros.lb.core.LeastOutstandingSelection;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HttpProviderTest {
+
+    private HttpServer server;
+    //remote ports of the connections accepted by the stub server
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    @BeforeEach
+    void startStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            byte[] requestBody = exchange.getRequestBody().readAllBytes();
+            String response = exchange.getRequestMethod() + " " + exchange.getRequestURI()
+                    + " " + exchange.getRequestHeaders().getFirst("X-Tenant")
+                    + " " + new String(requestBody, StandardCharsets.UTF_8);
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("X-Backend", "stub");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopStubServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void forward_methodPathHeadersAndBody() throws Exception {
+
+        HttpProvider provider = new HttpProvider("stub", "127.0.0.1", server.getAddress().getPort());
+
+        HttpResponse<InputStream> response = provider.forward("POST", "/orders?page=2",
+                        Map.of("X-Tenant", List.of("t1"), "Connection", List.of("close")),
+                        HttpRequest.BodyPublishers.ofString("payload"))
+                .get(5, TimeUnit.SECONDS);
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.headers().firstValue("X-Backend")).contains("stub");
+        try (InputStream body = response.body()) {
+            assertThat(new String(body.readAllBytes(), StandardCharsets.UTF_8))
+                    .isEqualTo("POST /orders?page=2 t1 payload");
+        }
+    }
+
+    @Test
+    void provide_reusesKeepAliveConnections() throws Exception {
+
+        HttpProvider provider = new HttpProvider("stub", "127.0.0.1", server.getAddress().getPort());
+        LoadBalancerImpl loadBalancer = LoadBalancerImpl.builder()
+                .selectionStrategy(new LeastOutstandingSelection())
+                .build();
+        loadBalancer.include(provider);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(loadBalancer.get()).isEqualTo("GET / null ");
+            assertThat(loadBalancer.getAsync().get(5, TimeUnit.SECONDS)).isEqualTo("GET / null ");
+        }
+
+        assertThat(clientPorts).hasSize(1);
+        assertThat(provider.getOutstandingRequests()).isZero();
+    }
+
+    @Test
+    void provide_serverErrorIsAFailure() throws IOException {
+
+        HttpServer failing = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        failing.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        failing.start();
+        try {
+            HttpProvider provider = new HttpProvider("failing", "127.0.0.1", failing.getAddress().getPort());
+            LoadBalancerImpl loadBalancer = LoadBalancerImpl.builder().build();
+            loadBalancer.include(provider);
+
+            assertThatThrownBy(loadBalancer::get).isInstanceOf(BackendErrorException.class);
+            assertThatThrownBy(() -> loadBalancer.getAsync().get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(BackendErrorException.class);
+            assertThat(provider.getMetrics().getFailures()).isEqualTo(2);
+        } finally {
+            failing.stop(0);
+        }
+    }
+
+    @Test
+    void check_connectsToTheBackend() throws IOException {
+
+        int closedPort;
+        try (ServerSocket unused = new ServerSocket(0)) {
+            closedPort = unused.getLocalPort();
+        }
+
+        assertThat(new HttpProvider("stub", "127.0.0.1", server.getAddress().getPort()).check()).isTrue();
+        assertThat(new HttpProvider("down", "127.0.0.1", closedPort).check()).isFalse();
+    }
+}
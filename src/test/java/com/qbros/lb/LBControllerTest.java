@@ -0,0 +1,77 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.RandomSelection;
+import com.qbros.lb.core.RoundRobinSelection;
+import com.qbros.lb.core.SelectionStrategy;
+import com.qbros.lb.infrastructure.ProxyLBController;
+import com.qbros.lb.infrastructure.RandomLBController;
+import com.qbros.lb.infrastructure.RoundRobinLBController;
+import com.qbros.lb.infrastructure.TcpProxyController;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class LBControllerTest {
+
+    private final List<LoadBalancerImpl> loadBalancers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        loadBalancers.forEach(LoadBalancerImpl::close);
+    }
+
+    @Test
+    void unknownProvider_isNotFound() throws Exception {
+
+        LoadBalancerImpl random = loadBalancer(new RandomSelection());
+        LoadBalancerImpl roundRobin = loadBalancer(new RoundRobinSelection());
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(
+                new RandomLBController(random, Optional.empty()),
+                new RoundRobinLBController(roundRobin, Optional.empty())).build();
+
+        for (String path : List.of("/lb/random/exclude/P42", "/lb/random/include/P42",
+                "/lb/roundrobin/exclude/RR-P42", "/lb/roundrobin/include/RR-P42")) {
+            mvc.perform(post(path)).andExpect(status().isNotFound());
+        }
+        assertThat(random.getProviders()).hasSize(10);
+        assertThat(roundRobin.getProviders()).hasSize(10);
+
+        mvc.perform(post("/lb/random/exclude/P1")).andExpect(status().isOk());
+        assertThat(random.getProviders()).hasSize(9);
+    }
+
+    @Test
+    void unknownBackend_isNotFound() throws Exception {
+
+        LoadBalancerImpl proxy = loadBalancer(new RoundRobinSelection());
+        LoadBalancerImpl tcp = loadBalancer(new RoundRobinSelection());
+        MockMvc mvc = MockMvcBuilders.standaloneSetup(new ProxyLBController(proxy), new TcpProxyController(tcp))
+                .build();
+
+        for (String path : List.of("/lb/proxy/exclude/B1", "/lb/proxy/include/B1",
+                "/lb/tcp/exclude/B1", "/lb/tcp/include/B1")) {
+            mvc.perform(post(path)).andExpect(status().isNotFound());
+        }
+
+        mvc.perform(post("/lb/proxy/backends/B1").param("host", "localhost").param("port", "9000"))
+                .andExpect(status().isOk());
+        mvc.perform(post("/lb/proxy/exclude/B1")).andExpect(status().isOk());
+        assertThat(proxy.getProviders()).isEmpty();
+    }
+
+    private LoadBalancerImpl loadBalancer(SelectionStrategy strategy) {
+        LoadBalancerImpl loadBalancer = LoadBalancerImpl.builder().selectionStrategy(strategy).build();
+        loadBalancers.add(loadBalancer);
+        return loadBalancer;
+    }
+}
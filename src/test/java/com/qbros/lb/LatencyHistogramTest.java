@@ -0,0 +1,101 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.LatencyHistogram;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.NoProviderAvailableException;
+import com.qbros.lb.core.Provider;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LatencyHistogramTest {
+
+    @Test
+    void bucketsAreContiguous() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int bucket = 1; bucket < histogram.getBucketCount(); bucket++) {
+            assertThat(histogram.getUpperBoundMicros(bucket)).isGreaterThan(histogram.getUpperBoundMicros(bucket - 1));
+        }
+        assertThat(histogram.getUpperBoundMicros(histogram.getBucketCount() - 1))
+                .isEqualTo(LatencyHistogram.MAX_MICROS + 1);
+    }
+
+    @Test
+    void getValueAtPercentile_withinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        assertThat(histogram.getTotalCount()).isEqualTo(100);
+        assertThat(histogram.getValueAtPercentile(50)).isBetween(ms(50), ms(50 * 1.125));
+        assertThat(histogram.getValueAtPercentile(95)).isBetween(ms(95), ms(95 * 1.125));
+        assertThat(histogram.getValueAtPercentile(100)).isBetween(ms(100), ms(100 * 1.125));
+        assertThat(histogram.getTotalNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5050));
+    }
+
+    @Test
+    void record_concurrentRecordersOfANewBucketAreAllCounted() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] recorders = new Thread[8];
+        for (int i = 0; i < recorders.length; i++) {
+            recorders[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (long micros = 1; micros <= LatencyHistogram.MAX_MICROS; micros *= 2) {
+                    histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+                }
+            });
+            recorders[i].start();
+        }
+        start.countDown();
+        for (Thread recorder : recorders) {
+            recorder.join();
+        }
+
+        assertThat(histogram.getTotalCount()).isEqualTo(8 * 26);
+        assertThat(histogram.getCount(histogram.getBucketCount() - 1)).isZero();
+    }
+
+    @Test
+    void record_outOfRangeValuesAreClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(TimeUnit.HOURS.toNanos(1));
+
+        assertThat(histogram.getCount(0)).isEqualTo(1);
+        assertThat(histogram.getCount(histogram.getBucketCount() - 1)).isEqualTo(1);
+    }
+
+    @Test
+    void loadBalancerAndProviderMetricsAreRecorded() {
+        Provider provider = new Provider("P1");
+        LoadBalancerImpl loadBalancer = LoadBalancerImpl.builder().maxRetryCount(2).build();
+        loadBalancer.include(provider);
+
+        for (int i = 0; i < 10; i++) {
+            loadBalancer.get();
+        }
+        provider.setAlive(false);
+        assertThatThrownBy(loadBalancer::get).isInstanceOf(NoProviderAvailableException.class);
+
+        assertThat(provider.getMetrics().getRequests()).isEqualTo(10);
+        assertThat(provider.getMetrics().getResponseTimes().getTotalCount()).isEqualTo(10);
+        assertThat(loadBalancer.getMetrics().getRequests()).isEqualTo(10);
+        assertThat(loadBalancer.getMetrics().getRetries()).isEqualTo(3);
+        assertThat(loadBalancer.getMetrics().getUnserved()).isEqualTo(1);
+        assertThat(loadBalancer.getMetrics().getFailures()).isZero();
+    }
+
+    private long ms(double millis) {
+        return (long) (millis * 1_000_000);
+    }
+}
@@ -0,0 +1,80 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.LeastOutstandingSelection;
+import com.qbros.lb.core.LoadBalancer;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.Provider;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LeastOutstandingSelectionTest {
+
+    @Test
+    void pick_prefersTheLessLoadedProvider() {
+
+        LeastOutstandingSelection selection = new LeastOutstandingSelection();
+        Provider busy = new Provider("busy");
+        Provider idle = new Provider("idle");
+        busy.beginRequest();
+        busy.beginRequest();
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(selection.pick(List.of(busy, idle))).isEqualTo(1);
+        }
+
+        busy.endRequest();
+        busy.endRequest();
+        idle.beginRequest();
+        assertThat(selection.pick(List.of(busy, idle))).isEqualTo(0);
+    }
+
+    @Test
+    void pick_singleProvider() {
+        assertThat(new LeastOutstandingSelection().pick(List.of(new Provider("only")))).isEqualTo(0);
+    }
+
+    @Test
+    void get_requestIsOutstandingForTheWholeDispatch() throws InterruptedException {
+
+        CountDownLatch dispatched = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Provider slow = new Provider("slow") {
+            @Override
+            public String provide() {
+                dispatched.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.provide();
+            }
+        };
+        Provider fast = new Provider("fast");
+        LoadBalancer loadBalancer = LoadBalancerImpl.builder().selectionStrategy(new LeastOutstandingSelection()).build();
+        loadBalancer.include(slow);
+
+        ExecutorService service = Executors.newSingleThreadExecutor();
+        service.execute(loadBalancer::get);
+        assertThat(dispatched.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(slow.getOutstandingRequests()).isEqualTo(1);
+
+        //while the slow provider is busy, every new request goes to the fast one
+        loadBalancer.include(fast);
+        for (int i = 0; i < 20; i++) {
+            assertThat(loadBalancer.get()).endsWith("FAST");
+        }
+
+        release.countDown();
+        service.shutdown();
+        assertThat(service.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(slow.getOutstandingRequests()).isZero();
+    }
+}
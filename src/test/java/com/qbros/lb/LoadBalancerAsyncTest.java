@@ -0,0 +1,122 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.InvalidRequestException;
+import com.qbros.lb.core.LoadBalancer;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.Provider;
+import com.qbros.lb.core.RoundRobinSelection;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LoadBalancerAsyncTest {
+
+    @Test
+    void getAsync_skipsDeadProviders() throws Exception {
+
+        Provider dead = new Provider("dead");
+        dead.setAlive(false);
+        LoadBalancer loadBalancer = LoadBalancerImpl.builder()
+                .selectionStrategy(new RoundRobinSelection())
+                .maxRetryCount(1)
+                .build();
+        loadBalancer.registerAll(List.of(dead, new Provider("alive")));
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(loadBalancer.getAsync().get(5, TimeUnit.SECONDS)).endsWith("ALIVE");
+        }
+    }
+
+    @Test
+    void getAsync_noProviders() {
+
+        LoadBalancer loadBalancer = LoadBalancerImpl.builder().build();
+
+        assertThatThrownBy(() -> loadBalancer.getAsync().get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasMessageContaining("No providers available");
+    }
+
+    @Test
+    void getAsync_doesNotBlockTheCaller() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        Provider slow = new Provider("slow") {
+            @Override
+            public String provide() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.provide();
+            }
+        };
+        LoadBalancer loadBalancer = LoadBalancerImpl.builder()
+                .dispatchExecutor(Executors.newCachedThreadPool())
+                .build();
+        loadBalancer.include(slow);
+
+        CompletableFuture<String> result = loadBalancer.getAsync();
+        assertThat(result).isNotDone();
+        assertThat(slow.getOutstandingRequests()).isEqualTo(1);
+
+        release.countDown();
+        assertThat(result.get(5, TimeUnit.SECONDS)).endsWith("SLOW");
+        assertThat(slow.getOutstandingRequests()).isZero();
+    }
+
+    @Test
+    void getBatch_callsConsecutiveProviders() {
+
+        LoadBalancer loadBalancer = LoadBalancerImpl.builder()
+                .selectionStrategy(new RoundRobinSelection())
+                .build();
+        loadBalancer.registerAll(List.of(new Provider("P0"), new Provider("P1"), new Provider("P2")));
+
+        List<String> results = loadBalancer.getBatch(4);
+
+        assertThat(results).hasSize(4);
+        assertThat(results.get(0)).endsWith("P1");
+        assertThat(results.get(1)).endsWith("P2");
+        assertThat(results.get(2)).endsWith("P0");
+        assertThat(results.get(3)).endsWith("P1");
+    }
+
+    @Test
+    void getBatchAsync_replacesDeadProviders() throws Exception {
+
+        Provider dead = new Provider("dead");
+        dead.setAlive(false);
+        LoadBalancer loadBalancer = LoadBalancerImpl.builder()
+                .selectionStrategy(new RoundRobinSelection())
+                .build();
+        loadBalancer.registerAll(List.of(dead, new Provider("alive")));
+
+        assertThat(loadBalancer.getBatchAsync(6).get(5, TimeUnit.SECONDS))
+                .hasSize(6)
+                .allSatisfy(result -> assertThat(result).endsWith("ALIVE"));
+        assertThatThrownBy(() -> loadBalancer.getBatch(0)).isInstanceOf(InvalidRequestException.class);
+    }
+
+    @Test
+    void oversizedBatch_failsAsynchronously() {
+
+        LoadBalancer loadBalancer = LoadBalancerImpl.builder().maxBatchSize(8).build();
+        loadBalancer.include(new Provider("P1"));
+
+        CompletableFuture<List<String>> batch = loadBalancer.getBatchAsync(9);
+
+        assertThat(batch).isCompletedExceptionally();
+        assertThatThrownBy(batch::join).hasCauseInstanceOf(InvalidRequestException.class);
+        assertThat(loadBalancer.getBatch(8)).hasSize(8);
+    }
+}
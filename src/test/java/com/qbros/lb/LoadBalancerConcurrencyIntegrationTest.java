@@ -1,9 +1,9 @@
 package com.qbros.lb;
 
+import com.qbros.lb.core.CopyOnWriteUniqueList;
 import com.qbros.lb.core.LoadBalancer;
 import com.qbros.lb.core.LoadBalancerImpl;
 import com.qbros.lb.core.Provider;
-import com.qbros.lb.core.UniqueList;
 import org.junit.jupiter.api.RepeatedTest;
 import org.springframework.test.util.ReflectionTestUtils;
 
@@ -45,7 +45,7 @@ class LoadBalancerConcurrencyIntegrationTest {
                 .mapToObj(it -> new Provider("P" + it))
                 .collect(Collectors.toList());
 
-        UniqueList<Provider> providers = getProviders(loadBalancer);
+        CopyOnWriteUniqueList<Provider> providers = getProviders(loadBalancer);
         assert providers != null;
         assertThat(providers.getContent()).containsExactlyInAnyOrderElementsOf(expectedContent);
     }
@@ -66,7 +66,7 @@ class LoadBalancerConcurrencyIntegrationTest {
             });
         }
         latch.await();
-        UniqueList<Provider> providers = getProviders(loadBalancer);
+        CopyOnWriteUniqueList<Provider> providers = getProviders(loadBalancer);
         assert providers != null;
         assertThat(providers.getSize()).isEqualTo(100);
     }
@@ -91,7 +91,7 @@ class LoadBalancerConcurrencyIntegrationTest {
         }
 
         latch.await();
-        UniqueList<Provider> providers = getProviders(loadBalancer);
+        CopyOnWriteUniqueList<Provider> providers = getProviders(loadBalancer);
         assert providers != null;
         assertEquals(0, providers.getSize());
         assertThat(providers.getContent()).isEmpty();
@@ -114,14 +114,14 @@ class LoadBalancerConcurrencyIntegrationTest {
         });
 
         Thread.sleep(2000);
-        UniqueList<Provider> actualProviders = getProviders(loadBalancer);
+        CopyOnWriteUniqueList<Provider> actualProviders = getProviders(loadBalancer);
         String expected = actualProviders.getAtIndex(2).getId();
         assertThat(expected).isEqualTo("p3");
     }
 
 
     @SuppressWarnings("unchecked")
-    private UniqueList<Provider> getProviders(LoadBalancer loadBalancer) {
-        return (UniqueList<Provider>) ReflectionTestUtils.getField(loadBalancer, LoadBalancerImpl.class, "providers");
+    private CopyOnWriteUniqueList<Provider> getProviders(LoadBalancer loadBalancer) {
+        return (CopyOnWriteUniqueList<Provider>) ReflectionTestUtils.getField(loadBalancer, LoadBalancerImpl.class, "providers");
     }
 }
@@ -0,0 +1,160 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.CircuitBreaker;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.Provider;
+import com.qbros.lb.core.RoundRobinSelection;
+import com.qbros.lb.infrastructure.LoadBalancerMetricsController;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetricsExpositionTest {
+
+    private static final Pattern TYPE = Pattern.compile("# TYPE ([a-zA-Z_:][a-zA-Z0-9_:]*) (counter|gauge|histogram)");
+    private static final Pattern HELP = Pattern.compile("# HELP ([a-zA-Z_:][a-zA-Z0-9_:]*) \\S.*");
+    private static final String LABEL = "[a-zA-Z_][a-zA-Z0-9_]*=\"(?:[^\"\\\\\\n]|\\\\[\\\\\"n])*\"";
+    private static final Pattern SAMPLE = Pattern.compile("([a-zA-Z_:][a-zA-Z0-9_:]*)\\{(" + LABEL + "(?:," + LABEL
+            + ")*)} (-?[0-9]+(?:\\.[0-9]+)?(?:[eE][-+]?[0-9]+)?)");
+    private static final Pattern LE = Pattern.compile(".*le=\"([^\"]+)\".*");
+
+    private LoadBalancerImpl loadBalancer;
+
+    @AfterEach
+    void tearDown() {
+        if (loadBalancer != null) {
+            loadBalancer.close();
+        }
+    }
+
+    @Test
+    void metrics_followThePrometheusTextFormat() {
+
+        String exposition = scrape();
+
+        Map<String, String> types = new HashMap<>();
+        Set<String> helps = new HashSet<>();
+        Set<String> finishedFamilies = new HashSet<>();
+        String currentFamily = null;
+        for (String line : exposition.split("\n")) {
+            Matcher type = TYPE.matcher(line);
+            Matcher help = HELP.matcher(line);
+            if (help.matches()) {
+                assertThat(helps.add(help.group(1))).as("HELP declared once: %s", line).isTrue();
+                continue;
+            }
+            if (type.matches()) {
+                assertThat(helps).as("HELP before TYPE: %s", line).contains(type.group(1));
+                assertThat(types.put(type.group(1), type.group(2))).as("TYPE declared once: %s", line).isNull();
+                continue;
+            }
+            Matcher sample = SAMPLE.matcher(line);
+            assertThat(sample.matches()).as("valid sample: %s", line).isTrue();
+
+            String family = family(sample.group(1), types);
+            assertThat(types).as("TYPE before the samples: %s", line).containsKey(family);
+            //the samples of a family are not interleaved with other families
+            if (!family.equals(currentFamily)) {
+                assertThat(finishedFamilies.add(family)).as("contiguous samples: %s", line).isTrue();
+                currentFamily = family;
+            }
+            if (types.get(family).equals("counter")) {
+                assertThat(sample.group(1)).endsWith("_total");
+            }
+        }
+        assertThat(exposition).endsWith("\n");
+    }
+
+    @Test
+    void histograms_areCumulativeAndEndWithInf() {
+
+        String exposition = scrape();
+
+        List<String> buckets = new ArrayList<>();
+        for (String line : exposition.split("\n")) {
+            if (line.startsWith("lb_provider_response_time_seconds_bucket{balancer=\"metrics LB\",provider=\"P1\"")) {
+                buckets.add(line);
+            }
+        }
+        assertThat(buckets).isNotEmpty();
+        double previousLe = 0;
+        long previousCount = 0;
+        for (String bucket : buckets) {
+            Matcher le = LE.matcher(bucket);
+            assertThat(le.matches()).isTrue();
+            double bound = le.group(1).equals("+Inf") ? Double.POSITIVE_INFINITY : Double.parseDouble(le.group(1));
+            long count = Long.parseLong(bucket.substring(bucket.lastIndexOf(' ') + 1));
+            assertThat(bound).isGreaterThan(previousLe);
+            assertThat(count).isGreaterThanOrEqualTo(previousCount);
+            previousLe = bound;
+            previousCount = count;
+        }
+        assertThat(buckets.get(buckets.size() - 1)).contains("le=\"+Inf\"");
+        assertThat(exposition)
+                .contains("lb_provider_response_time_seconds_count{balancer=\"metrics LB\",provider=\"P1\"} "
+                        + previousCount + "\n");
+    }
+
+    @Test
+    void ejectedProvider_keepsItsSeries() {
+
+        String exposition = scrape();
+
+        assertThat(loadBalancer.getProviders()).extracting(Provider::getId).containsExactly("P1");
+        assertThat(exposition)
+                .contains("lb_provider_up{balancer=\"metrics LB\",provider=\"P1\"} 1\n")
+                .contains("lb_provider_up{balancer=\"metrics LB\",provider=\"P2\"} 0\n")
+                .contains("lb_provider_failures_total{balancer=\"metrics LB\",provider=\"P2\"} 1\n")
+                .contains("lb_provider_ejections_total{balancer=\"metrics LB\",provider=\"P2\"} 1\n")
+                .contains("lb_provider_response_time_seconds_count{balancer=\"metrics LB\",provider=\"P2\"} 1\n");
+    }
+
+    /**
+     * P2 fails its first request and stays ejected for the whole test.
+     */
+    private String scrape() {
+        Provider broken = new Provider("P2") {
+            @Override
+            public String provide() {
+                throw new IllegalStateException("backend error");
+            }
+        };
+        loadBalancer = LoadBalancerImpl.builder()
+                .name("metrics LB")
+                .selectionStrategy(new RoundRobinSelection())
+                .circuitBreaker(CircuitBreaker.Config.builder()
+                        .consecutiveFailureThreshold(1)
+                        .openBackoffMillis(60_000)
+                        .build())
+                .build();
+        loadBalancer.registerAll(List.of(new Provider("P1"), broken));
+        for (int i = 0; i < 4; i++) {
+            try {
+                loadBalancer.get();
+            } catch (IllegalStateException e) {
+                //the request sent to P2
+            }
+        }
+        return new LoadBalancerMetricsController(List.of(loadBalancer)).metrics();
+    }
+
+    private static String family(String name, Map<String, String> types) {
+        for (String suffix : List.of("_bucket", "_sum", "_count")) {
+            String base = name.substring(0, name.length() - Math.min(name.length(), suffix.length()));
+            if (name.endsWith(suffix) && "histogram".equals(types.get(base))) {
+                return base;
+            }
+        }
+        return name;
+    }
+}
@@ -0,0 +1,103 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.PeakEwma;
+import com.qbros.lb.core.PeakEwmaSelection;
+import com.qbros.lb.core.Provider;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class PeakEwmaSelectionTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    void peakEwma_reactsToSpikesImmediately() {
+
+        PeakEwma ewma = new PeakEwma(TimeUnit.SECONDS.toNanos(10));
+        for (int i = 0; i < 100; i++) {
+            ewma.observe(MILLIS);
+        }
+        assertThat(ewma.get()).isLessThanOrEqualTo(MILLIS);
+
+        ewma.observe(500 * MILLIS);
+        assertThat(ewma.get()).isGreaterThan(400 * MILLIS);
+    }
+
+    @Test
+    void peakEwma_decaysWithoutSamples() throws InterruptedException {
+
+        PeakEwma ewma = new PeakEwma(TimeUnit.MILLISECONDS.toNanos(50));
+        ewma.observe(100 * MILLIS);
+
+        Thread.sleep(300);
+
+        assertThat(ewma.get()).isLessThan(MILLIS);
+    }
+
+    @Test
+    void peakEwma_blendsTheDecayOnlyOnce() {
+
+        AtomicLong clock = new AtomicLong();
+        PeakEwma ewma = new PeakEwma(100 * MILLIS, clock::get);
+        ewma.observe(100 * MILLIS);
+
+        //the weight of the average is 0.5 after ln(2) * decay
+        clock.set(Math.round(Math.log(2) * 100 * MILLIS));
+        assertThat(ewma.get()).isCloseTo(50.0 * MILLIS, within(0.001 * MILLIS));
+        ewma.observe(20 * MILLIS);
+
+        //100 * 0.5 + 20 * 0.5, not the decayed 50 decayed again
+        assertThat(ewma.get()).isCloseTo(60.0 * MILLIS, within(0.001 * MILLIS));
+    }
+
+    @Test
+    void pick_prefersTheFasterProvider() {
+
+        Provider slow = new Provider("slow");
+        Provider fast = new Provider("fast");
+        slow.recordResponseTime(200 * MILLIS);
+        fast.recordResponseTime(2 * MILLIS);
+        PeakEwmaSelection selection = new PeakEwmaSelection();
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(selection.pick(List.of(slow, fast))).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void pick_outstandingRequestsAreConsidered() {
+
+        Provider busy = new Provider("busy");
+        Provider idle = new Provider("idle");
+        busy.recordResponseTime(10 * MILLIS);
+        idle.recordResponseTime(30 * MILLIS);
+        for (int i = 0; i < 5; i++) {
+            busy.beginRequest();
+        }
+
+        //10ms * 6 outstanding is worse than 30ms * 1
+        assertThat(new PeakEwmaSelection().pick(List.of(busy, idle))).isEqualTo(1);
+    }
+
+    @Test
+    void pick_busyProviderWithoutResponseTimeIsPenalized() {
+
+        Provider unknown = new Provider("unknown");
+        Provider known = new Provider("known");
+        known.recordResponseTime(500 * MILLIS);
+        known.beginRequest();
+        unknown.beginRequest();
+
+        //without any sample, the outstanding request is what counts
+        assertThat(new PeakEwmaSelection().pick(List.of(unknown, known))).isEqualTo(1);
+
+        Provider idleUnknown = new Provider("idle");
+        assertThat(new PeakEwmaSelection().pick(List.of(unknown, idleUnknown))).isEqualTo(1);
+    }
+}
@@ -0,0 +1,100 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.LoadBalancer;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.Provider;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PlatformThreadModeTest {
+
+    @Test
+    void providerCallsAndProbes_runOnTheNamedPoolsOfTheLoadBalancer() throws Exception {
+
+        Set<String> callThreads = ConcurrentHashMap.newKeySet();
+        Set<String> probeThreads = ConcurrentHashMap.newKeySet();
+        try (LoadBalancer loadBalancer = LoadBalancerImpl.builder().name("platform").build()) {
+            loadBalancer.registerAll(List.of(new Provider("P1") {
+                @Override
+                public String provide() {
+                    callThreads.add(Thread.currentThread().getName());
+                    return super.provide();
+                }
+
+                @Override
+                public boolean isAlive() {
+                    probeThreads.add(Thread.currentThread().getName());
+                    return true;
+                }
+            }));
+
+            assertThat(loadBalancer.getAsync().get(5, TimeUnit.SECONDS)).endsWith("P1");
+            loadBalancer.checkProviders();
+        }
+
+        assertThat(callThreads).containsExactly("lb-platform-dispatch-0");
+        //the registration checks the provider on the caller thread
+        assertThat(probeThreads).contains("lb-platform-background-0");
+    }
+
+    @Test
+    void blockingProviderCalls_areBoundedByThePoolSize() {
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        try (LoadBalancer loadBalancer = LoadBalancerImpl.builder().maxThreads(2).build()) {
+            loadBalancer.registerAll(List.of(new Provider("P1", 10) {
+                @Override
+                public String provide() {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                    return super.provide();
+                }
+            }));
+
+            CompletableFuture<?>[] calls = IntStream.range(0, 8)
+                    .mapToObj(i -> loadBalancer.getAsync())
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(calls).join();
+        }
+
+        assertThat(maxRunning).hasValue(2);
+    }
+
+    @Test
+    void close_shutsThePoolsDown() throws Exception {
+
+        try (LoadBalancer loadBalancer = LoadBalancerImpl.builder().name("closed").build()) {
+            loadBalancer.registerAll(List.of(new Provider("P1")));
+            loadBalancer.getAsync().get(5, TimeUnit.SECONDS);
+            loadBalancer.checkProviders();
+        }
+
+        //the idle workers of a shut down pool end right away, without waiting for the keep alive
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (hasThreads("lb-closed-") && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(hasThreads("lb-closed-")).isFalse();
+    }
+
+    private static boolean hasThreads(String namePrefix) {
+        return Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.getName().startsWith(namePrefix));
+    }
+}
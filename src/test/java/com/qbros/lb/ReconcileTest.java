@@ -0,0 +1,150 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.CircuitBreaker;
+import com.qbros.lb.core.Diff;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.Provider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReconcileTest {
+
+    private LoadBalancerImpl loadBalancer;
+
+    @AfterEach
+    void tearDown() {
+        if (loadBalancer != null) {
+            loadBalancer.close();
+        }
+    }
+
+    @Test
+    void reconcile_appliesTheDiff() {
+
+        Provider p1 = new Provider("P1", 5);
+        Provider p2 = new Provider("P2", 5);
+        Provider p3 = new Provider("P3", 5);
+        loadBalancer = LoadBalancerImpl.builder().build();
+        loadBalancer.registerAll(List.of(p1, p2));
+
+        Diff<Provider> diff = loadBalancer.reconcile(List.of(p2, p3));
+
+        assertThat(diff.getAdded()).containsExactly(p3);
+        assertThat(diff.getRemoved()).containsExactly(p1);
+        assertThat(loadBalancer.getProviders()).containsExactlyInAnyOrder(p2, p3);
+        assertThat(loadBalancer.getAdmissionControl().getAvailablePermits()).isEqualTo(10);
+        assertThat(loadBalancer.reconcile(List.of(p3, p2)).isEmpty()).isTrue();
+    }
+
+    @Test
+    void reconcile_replacesOtherInstancesOfTheSameProvider() {
+
+        Provider small = new Provider("P1", 5);
+        Provider large = new Provider("P1", 50);
+        loadBalancer = LoadBalancerImpl.builder().build();
+        loadBalancer.registerAll(List.of(small));
+
+        Diff<Provider> diff = loadBalancer.reconcile(List.of(large));
+
+        assertThat(diff.getAdded()).singleElement().isSameAs(large);
+        assertThat(diff.getRemoved()).singleElement().isSameAs(small);
+        assertThat(loadBalancer.getProviders()).singleElement().isSameAs(large);
+        assertThat(loadBalancer.getAdmissionControl().getAvailablePermits()).isEqualTo(50);
+    }
+
+    @Test
+    void reconcile_ejectedProviderComesBackAsItsNewInstance() throws InterruptedException {
+
+        Provider broken = backend("P1", false);
+        Provider moved = backend("P1", true);
+        loadBalancer = LoadBalancerImpl.builder()
+                .circuitBreaker(CircuitBreaker.Config.builder()
+                        .consecutiveFailureThreshold(1)
+                        .openBackoffMillis(200)
+                        .build())
+                .build();
+        loadBalancer.include(broken);
+        assertThatThrownBy(loadBalancer::get).isInstanceOf(IllegalStateException.class);
+        assertThat(loadBalancer.getProviders()).isEmpty();
+
+        //the address of the ejected provider changed, it still waits for its backoff
+        assertThat(loadBalancer.reconcile(List.of(moved)).isEmpty()).isTrue();
+        assertThat(loadBalancer.getProviders()).isEmpty();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (loadBalancer.getProviders().isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(loadBalancer.getProviders()).singleElement().isSameAs(moved);
+        assertThat(loadBalancer.get()).endsWith("P1");
+    }
+
+    @Test
+    void reconcile_exceedingTheCapacityChangesNothing() {
+
+        loadBalancer = LoadBalancerImpl.builder().maxCapacity(2).build();
+        List<Provider> current = List.of(new Provider("P1"), new Provider("P2"));
+        loadBalancer.registerAll(current);
+
+        assertThatThrownBy(() -> loadBalancer.reconcile(fleet("N", 3)))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(loadBalancer.getProviders()).containsExactlyInAnyOrderElementsOf(current);
+    }
+
+    @Test
+    void readers_neverSeeAHalfAppliedChange() throws Exception {
+
+        List<Provider> blue = fleet("BLUE-", 100);
+        List<Provider> green = fleet("GREEN-", 100);
+        loadBalancer = LoadBalancerImpl.builder().maxCapacity(200).build();
+        loadBalancer.registerAll(blue);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        CompletableFuture<Void> reader = CompletableFuture.runAsync(() -> {
+            while (running.get()) {
+                List<Provider> providers = loadBalancer.getProviders();
+                String color = providers.get(0).getId().split("-")[0];
+                assertThat(providers).hasSize(100).allMatch(provider -> provider.getId().startsWith(color + "-"));
+                assertThat(loadBalancer.get()).isNotNull();
+            }
+        });
+
+        for (int i = 0; i < 500 && !reader.isDone(); i++) {
+            loadBalancer.reconcile((i % 2 == 0) ? green : blue);
+        }
+        running.set(false);
+
+        reader.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * All the instances are of the same class, so the ones with the same id are equal.
+     */
+    private static Provider backend(String id, boolean healthy) {
+        return new Provider(id) {
+            @Override
+            public String provide() {
+                if (!healthy) {
+                    throw new IllegalStateException("backend error");
+                }
+                return super.provide();
+            }
+        };
+    }
+
+    private static List<Provider> fleet(String prefix, int size) {
+        return IntStream.range(0, size)
+                .mapToObj(i -> new Provider(prefix + i))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,180 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.Provider;
+import com.qbros.lb.core.ResponseCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ResponseCacheTest {
+
+    private LoadBalancerImpl loadBalancer;
+
+    @AfterEach
+    void tearDown() {
+        if (loadBalancer != null) {
+            loadBalancer.close();
+        }
+    }
+
+    @Test
+    void get_cachesResponsesPerKey() {
+
+        CountingProvider provider = new CountingProvider("P1");
+        loadBalancer = cachingLoadBalancer(ResponseCache.Config.builder().ttlMillis(60_000).build(), provider);
+
+        assertThat(loadBalancer.get("a")).isEqualTo("P1-1");
+        assertThat(loadBalancer.get("a")).isEqualTo("P1-1");
+        assertThat(loadBalancer.get("b")).isEqualTo("P1-2");
+        assertThat(provider.calls.get()).isEqualTo(2);
+        assertThat(loadBalancer.getMetrics().getCacheHits()).isEqualTo(1);
+        assertThat(loadBalancer.getMetrics().getCacheMisses()).isEqualTo(2);
+    }
+
+    @Test
+    void get_withoutKeyIsNotCached() {
+
+        CountingProvider provider = new CountingProvider("P1");
+        loadBalancer = cachingLoadBalancer(ResponseCache.Config.builder().ttlMillis(60_000).build(), provider);
+
+        loadBalancer.get();
+        loadBalancer.get();
+
+        assertThat(provider.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void concurrentRequests_shareOneProviderCall() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        CountingProvider provider = new CountingProvider("P1", release);
+        //a ttl of 0 only shares the calls in flight
+        loadBalancer = cachingLoadBalancer(ResponseCache.Config.builder().ttlMillis(0).build(), provider);
+
+        List<CompletableFuture<String>> calls = IntStream.range(0, 50)
+                .mapToObj(i -> loadBalancer.getAsync("hot"))
+                .collect(Collectors.toList());
+        release.countDown();
+
+        for (CompletableFuture<String> call : calls) {
+            assertThat(call.get(5, TimeUnit.SECONDS)).isEqualTo("P1-1");
+        }
+        assertThat(provider.calls.get()).isEqualTo(1);
+
+        //the call is over, nothing is cached
+        assertThat(loadBalancer.get("hot")).isEqualTo("P1-2");
+    }
+
+    @Test
+    void cancellingOneCaller_doesNotCancelTheSharedCall() throws Exception {
+
+        CountDownLatch release = new CountDownLatch(1);
+        loadBalancer = cachingLoadBalancer(ResponseCache.Config.builder().build(),
+                new CountingProvider("P1", release));
+
+        CompletableFuture<String> first = loadBalancer.getAsync("key");
+        CompletableFuture<String> second = loadBalancer.getAsync("key");
+        first.cancel(true);
+        release.countDown();
+
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("P1-1");
+    }
+
+    @Test
+    void expiredResponses_areReloaded() throws Exception {
+
+        CountingProvider provider = new CountingProvider("P1");
+        loadBalancer = cachingLoadBalancer(ResponseCache.Config.builder().ttlMillis(100).build(), provider);
+
+        assertThat(loadBalancer.get("key")).isEqualTo("P1-1");
+        Thread.sleep(200);
+
+        assertThat(loadBalancer.get("key")).isEqualTo("P1-2");
+    }
+
+    @Test
+    void staleResponses_areServedWhileRevalidated() throws Exception {
+
+        CountingProvider provider = new CountingProvider("P1");
+        loadBalancer = cachingLoadBalancer(ResponseCache.Config.builder()
+                .ttlMillis(100)
+                .staleWhileRevalidateMillis(60_000)
+                .build(), provider);
+
+        assertThat(loadBalancer.get("key")).isEqualTo("P1-1");
+        Thread.sleep(200);
+
+        //stale, but served right away, the reload runs in the background
+        assertThat(loadBalancer.get("key")).isEqualTo("P1-1");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!"P1-2".equals(loadBalancer.get("key")) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(loadBalancer.get("key")).isEqualTo("P1-2");
+        assertThat(provider.calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void failures_areNotCached() {
+
+        AtomicBoolean fail = new AtomicBoolean(true);
+        CountingProvider provider = new CountingProvider("P1") {
+            @Override
+            public String provide() {
+                if (fail.getAndSet(false)) {
+                    throw new IllegalStateException("backend down");
+                }
+                return super.provide();
+            }
+        };
+        loadBalancer = cachingLoadBalancer(ResponseCache.Config.builder().ttlMillis(60_000).build(), provider);
+
+        assertThatThrownBy(() -> loadBalancer.get("key")).hasMessageContaining("backend down");
+        assertThat(loadBalancer.get("key")).isEqualTo("P1-1");
+    }
+
+    private static LoadBalancerImpl cachingLoadBalancer(ResponseCache.Config config, Provider provider) {
+        LoadBalancerImpl loadBalancer = LoadBalancerImpl.builder()
+                .cache(config)
+                .build();
+        loadBalancer.registerAll(List.of(provider));
+        return loadBalancer;
+    }
+
+    private static class CountingProvider extends Provider {
+
+        private final AtomicInteger calls = new AtomicInteger();
+        private final CountDownLatch release;
+
+        CountingProvider(String id) {
+            this(id, new CountDownLatch(0));
+        }
+
+        CountingProvider(String id, CountDownLatch release) {
+            super(id);
+            this.release = release;
+        }
+
+        @Override
+        public String provide() {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return getId() + "-" + calls.incrementAndGet();
+        }
+    }
+}
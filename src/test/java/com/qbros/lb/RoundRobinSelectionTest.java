@@ -1,13 +1,17 @@
 package com.qbros.lb;
 
+import com.qbros.lb.core.Provider;
 import com.qbros.lb.core.RoundRobinSelection;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 class RoundRobinSelectionTest {
 
@@ -44,4 +48,42 @@ class RoundRobinSelectionTest {
         latch.await();
         Assertions.assertEquals(0, robinSelection.pick(total));
     }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 5, 10, 15})
+    void testBatchIsConsecutive(int total) {
+
+        RoundRobinSelection robinSelection = new RoundRobinSelection();
+        List<Provider> providers = IntStream.range(0, total)
+                .mapToObj(i -> new Provider("P" + i))
+                .collect(Collectors.toList());
+        int[] indexes = new int[7];
+
+        robinSelection.pickBatch(providers, indexes);
+
+        for (int i = 0; i < indexes.length; i++) {
+            Assertions.assertEquals((i + 1) % total, indexes[i]);
+        }
+        //the next pick follows the batch
+        Assertions.assertEquals((indexes.length + 1) % total, robinSelection.pick(total));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 7})
+    void testEvenDistributionAfterShrink(int total) {
+
+        RoundRobinSelection robinSelection = new RoundRobinSelection();
+        for (int i = 0; i < 8; i++) {
+            robinSelection.pick(10);
+        }
+
+        int[] counts = new int[total];
+        for (int i = 0; i < total * 100; i++) {
+            counts[robinSelection.pick(total)]++;
+        }
+
+        for (int count : counts) {
+            Assertions.assertEquals(100, count);
+        }
+    }
 }
@@ -0,0 +1,230 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.HttpProvider;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.Provider;
+import com.qbros.lb.core.RoundRobinSelection;
+import com.qbros.lb.infrastructure.TcpProxy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TcpProxyTest {
+
+    private final List<EchoServer> echoServers = new ArrayList<>();
+    private LoadBalancerImpl loadBalancer;
+    private TcpProxy proxy;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (proxy != null) {
+            proxy.close();
+        }
+        if (loadBalancer != null) {
+            loadBalancer.close();
+        }
+        for (EchoServer echoServer : echoServers) {
+            echoServer.close();
+        }
+    }
+
+    @Test
+    void bytes_arePipedBothWays_andHalfCloseIsForwarded() throws Exception {
+
+        start(TcpProxy.Config.builder().build(), backend("B1"));
+
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write("hello".getBytes(StandardCharsets.US_ASCII));
+            //the echo server only sends its id once it sees the end of the stream
+            socket.shutdownOutput();
+
+            assertThat(readAll(socket.getInputStream())).isEqualTo("hello B1");
+        }
+        awaitNoOpenConnection();
+    }
+
+    @Test
+    void connections_areBalanced() throws Exception {
+
+        start(TcpProxy.Config.builder().build(), backend("B1"), backend("B2"));
+
+        List<String> backends = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            try (Socket socket = connect()) {
+                socket.shutdownOutput();
+                backends.add(readAll(socket.getInputStream()).trim());
+            }
+        }
+
+        assertThat(backends).containsExactlyInAnyOrder("B1", "B1", "B2", "B2");
+    }
+
+    @Test
+    void unreachableBackend_isSkipped() throws Exception {
+
+        int closedPort;
+        try (ServerSocket unused = new ServerSocket(0)) {
+            closedPort = unused.getLocalPort();
+        }
+        HttpProvider unreachable = new HttpProvider("DOWN", "127.0.0.1", closedPort);
+        start(TcpProxy.Config.builder().build(), unreachable, backend("B1"));
+
+        for (int i = 0; i < 4; i++) {
+            try (Socket socket = connect()) {
+                socket.shutdownOutput();
+                assertThat(readAll(socket.getInputStream())).isEqualTo(" B1");
+            }
+        }
+        assertThat(unreachable.getMetrics().getFailures()).isPositive();
+    }
+
+    @Test
+    void largeTransfers_areNotCorrupted() throws Exception {
+
+        start(TcpProxy.Config.builder().bufferSize(1024).build(), backend("B1"));
+        byte[] payload = new byte[2 * 1024 * 1024];
+        new Random(42).nextBytes(payload);
+
+        try (Socket socket = connect()) {
+            //written while the echo comes back, the buffers of the proxy are much smaller than the payload
+            CompletableFuture<Void> sent = CompletableFuture.runAsync(() -> {
+                try {
+                    OutputStream out = socket.getOutputStream();
+                    out.write(payload);
+                    socket.shutdownOutput();
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            byte[] received = socket.getInputStream().readAllBytes();
+            sent.get(5, TimeUnit.SECONDS);
+
+            assertThat(received).hasSize(payload.length + 3);
+            assertThat(new String(received, payload.length, 3, StandardCharsets.US_ASCII)).isEqualTo(" B1");
+            for (int i = 0; i < payload.length; i++) {
+                if (received[i] != payload[i]) {
+                    throw new AssertionError("Byte " + i + " differs");
+                }
+            }
+        }
+    }
+
+    @Test
+    void idleConnections_areClosed() throws Exception {
+
+        start(TcpProxy.Config.builder().idleTimeoutMillis(200).build(), backend("B1"));
+
+        try (Socket socket = connect()) {
+            socket.getOutputStream().write("hello".getBytes(StandardCharsets.US_ASCII));
+            byte[] echo = socket.getInputStream().readNBytes(5);
+            assertThat(new String(echo, StandardCharsets.US_ASCII)).isEqualTo("hello");
+
+            long start = System.nanoTime();
+            assertThat(socket.getInputStream().read()).isEqualTo(-1);
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(3000);
+        }
+        awaitNoOpenConnection();
+    }
+
+    @Test
+    void noBackend_closesTheConnection() throws Exception {
+
+        start(TcpProxy.Config.builder().build());
+
+        try (Socket socket = connect()) {
+            assertThat(socket.getInputStream().read()).isEqualTo(-1);
+        }
+        awaitNoOpenConnection();
+    }
+
+    private void start(TcpProxy.Config config, Provider... backends) {
+        loadBalancer = LoadBalancerImpl.builder().selectionStrategy(new RoundRobinSelection()).build();
+        loadBalancer.registerAll(List.of(backends));
+        proxy = new TcpProxy(new InetSocketAddress("127.0.0.1", 0), loadBalancer, config);
+        proxy.start();
+    }
+
+    private HttpProvider backend(String id) throws IOException {
+        EchoServer echoServer = new EchoServer(id);
+        echoServers.add(echoServer);
+        return new HttpProvider(id, "127.0.0.1", echoServer.getPort());
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("127.0.0.1", proxy.getAddress().getPort());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    private void awaitNoOpenConnection() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (proxy.getOpenConnections() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(proxy.getOpenConnections()).isZero();
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        in.transferTo(bytes);
+        return bytes.toString(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Echoes what it receives, then sends {@code " <id>"} and closes once the client closed its output.
+     */
+    private static class EchoServer implements AutoCloseable {
+
+        private final ServerSocket serverSocket;
+
+        EchoServer(String id) throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread acceptor = new Thread(() -> {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        Socket socket = serverSocket.accept();
+                        Thread.ofVirtual().start(() -> echo(socket, id));
+                    } catch (IOException e) {
+                        //closed
+                    }
+                }
+            }, "echo-" + id);
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private static void echo(Socket socket, String id) {
+            try (socket) {
+                socket.getInputStream().transferTo(socket.getOutputStream());
+                socket.getOutputStream().write((" " + id).getBytes(StandardCharsets.US_ASCII));
+            } catch (IOException e) {
+                //closed by the client
+            }
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
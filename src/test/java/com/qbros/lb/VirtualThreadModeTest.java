@@ -0,0 +1,130 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.ExecutionMode;
+import com.qbros.lb.core.HedgePolicy;
+import com.qbros.lb.core.LoadBalancer;
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.Provider;
+import com.qbros.lb.core.RoundRobinSelection;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VirtualThreadModeTest {
+
+    @Test
+    void getAsync_runsProvidersOnVirtualThreads() throws Exception {
+
+        Set<Boolean> virtual = ConcurrentHashMap.newKeySet();
+        try (LoadBalancer loadBalancer = LoadBalancerImpl.builder()
+                .executionMode(ExecutionMode.VIRTUAL)
+                .build()) {
+            loadBalancer.registerAll(List.of(new ThreadRecordingProvider("P1", virtual)));
+
+            assertThat(loadBalancer.getAsync().get(5, TimeUnit.SECONDS)).endsWith("P1");
+        }
+
+        assertThat(virtual).containsExactly(true);
+    }
+
+    @Test
+    void hedgedCalls_runOnVirtualThreads() throws Exception {
+
+        Set<Boolean> virtual = ConcurrentHashMap.newKeySet();
+        try (LoadBalancer loadBalancer = LoadBalancerImpl.builder()
+                .selectionStrategy(new RoundRobinSelection())
+                .executionMode(ExecutionMode.VIRTUAL)
+                .hedging(HedgePolicy.Config.builder().delayMillis(10).budgetRatio(1).build())
+                .build()) {
+            loadBalancer.registerAll(List.of(new ThreadRecordingProvider("P1", virtual, 100),
+                    new ThreadRecordingProvider("P2", virtual, 100)));
+
+            loadBalancer.getAsync("key").get(5, TimeUnit.SECONDS);
+        }
+
+        assertThat(virtual).containsExactly(true);
+    }
+
+    @Test
+    void heartbeatProbes_runOnVirtualThreads() {
+
+        Set<Boolean> virtual = ConcurrentHashMap.newKeySet();
+        try (LoadBalancer loadBalancer = LoadBalancerImpl.builder()
+                .executionMode(ExecutionMode.VIRTUAL)
+                .build()) {
+            loadBalancer.registerAll(List.of(new Provider("P1") {
+                @Override
+                public boolean isAlive() {
+                    virtual.add(Thread.currentThread().isVirtual());
+                    return true;
+                }
+            }));
+
+            loadBalancer.checkProviders();
+        }
+
+        assertThat(virtual).containsExactly(true);
+    }
+
+    @Test
+    void blockingProviders_doNotNeedAThreadPerCall() {
+
+        //10 000 calls sleeping 200ms each, far more than any platform pool this process would create
+        List<Provider> providers = IntStream.range(0, 100)
+                .mapToObj(i -> new ThreadRecordingProvider("P" + i, ConcurrentHashMap.newKeySet(), 200, 100))
+                .collect(Collectors.toList());
+        try (LoadBalancer loadBalancer = LoadBalancerImpl.builder()
+                .maxCapacity(providers.size())
+                .executionMode(ExecutionMode.VIRTUAL)
+                .build()) {
+            loadBalancer.registerAll(providers);
+
+            long start = System.nanoTime();
+            CompletableFuture<?>[] calls = IntStream.range(0, 10_000)
+                    .mapToObj(i -> loadBalancer.getAsync())
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(calls).join();
+
+            assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(10);
+        }
+    }
+
+    private static class ThreadRecordingProvider extends Provider {
+
+        private final Set<Boolean> virtual;
+        private final long sleepMillis;
+
+        ThreadRecordingProvider(String id, Set<Boolean> virtual) {
+            this(id, virtual, 0);
+        }
+
+        ThreadRecordingProvider(String id, Set<Boolean> virtual, long sleepMillis) {
+            this(id, virtual, sleepMillis, 5);
+        }
+
+        ThreadRecordingProvider(String id, Set<Boolean> virtual, long sleepMillis, int concurrentCapacity) {
+            super(id, concurrentCapacity);
+            this.virtual = virtual;
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        public String provide() {
+            virtual.add(Thread.currentThread().isVirtual());
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.provide();
+        }
+    }
+}
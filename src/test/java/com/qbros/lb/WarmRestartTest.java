@@ -0,0 +1,121 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.LoadBalancerImpl;
+import com.qbros.lb.core.Provider;
+import com.qbros.lb.core.StateSnapshot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class WarmRestartTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void snapshot_roundTrip() throws Exception {
+
+        Path file = directory.resolve("lb.state");
+        long[] counts = {1, 2, 3};
+        new StateSnapshot(42, Map.of(
+                "P1", new StateSnapshot.ProviderState(StateSnapshot.Health.UP, 1500.5),
+                "Pé", new StateSnapshot.ProviderState(StateSnapshot.Health.DOWN, 0)), counts, 99).write(file);
+
+        StateSnapshot snapshot = StateSnapshot.read(file);
+
+        assertThat(snapshot.getSavedAtMillis()).isEqualTo(42);
+        assertThat(snapshot.getProviders()).containsOnly(
+                Map.entry("P1", new StateSnapshot.ProviderState(StateSnapshot.Health.UP, 1500.5)),
+                Map.entry("Pé", new StateSnapshot.ProviderState(StateSnapshot.Health.DOWN, 0)));
+        assertThat(snapshot.getResponseTimeCounts()).containsExactly(1, 2, 3);
+        assertThat(snapshot.getResponseTimeTotalNanos()).isEqualTo(99);
+        assertThat(Files.exists(directory.resolve("lb.state.tmp"))).isFalse();
+    }
+
+    @Test
+    void corruptedOrMissingSnapshot_startsCold() throws Exception {
+
+        Path file = directory.resolve("lb.state");
+        assertThat(StateSnapshot.read(file)).isNull();
+
+        new StateSnapshot(42, Map.of("P1", new StateSnapshot.ProviderState(StateSnapshot.Health.UP, 1)),
+                new long[0], 0).write(file);
+        byte[] content = Files.readAllBytes(file);
+        content[20] ^= 1;
+        Files.write(file, content);
+        assertThat(StateSnapshot.read(file)).isNull();
+
+        Files.write(file, new byte[3]);
+        assertThat(StateSnapshot.read(file)).isNull();
+    }
+
+    @Test
+    void restartedLoadBalancer_isWarm() throws Exception {
+
+        Path file = directory.resolve("lb.state");
+        Provider slow = new Provider("SLOW");
+        Provider dead = new Provider("DEAD");
+        Provider revived = new Provider("REVIVED");
+        try (LoadBalancerImpl loadBalancer = LoadBalancerImpl.builder().stateFile(file).build()) {
+            loadBalancer.registerAll(List.of(slow, dead, revived));
+            for (int i = 0; i < 10; i++) {
+                loadBalancer.get();
+            }
+            slow.recordResponseTime(TimeUnit.MILLISECONDS.toNanos(250));
+            dead.setAlive(false);
+            revived.setAlive(false);
+            loadBalancer.checkProviders();
+            assertThat(loadBalancer.getProviders()).containsExactly(slow);
+        }
+
+        //new instances, as after a restart: REVIVED is back, DEAD is still dead
+        Provider newSlow = new Provider("SLOW");
+        Provider newDead = new Provider("DEAD");
+        newDead.setAlive(false);
+        Provider newRevived = new Provider("REVIVED");
+        try (LoadBalancerImpl restarted = LoadBalancerImpl.builder().stateFile(file).build()) {
+            restarted.registerAll(List.of(newSlow, newDead, newRevived));
+
+            assertThat(newSlow.getResponseTime()).isCloseTo(TimeUnit.MILLISECONDS.toNanos(250), within(1e7));
+            assertThat(restarted.getMetrics().getResponseTimes().getTotalCount()).isEqualTo(10);
+            assertThat(restarted.getProviders()).doesNotContain(newDead);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!restarted.getProviders().contains(newRevived) && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(restarted.getProviders()).containsExactlyInAnyOrder(newSlow, newRevived);
+        }
+
+        //the providers which are still down are saved as such
+        assertThat(StateSnapshot.read(file).getProviders().get("DEAD").health()).isEqualTo(StateSnapshot.Health.DOWN);
+        assertThat(StateSnapshot.read(file).getProviders().get("REVIVED").health())
+                .isEqualTo(StateSnapshot.Health.UP);
+    }
+
+    @Test
+    void stateIsSavedPeriodically() throws Exception {
+
+        Path file = directory.resolve("lb.state");
+        try (LoadBalancerImpl loadBalancer = LoadBalancerImpl.builder()
+                .stateFile(file)
+                .stateSnapshotIntervalMillis(50)
+                .build()) {
+            loadBalancer.registerAll(List.of(new Provider("P1")));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (StateSnapshot.read(file) == null && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(StateSnapshot.read(file).getProviders()).containsOnlyKeys("P1");
+        }
+    }
+}
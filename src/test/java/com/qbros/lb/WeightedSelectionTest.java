@@ -0,0 +1,78 @@
+package com.qbros.lb;
+
+import com.qbros.lb.core.*;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class WeightedSelectionTest {
+
+    private final List<Provider> providers = List.of(
+            new Provider("a", "a", 5, 5),
+            new Provider("b", "b", 5, 1),
+            new Provider("c", "c", 5, 1));
+
+    @Test
+    void weightDefaultsToConcurrentCapacity() {
+        assertThat(new Provider("p", 7).getWeight()).isEqualTo(7);
+        assertThat(new Provider(3).getWeight()).isEqualTo(3);
+    }
+
+    @Test
+    void providerWithoutCapacity_hasTheMinimumWeight() {
+        assertThat(new Provider("p", 0).getWeight()).isEqualTo(1);
+        assertThat(new Provider(0).getWeight()).isEqualTo(1);
+        assertThatThrownBy(() -> new Provider("p", "p", 0, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void smoothWeightedRoundRobin_interleavesPicks() {
+
+        SmoothWeightedRoundRobinSelection selection = new SmoothWeightedRoundRobinSelection();
+        selection.onProvidersChanged(providers);
+
+        String sequence = IntStream.range(0, 14)
+                .mapToObj(i -> providers.get(selection.pick(providers)).getId())
+                .collect(Collectors.joining());
+
+        assertThat(sequence).isEqualTo("aabacaa" + "aabacaa");
+    }
+
+    @Test
+    void weightedRandom_isProportionalToWeights() {
+
+        WeightedRandomSelection selection = new WeightedRandomSelection();
+        selection.onProvidersChanged(providers);
+
+        int picks = 70_000;
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < picks; i++) {
+            counts.merge(providers.get(selection.pick(providers)).getId(), 1, Integer::sum);
+        }
+
+        assertThat(counts.get("a") / (double) picks).isCloseTo(5 / 7.0, within(0.02));
+        assertThat(counts.get("b") / (double) picks).isCloseTo(1 / 7.0, within(0.02));
+        assertThat(counts.get("c") / (double) picks).isCloseTo(1 / 7.0, within(0.02));
+    }
+
+    @Test
+    void weightedRandom_tableIsRebuiltByTheLoadBalancer() {
+
+        LoadBalancer loadBalancer = LoadBalancerImpl.builder().selectionStrategy(new WeightedRandomSelection()).build();
+        loadBalancer.registerAll(providers);
+        loadBalancer.exclude(providers.get(0));
+        loadBalancer.exclude(providers.get(1));
+
+        for (int i = 0; i < 50; i++) {
+            assertThat(loadBalancer.get()).endsWith("C");
+        }
+    }
+}